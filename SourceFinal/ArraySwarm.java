@@ -0,0 +1,711 @@
+/*
+ * A swarm that keeps all of its particles in arrays instead of Particle objects.
+ *
+ * Swarm/Particle give every particle its own DoubleVectors for position, velocity, flock
+ * location and flock velocity, plus Solutions for its current position and personal best,
+ * so a big swarm turns into lots of small objects spread out over the heap. Here each kind
+ * of data is one double[] with a row for each particle, e.g. the position of particle i is
+ * positions[i*numDimensions] to positions[i*numDimensions + numDimensions-1], and update()
+ * works through those rows directly.
+ *
+ * The PSO and flock math is the same as in Particle.java, done in the same order and with the
+ * same random numbers (each particle splits off its own stream, in particle order, just like
+ * in Swarm), so a run gives the same results with either backend.
+ *
+ * The GP tree, the FlockTracker and the FlockGrid get at a particle through the ParticleState
+ * interface; there is a small ParticleView object for each particle that reads and writes its
+ * rows in the arrays.
+ *
+ * Set Parameters.swarmBackend to PSO.SwarmBackend.ARRAYS to use this instead of Swarm.
+ */
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class ArraySwarm {
+
+	// flocks are in a 2D space
+	private static final int FLOCK_SPACE_NUM_DIM = 2;
+	// these are the same as in Particle.java
+	private static final double FLOCK_INIT_VELOCITY_DIMENSION_MAGNITUDE = 1.0;
+	private static final double FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE = 1.0;
+	private static final int FLOCK_BOUDARY_SENSING_THRESHOLD = 5;
+
+	// columns of a particle's row in flockParameters; a column is the variable's slot (see ParticleState.java)
+	private static final int MAX_SPEED = ParticleState.MAX_SPEED;
+	private static final int NORMAL_SPEED = ParticleState.NORMAL_SPEED;
+	private static final int NEIGHBOR_RADIUS = ParticleState.NEIGHBOR_RADIUS;
+	private static final int SEPARATION_WEIGHT = ParticleState.SEPARATION_WEIGHT;
+	private static final int COHESION_WEIGHT = ParticleState.COHESION_WEIGHT;
+	private static final int ALIGNMENT_WEIGHT = ParticleState.ALIGNMENT_WEIGHT;
+	private static final int PACEKEEPING_WEIGHT = ParticleState.PACEKEEPING_WEIGHT;
+	private static final int RANDOM_MOTION_PROB = ParticleState.RANDOM_MOTION_PROB;
+	private static final int NUM_NEIGHBORS_OWN_FLOCK = ParticleState.NUM_NEIGHBORS_OWN_FLOCK;
+	private static final int NUM_NEIGHBORS_ALL_FLOCKS = ParticleState.NUM_NEIGHBORS_ALL_FLOCKS;
+	private static final int NUM_FLOCK_PARAMS = ParticleState.NUM_FLOCK_PARAMS;
+
+	private SimulationContext context;
+
+	// particles 0 to numParticles-1 are regular particles, the rest are dummies
+	private int numParticles;
+	private int totalParticles;
+	private int numDimensions;
+	private int flockSpaceDimLength;
+
+	// PSO DATA: one row of numDimensions values per regular particle
+	private double[] positions;
+	private double[] velocities;
+	private double[] pBestPositions;
+	// acceleration worked out by calcAcceleration, waiting to be applied by applyAcceleration
+	private double[] accelerations;
+
+	// one value per regular particle
+	private double[] currValues;
+	private double[] currErrors;
+	private double[] pBestValues;
+	private double[] pBestErrors;
+
+	// FLOCK DATA: one row of FLOCK_SPACE_NUM_DIM values per particle (including dummies)
+	private double[] flockLocations;
+	private double[] flockVelocities;
+	// in synchronous mode the new flock locations and velocities go here, and the arrays
+	// are swapped once every particle has done its flock step
+	private double[] nextFlockLocations;
+	private double[] nextFlockVelocities;
+
+	// one row of NUM_FLOCK_PARAMS values per particle (including dummies)
+	private double[] flockParameters;
+
+	// neighbors[i] holds the IDs of particle i's neighbors in its first numNeighbors[i] slots;
+	// for FLOCK-PSO it is refilled on every flock step, otherwise it's the fixed topology
+	private int[][] neighbors;
+	private int[] numNeighbors;
+
+	// each particle's own stream of random numbers
+	private SplittableRandom[] rands;
+
+	// what the GP tree, FlockTracker and FlockGrid see of each particle
+	private ParticleView[] views;
+
+	// the stacks the compiled GP program runs on, one for each particle, since in
+	// synchronous mode several particles can run it at once
+	private GPProgram.EvalStack[] gpStacks;
+
+
+	// the context holds the configuration of the run; the global best and flock data
+	// created here are stored in it, like in Swarm
+	public ArraySwarm(SimulationContext context) {
+
+		this.context = context;
+		this.numParticles = context.getNumParticles();
+		this.totalParticles = numParticles + context.getNumDummy();
+		this.numDimensions = context.getNumDimensions();
+		this.flockSpaceDimLength = context.getFlockSpaceDimLength();
+		ObjectiveFunctionProvider function = context.getFunction();
+
+		positions = new double[numParticles * numDimensions];
+		velocities = new double[numParticles * numDimensions];
+		pBestPositions = new double[numParticles * numDimensions];
+		accelerations = new double[numParticles * numDimensions];
+		currValues = new double[numParticles];
+		currErrors = new double[numParticles];
+		pBestValues = new double[numParticles];
+		pBestErrors = new double[numParticles];
+
+		flockLocations = new double[totalParticles * FLOCK_SPACE_NUM_DIM];
+		flockVelocities = new double[totalParticles * FLOCK_SPACE_NUM_DIM];
+		nextFlockLocations = new double[totalParticles * FLOCK_SPACE_NUM_DIM];
+		nextFlockVelocities = new double[totalParticles * FLOCK_SPACE_NUM_DIM];
+		flockParameters = new double[totalParticles * NUM_FLOCK_PARAMS];
+
+		neighbors = new int[totalParticles][];
+		numNeighbors = new int[totalParticles];
+		rands = new SplittableRandom[totalParticles];
+		views = new ParticleView[totalParticles];
+		gpStacks = new GPProgram.EvalStack[totalParticles];
+
+		//11 flocking parameters
+		context.setFlockData(new FlockTracker(context.getNumIterations(), numParticles, context.getNumDummy(), 11, context.getGPTree().generation));
+
+		// every particle starts out with the same random flocking parameters
+		double[] randParameters = Swarm.generateRandomParameters(context.getRand());
+
+		// same initial speeds as in Particle.java
+		double minSpeed = 0.0;
+		double speedRange = 0.0;
+		if (TestFunctions.UNIVERSAL_SPEED_RANGE < function.getSpeedRange()) {
+			minSpeed = TestFunctions.UNIVERSAL_MIN_INIT_SPEED;
+			speedRange = TestFunctions.UNIVERSAL_SPEED_RANGE;
+		}
+		else {
+			minSpeed = function.getSpeedMinVal();
+			speedRange = function.getSpeedRange();
+		}
+
+		Solution globalBest = null;
+
+		for (int particleID = 0 ; particleID < totalParticles ; particleID++) {
+
+			SplittableRandom rand = context.getRand().split();
+			rands[particleID] = rand;
+			views[particleID] = new ParticleView(particleID);
+			gpStacks[particleID] = new GPProgram.EvalStack();
+
+			// dummy particles don't have a position in function space
+			if (!isDummy(particleID)) {
+
+				// start with random position, and evaluate it
+				int offset = particleID * numDimensions;
+				for (int d = 0 ; d < numDimensions ; ++d) {
+					positions[offset + d] = function.getInitMinVal() + (function.getInitRange() * rand.nextDouble());
+				}
+				evaluate(particleID);
+				System.arraycopy(positions, offset, pBestPositions, offset, numDimensions);
+				pBestValues[particleID] = currValues[particleID];
+				pBestErrors[particleID] = currErrors[particleID];
+
+				// start with small random velocity
+				for (int d = 0 ; d < numDimensions ; ++d) {
+					velocities[offset + d] = minSpeed + (speedRange * rand.nextDouble());
+				}
+
+				// first one is the current global best; after that, reset it if necessary
+				if (globalBest == null) {
+					DoubleVector position = new DoubleVector(numDimensions);
+					position.copyFrom(positions, offset);
+					globalBest = new Solution(position, currValues[particleID], currErrors[particleID], particleID);
+					context.setGlobalBest(globalBest);
+				}
+				else if (currValues[particleID] < globalBest.getFunctionValue()) {
+					updateGlobalBest(globalBest, particleID);
+				}
+			}
+
+			// set flock parameters
+			System.arraycopy(randParameters, 0, flockParameters, particleID * NUM_FLOCK_PARAMS, randParameters.length);
+
+			// random location in flock space, and small random velocity
+			int flockOffset = particleID * FLOCK_SPACE_NUM_DIM;
+			for (int d = 0 ; d < FLOCK_SPACE_NUM_DIM ; ++d) {
+				flockLocations[flockOffset + d] = randomComponent(rand, flockSpaceDimLength/2);
+			}
+			for (int d = 0 ; d < FLOCK_SPACE_NUM_DIM ; ++d) {
+				flockVelocities[flockOffset + d] = randomComponent(rand, FLOCK_INIT_VELOCITY_DIMENSION_MAGNITUDE);
+			}
+		}
+
+		// the grid for finding flock neighbors; it's filled in at the start of each update
+		if (context.isUseSpatialGrid()) {
+			context.setFlockGrid(new FlockGrid(totalParticles, context.getFlockSpaceDimLength()));
+		}
+
+		// for FLOCK-PSO the neighbors are found on every flock step, so just make room for them;
+		// otherwise the neighborhoods do not change, so create them once and for all now
+		for (int particleID = 0 ; particleID < totalParticles ; particleID++) {
+			if (context.isUsingFLOCKPSO() || isDummy(particleID)) {
+				neighbors[particleID] = new int[totalParticles];
+			}
+			else {
+				neighbors[particleID] = Neighborhood.getNeighborIDs(context, numParticles, particleID,
+						context.getTopology(), context.getSelfModel());
+				numNeighbors[particleID] = neighbors[particleID].length;
+			}
+		}
+	}
+
+
+	// update every particle and reset global best, if necessary
+	public void update() {
+
+		Solution globalBest = context.getGlobalBest();
+		FlockTracker flockData = context.getFlockData();
+
+		// put the particles in the flock grid, sized for their current radii; the particles
+		// keep it up to date as they move
+		if (context.getFlockGrid() != null) {
+			context.getFlockGrid().rebuild(views);
+		}
+
+		if (context.isSynchronousFlock()) {
+			updateSynchronous(globalBest, flockData);
+			return;
+		}
+
+		for (int particleID = 0 ; particleID < totalParticles ; particleID++) {
+
+			// dummy particles only move in flock space
+			if (isDummy(particleID)) {
+				moveFlockAndGetNeighbors(particleID);
+			}
+			else {
+				calcAcceleration(particleID);
+				applyAcceleration(particleID);
+
+				if (currValues[particleID] < globalBest.getFunctionValue()) {
+					updateGlobalBest(globalBest, particleID);
+				}
+			}
+			flockData.addParticle(views[particleID]);
+		}
+
+		flockData.addAvgNeighbors(avgNeighborhoods());
+		flockData.incrementIteration();
+	}
+
+
+	// synchronous version of update; see Swarm.updateSynchronous
+	private void updateSynchronous(Solution globalBest, FlockTracker flockData) {
+
+		// in S-PSO the regular particles don't do a flock step, so their rows of the "next"
+		// arrays would never be filled in; they keep their current flock locations and velocities
+		if (!context.isUsingFLOCKPSO()) {
+			System.arraycopy(flockLocations, 0, nextFlockLocations, 0, numParticles * FLOCK_SPACE_NUM_DIM);
+			System.arraycopy(flockVelocities, 0, nextFlockVelocities, 0, numParticles * FLOCK_SPACE_NUM_DIM);
+		}
+
+		Swarm.forAllParticles(totalParticles, particleID -> {
+			if (isDummy(particleID)) {
+				moveFlockAndGetNeighbors(particleID);
+			}
+			else {
+				calcAcceleration(particleID);
+			}
+		});
+
+		// every particle has done its flock step, so the new locations and velocities become
+		// the current ones
+		double[] temp = flockLocations;
+		flockLocations = nextFlockLocations;
+		nextFlockLocations = temp;
+
+		temp = flockVelocities;
+		flockVelocities = nextFlockVelocities;
+		nextFlockVelocities = temp;
+
+		// none of the particles depend on the others' new positions, so each chunk of particles
+		// is moved, then evaluated in one batch, then has its personal bests updated; the chunks
+		// are done at the same time, so the evaluations are still shared out over the threads
+		ObjectiveFunction objective = context.getObjectiveFunction();
+		Swarm.forAllParticleRanges(numParticles, (start, end) -> {
+			for (int particleID = start ; particleID < end ; particleID++) {
+				moveParticle(particleID);
+			}
+			objective.evaluateAll(positions, start, end, numDimensions, currValues);
+			for (int particleID = start ; particleID < end ; particleID++) {
+				currErrors[particleID] = currValues[particleID] - objective.getOptValue();
+				updatePersonalBest(particleID);
+			}
+		});
+
+		for (int particleID = 0 ; particleID < totalParticles ; particleID++) {
+			if (!isDummy(particleID) && currValues[particleID] < globalBest.getFunctionValue()) {
+				updateGlobalBest(globalBest, particleID);
+			}
+			flockData.addParticle(views[particleID]);
+		}
+
+		flockData.addAvgNeighbors(avgNeighborhoods());
+		flockData.incrementIteration();
+	}
+
+
+	// first half of a particle's update: for FLOCK-PSO, move in flock space to get the neighbors,
+	// then work out the acceleration IN THE PSO SOLUTION SPACE (see Particle.calcAcceleration)
+	private void calcAcceleration(int particleID) {
+
+		SplittableRandom rand = rands[particleID];
+		int offset = particleID * numDimensions;
+
+		if (context.isUsingFLOCKPSO()) {
+			moveFlockAndGetNeighbors(particleID);
+		}
+
+		// if using the NEIGHBORHOOD BEST influence model
+		if (context.getInfluenceModel() == PSO.InfluenceModel.NEIGH_BEST) {
+
+			// neighborhood best component of acceleration
+			int bestID = getNeighBestID(particleID);
+			double[] bestPositions = pBestPositions;
+			int bestOffset = bestID * numDimensions;
+			if (bestID < 0) {
+				// the global best
+				bestPositions = null;
+			}
+			for (int d = 0 ; d < numDimensions ; ++d) {
+				double bestPosition = bestPositions == null ? context.getGlobalBest().getPosition().get(d) : bestPositions[bestOffset + d];
+				double neighBestComponent = (bestPosition - positions[offset + d]) * (0.0 + (rand.nextDouble() * PSO.nBestTheta));
+				accelerations[offset + d] = 0.0 + neighBestComponent;
+			}
+
+			// personal best component of acceleration
+			for (int d = 0 ; d < numDimensions ; ++d) {
+				double pBestComponent = (pBestPositions[offset + d] - positions[offset + d]) * (0.0 + (rand.nextDouble() * PSO.pBestTheta));
+				accelerations[offset + d] += pBestComponent;
+			}
+		}
+
+		// if using the FIPS influence model, in which *every* particle in the neighborhood influences
+		// the acceleration (see Neighborhood.getFIPSAcceleration)
+		else if (context.getInfluenceModel() == PSO.InfluenceModel.FIPS) {
+
+			int[] neighborIDs = neighbors[particleID];
+			int numPartsInNeigh = numNeighbors[particleID];
+			double componentTheta = PSO.theta / numPartsInNeigh;
+
+			Arrays.fill(accelerations, offset, offset + numDimensions, 0.0);
+			for (int n = 0 ; n < numPartsInNeigh ; ++n) {
+				int nextOffset = neighborIDs[n] * numDimensions;
+				for (int d = 0 ; d < numDimensions ; ++d) {
+					accelerations[offset + d] += (positions[nextOffset + d] - positions[offset + d]) * (0.0 + (rand.nextDouble() * componentTheta));
+				}
+			}
+		}
+	}
+
+
+	// the ID of the particle whose personal best is the neighborhood best, or -1 if it's the
+	// global best (see Neighborhood.getNeighBestPosition)
+	private int getNeighBestID(int particleID) {
+
+		// if it's the standard gbest including self, just use the global best
+		if (context.getTopology() == PSO.Topology.GBEST && context.getSelfModel() == PSO.SelfModel.INCLUDE_SELF) {
+			return -1;
+		}
+
+		// whether the self is included was dealt with when the neighborhood was created, so just
+		// go through the list of particles and find the best one; if there is no one in the
+		// neighborhood at all, the particle's own personal best is used
+		int bestID = particleID;
+		double bestPBestFuncVal = Double.MAX_VALUE;
+		int[] neighborIDs = neighbors[particleID];
+		for (int n = 0 ; n < numNeighbors[particleID] ; ++n) {
+			int nextID = neighborIDs[n];
+			if (pBestValues[nextID] < bestPBestFuncVal) {
+				bestID = nextID;
+				bestPBestFuncVal = pBestValues[nextID];
+			}
+		}
+
+		return bestID;
+	}
+
+
+	// second half of a particle's update: apply the acceleration, move the particle, evaluate
+	// the new position and update the personal best; only changes this particle's rows
+	private void applyAcceleration(int particleID) {
+		moveParticle(particleID);
+		evaluate(particleID);
+		updatePersonalBest(particleID);
+	}
+
+
+	// update the velocity from the acceleration and move the particle
+	private void moveParticle(int particleID) {
+
+		double minSpeed = context.getFunction().getSpeedMinVal();
+		double maxSpeed = context.getFunction().getSpeedMaxVal();
+		int offset = particleID * numDimensions;
+
+		for (int d = 0 ; d < numDimensions ; ++d) {
+
+			// update the velocity, apply the constriction factor and bound it
+			double velocity = (velocities[offset + d] + accelerations[offset + d]) * PSO.constrictionFactor;
+			if (velocity < minSpeed)
+				velocity = minSpeed;
+			else if (velocity > maxSpeed)
+				velocity = maxSpeed;
+			velocities[offset + d] = velocity;
+
+			// move the particle
+			positions[offset + d] += velocity;
+		}
+	}
+
+
+	// update the personal best from the particle's current value, if necessary
+	private void updatePersonalBest(int particleID) {
+		if (currValues[particleID] < pBestValues[particleID]) {
+			int offset = particleID * numDimensions;
+			System.arraycopy(positions, offset, pBestPositions, offset, numDimensions);
+			pBestValues[particleID] = currValues[particleID];
+			pBestErrors[particleID] = currErrors[particleID];
+		}
+	}
+
+
+	// this moves the particle IN FLOCK SPACE and puts its neighbors in its row of neighbors;
+	// see Particle.moveFlockAndGetNeighbors for the details of the flock math
+	private void moveFlockAndGetNeighbors(int particleID) {
+
+		SplittableRandom rand = rands[particleID];
+		int flockOffset = particleID * FLOCK_SPACE_NUM_DIM;
+		int paramOffset = particleID * NUM_FLOCK_PARAMS;
+
+		// normally the new location and velocity just overwrite the current ones, but in
+		// synchronous mode they go in the "next" arrays
+		boolean synchronous = context.isSynchronousFlock();
+		double[] locations = flockLocations;
+		double[] flockVels = flockVelocities;
+		double[] newLocations = synchronous ? nextFlockLocations : flockLocations;
+		double[] newVelocities = synchronous ? nextFlockVelocities : flockVelocities;
+
+		double x = locations[flockOffset];
+		double y = locations[flockOffset + 1];
+		double velX = flockVels[flockOffset];
+		double velY = flockVels[flockOffset + 1];
+
+		double maxSpeed = flockParameters[paramOffset + MAX_SPEED];
+		double normalSpeed = flockParameters[paramOffset + NORMAL_SPEED];
+		double neighborRadius = flockParameters[paramOffset + NEIGHBOR_RADIUS];
+		double separationWeight = flockParameters[paramOffset + SEPARATION_WEIGHT];
+		double cohesionWeight = flockParameters[paramOffset + COHESION_WEIGHT];
+		double alignmentWeight = flockParameters[paramOffset + ALIGNMENT_WEIGHT];
+		double pacekeepingWeight = flockParameters[paramOffset + PACEKEEPING_WEIGHT];
+		double randomMotionProb = flockParameters[paramOffset + RANDOM_MOTION_PROB];
+
+		// new acceleration in flock space, and sums of neighbor locations and velocities
+		// for cohesion and alignment
+		double accX = 0.0;
+		double accY = 0.0;
+		double sumNeighborX = 0.0;
+		double sumNeighborY = 0.0;
+		double sumNeighborVelX = 0.0;
+		double sumNeighborVelY = 0.0;
+
+		// Particle draws a number here to decide whether to print debugging output; draw
+		// it too, so both backends use the same random numbers
+		rand.nextDouble();
+
+		// get the particles that could be neighbors (in increasing ID order); without the
+		// grid, that's all of them
+		int[] neighborIDs = neighbors[particleID];
+		FlockGrid flockGrid = context.getFlockGrid();
+		int numCandidates;
+		if (flockGrid != null) {
+			numCandidates = flockGrid.getCandidates(x, y, neighborRadius, neighborIDs);
+		}
+		else {
+			for (int i = 0 ; i < totalParticles ; i++) {
+				neighborIDs[i] = i;
+			}
+			numCandidates = totalParticles;
+		}
+
+		// the neighbors are written back into the same array; there are never more of them
+		// than candidates already looked at
+		int numNeighborsOwnFlock = 0;
+		int numFlockNeighbors = 0;
+		for (int c = 0 ; c < numCandidates ; c++) {
+			int i = neighborIDs[c];
+
+			// a particle is not in its own neighborhood
+			if (i == particleID) {
+				continue;
+			}
+
+			double diffX = x - locations[i * FLOCK_SPACE_NUM_DIM];
+			double diffY = y - locations[i * FLOCK_SPACE_NUM_DIM + 1];
+			double dist = Math.sqrt(diffX * diffX + diffY * diffY);
+
+			// is it in the neighborhood?
+			// NOTE: check to make sure not zero, in case of underflow
+			if (dist > 0.0 && dist <= neighborRadius) {
+
+				// dummy particles help with the flocking, but aren't in PSO neighborhoods
+				if (!isDummy(i)) {
+					neighborIDs[numNeighborsOwnFlock++] = i;
+				}
+				numFlockNeighbors++;
+
+				sumNeighborX += locations[i * FLOCK_SPACE_NUM_DIM];
+				sumNeighborY += locations[i * FLOCK_SPACE_NUM_DIM + 1];
+				sumNeighborVelX += flockVels[i * FLOCK_SPACE_NUM_DIM];
+				sumNeighborVelY += flockVels[i * FLOCK_SPACE_NUM_DIM + 1];
+
+				// separation: vector pointing away from neighbor, inversely proportional to
+				// the square of the distance
+				accX += diffX / (dist*dist) * separationWeight;
+				accY += diffY / (dist*dist) * separationWeight;
+			}
+		}
+		numNeighbors[particleID] = numNeighborsOwnFlock;
+		flockParameters[paramOffset + NUM_NEIGHBORS_OWN_FLOCK] = numNeighborsOwnFlock;
+		flockParameters[paramOffset + NUM_NEIGHBORS_ALL_FLOCKS] = 0;
+
+		// only do the following if there were neighbors; otherwise, division by zero!
+		if (numFlockNeighbors > 0) {
+			// cohesion steering: steer in the direction of the average location of your neighbors
+			accX += (sumNeighborX / numFlockNeighbors - x) * cohesionWeight;
+			accY += (sumNeighborY / numFlockNeighbors - y) * cohesionWeight;
+
+			// alignment steering: steer so as to align your velocity with the average velocity of your neighbors
+			accX += (sumNeighborVelX / numFlockNeighbors - velX) * alignmentWeight;
+			accY += (sumNeighborVelY / numFlockNeighbors - velY) * alignmentWeight;
+		}
+
+		// small random perturbation, with probability randomMotionProb
+		if (rand.nextFloat() < randomMotionProb) {
+			accX += randomComponent(rand, FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE);
+			accY += randomComponent(rand, FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE);
+		}
+
+		// update velocity
+		double newVelX = velX + accX;
+		double newVelY = velY + accY;
+
+		// make sure we don't exceed maxSpeed
+		double speed = Math.sqrt(newVelX * newVelX + newVelY * newVelY);
+		if (speed > maxSpeed) {
+			newVelX *= maxSpeed / speed;
+			newVelY *= maxSpeed / speed;
+			speed = Math.sqrt(newVelX * newVelX + newVelY * newVelY);
+		}
+
+		// pacekeeping (stick to normalSpeed to the extent indicated by pacekeepingWeight)
+		double pacekeeping = (normalSpeed - speed) / speed * pacekeepingWeight;
+		newVelX += newVelX * pacekeeping;
+		newVelY += newVelY * pacekeeping;
+
+		// bounce back from the boundaries of the space
+		newVelX += boundaryAcceleration(x, maxSpeed);
+		newVelY += boundaryAcceleration(y, maxSpeed);
+
+		// move the particle
+		newVelocities[flockOffset] = newVelX;
+		newVelocities[flockOffset + 1] = newVelY;
+		newLocations[flockOffset] = x + newVelX;
+		newLocations[flockOffset + 1] = y + newVelY;
+		if (flockGrid != null && !synchronous) {
+			flockGrid.moveParticle(particleID, newLocations[flockOffset], newLocations[flockOffset + 1]);
+		}
+
+		// this is where the GP program tree is executed, on this particle's view
+		if (context.isUsingFLOCKPSO()) {
+			context.getGPTree().run(views[particleID], context, gpStacks[particleID]);
+		}
+
+		// for the test case where random changes are made, just regenerate random values
+		else if (context.isDoRandomTree()){
+			double[] newRandParams = Swarm.generateRandomParameters(rand);
+			System.arraycopy(newRandParams, 0, flockParameters, paramOffset, newRandParams.length);
+		}
+	}
+
+
+	// acceleration in one dimension of flock space from being near the boundary
+	private double boundaryAcceleration(double coord, double maxSpeed) {
+		if (coord < (FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE/2) + FLOCK_BOUDARY_SENSING_THRESHOLD - flockSpaceDimLength/2)
+			return maxSpeed;
+		else if (coord > flockSpaceDimLength/2 - FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE/2 - FLOCK_BOUDARY_SENSING_THRESHOLD)
+			return -maxSpeed;
+		return 0.0;
+	}
+
+
+	// a random value in (-maxMagnitude, +maxMagnitude), drawn the same way as in
+	// DoubleVector.randomVector and DoubleVector.addRandomScalarMagnitude
+	private static double randomComponent(SplittableRandom rand, double maxMagnitude) {
+		double element = rand.nextDouble() * maxMagnitude;
+		if (rand.nextDouble() < 0.5)
+			element *= -1.0;
+		return element;
+	}
+
+
+	// evaluate a regular particle's current position, straight out of the positions array,
+	// and put the function value and error in currValues and currErrors
+	private void evaluate(int particleID) {
+		ObjectiveFunction objective = context.getObjectiveFunction();
+		double value = objective.evaluate(positions, particleID * numDimensions, numDimensions);
+		currValues[particleID] = value;
+		currErrors[particleID] = value - objective.getOptValue();
+	}
+
+
+	private void updateGlobalBest(Solution globalBest, int particleID) {
+		globalBest.getPosition().copyFrom(positions, particleID * numDimensions);
+		globalBest.setFunctionValue(currValues[particleID]);
+		globalBest.setError(currErrors[particleID]);
+		globalBest.setParticleID(particleID);
+	}
+
+
+	private boolean isDummy(int particleID) {
+		return particleID >= numParticles;
+	}
+
+
+	//Get the average neighbors for all particles (same as Swarm.avgNeighborhoods)
+	public double avgNeighborhoods() {
+		double sum = 0;
+		for (int i = 0; i < numParticles; i++) {
+			sum += flockParameters[i * NUM_FLOCK_PARAMS + NUM_NEIGHBORS_OWN_FLOCK];
+		}
+		return sum/totalParticles;
+	}
+
+
+	// getters
+
+	public SimulationContext getContext() {
+		return context;
+	}
+
+	public Solution getGlobalBest() {
+		return context.getGlobalBest();
+	}
+
+	public FlockTracker getFlockData() {
+		return context.getFlockData();
+	}
+
+
+	// a particle as seen by the GP tree, the FlockTracker and the FlockGrid: just the
+	// particle's ID, used to find its rows in the arrays
+	private class ParticleView implements ParticleState {
+
+		private int particleID;
+
+		public ParticleView(int particleID) {
+			this.particleID = particleID;
+		}
+
+		public int getParticleID() {
+			return particleID;
+		}
+
+		public double getFlockX() {
+			return flockLocations[particleID * FLOCK_SPACE_NUM_DIM];
+		}
+
+		public double getFlockY() {
+			return flockLocations[particleID * FLOCK_SPACE_NUM_DIM + 1];
+		}
+
+		public double getRadius() {
+			return flockParameters[particleID * NUM_FLOCK_PARAMS + NEIGHBOR_RADIUS];
+		}
+
+		public double[] getParameters() {
+			int paramOffset = particleID * NUM_FLOCK_PARAMS;
+			return Arrays.copyOfRange(flockParameters, paramOffset, paramOffset + NUM_FLOCK_PARAMS);
+		}
+
+		public double getVarValue(int slot) {
+			return flockParameters[particleID * NUM_FLOCK_PARAMS + slot];
+		}
+
+		public void assignVariable(int slot, double value) {
+			flockParameters[particleID * NUM_FLOCK_PARAMS + slot] = value;
+		}
+
+		public void increment(int slot) {
+			++flockParameters[particleID * NUM_FLOCK_PARAMS + slot];
+		}
+
+		public void decrement(int slot) {
+			--flockParameters[particleID * NUM_FLOCK_PARAMS + slot];
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Keeps the S-PSO (standard PSO) results on disk, so a later run of the program with the
+ * same settings doesn't have to run S-PSO again (see PSO.runRegularPSOOnce). The results
+ * of every run are kept, not just the averages.
+ *
+ * There is one file for each combination of the settings S-PSO depends on: function,
+ * topology, self model, influence model, dimensions, particles, iterations, number of
+ * runs and master seed (plus the von Neumann/Moore grid, the number of dummy particles,
+ * the synchronous update, the blocked function kernels and any stopping rules that are
+ * on, which change the S-PSO results too). The file
+ * holds the key, then one line per run with the function value and the distance from
+ * the global optimum.
+ *
+ * The values are written with Double.toString, so they read back as exactly the same
+ * values. A file is written to a temporary file first and then renamed, so several
+ * programs sharing the directory never see half a file.
+ *
+ * If Parameters.baselineCacheDir is null, nothing is read or written. Nothing is read or
+ * written either when the evaluation cache matches positions that are only close to each
+ * other (Parameters.evaluationCacheEpsilon > 0): the S-PSO results then depend on the order
+ * the positions happened to be evaluated in (see EvaluationCache.java), so they can't be
+ * repeated. An exact evaluation cache gives the same values as no cache, so its size isn't
+ * in the key.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+public class BaselineCache {
+
+	// the S-PSO results for the current settings: functionValues[run] and distances[run]
+	public static class Baseline {
+
+		private final double[] functionValues;
+		private final double[] distances;
+
+		public Baseline(double[] functionValues, double[] distances) {
+			this.functionValues = functionValues;
+			this.distances = distances;
+		}
+
+		public double[] getFunctionValues() {
+			return functionValues;
+		}
+
+		public double[] getDistances() {
+			return distances;
+		}
+	}
+
+
+	// everything the S-PSO results depend on
+	public static String getKey() {
+		String key = "function=" + Parameters.functionNum
+				+ " topology=" + Parameters.topology
+				+ " self=" + Parameters.selfModel
+				+ " influence=" + Parameters.influenceModel
+				+ " dims=" + Parameters.numDimensions
+				+ " particles=" + Parameters.numParticles
+				+ " iterations=" + Parameters.numIterations
+				+ " runs=" + Parameters.numPSORuns
+				+ " seed=" + Parameters.masterSeed
+				+ " dummies=" + Parameters.dummyParticles;
+		// the synchronous update, the kernel mode and the stopping rules are only in the key
+		// when they aren't the default, so files saved before they existed still match
+		// NOTE: the other settings a run copies into its SimulationContext (the spatial grid,
+		//       the swarm and tree backends, the flock space and random trees) give exactly the
+		//       same S-PSO results, so they aren't in the key
+		if (Parameters.synchronousFlock) {
+			key += " synchronous";
+		}
+		// the blocked kernels add the terms up in a different order, so the last bits of the
+		// function values can be different (see FunctionKernels)
+		if (Parameters.kernelMode != TestFunctions.KernelMode.SCALAR) {
+			key += " kernel=" + Parameters.kernelMode;
+		}
+		if (Parameters.stopAtSuccess) {
+			key += " stopAtSuccess";
+		}
+		if (Parameters.stagnationIterations > 0) {
+			key += " stagnation=" + Parameters.stagnationIterations;
+		}
+		if (Parameters.maxFunctionEvaluations > 0) {
+			key += " maxEvaluations=" + Parameters.maxFunctionEvaluations;
+		}
+		if (Parameters.topology == PSO.Topology.vonNEUMANN || Parameters.topology == PSO.Topology.MOORE) {
+			key += " grid=" + Parameters.numRowsVonNeumannAndMoore + "x" + Parameters.numColsVonNeumannAndMoore;
+		}
+		return key;
+	}
+
+
+	// the S-PSO results for the current settings, or null if they haven't been saved
+	// (or the file can't be read, in which case S-PSO is just run again)
+	public static Baseline load() {
+
+		if (!isUsable()) {
+			return null;
+		}
+
+		String key = getKey();
+		Path file = getFile(key);
+		if (!Files.exists(file)) {
+			return null;
+		}
+
+		int numRuns = Parameters.numPSORuns;
+		double[] functionValues = new double[numRuns];
+		double[] distances = new double[numRuns];
+		try (BufferedReader reader = Files.newBufferedReader(file)) {
+			// two different keys could end up with the same file name, so check it
+			if (!key.equals(reader.readLine())) {
+				return null;
+			}
+			for (int run = 0; run < numRuns; run++) {
+				String[] values = reader.readLine().split(" ");
+				functionValues[run] = Double.parseDouble(values[0]);
+				distances[run] = Double.parseDouble(values[1]);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			System.out.println("couldn't read S-PSO results from " + file + "; running S-PSO again");
+			return null;
+		}
+		return new Baseline(functionValues, distances);
+	}
+
+
+	// save the S-PSO results for the current settings
+	public static void save(double[] functionValues, double[] distances) {
+
+		if (!isUsable()) {
+			return;
+		}
+
+		String key = getKey();
+		Path file = getFile(key);
+		try {
+			Files.createDirectories(file.getParent());
+			Path tempFile = Files.createTempFile(file.getParent(), "baseline", ".tmp");
+			try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tempFile))) {
+				writer.println(key);
+				for (int run = 0; run < functionValues.length; run++) {
+					writer.println(Double.toString(functionValues[run]) + " " + Double.toString(distances[run]));
+				}
+			}
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			// not fatal: S-PSO will just be run again next time
+			System.out.println("couldn't save S-PSO results to " + file);
+		}
+	}
+
+
+	// false if the results aren't to be read or written (see the comment at the top)
+	private static boolean isUsable() {
+		return Parameters.baselineCacheDir != null && Parameters.evaluationCacheEpsilon == 0.0;
+	}
+
+
+	// the file for a key: a few of the settings, so the files can be told apart, plus the
+	// hash of the whole key
+	private static Path getFile(String key) {
+		String name = "spso-f" + Parameters.functionNum + "-" + Parameters.topology
+				+ "-d" + Parameters.numDimensions + "-p" + Parameters.numParticles
+				+ "-" + Integer.toHexString(key.hashCode()) + ".txt";
+		return Paths.get(Parameters.baselineCacheDir, name);
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * One of the eight functions in TestFunctions, as an ObjectiveFunctionProvider. TestFunctions
+ * makes one for each function, with the values (ranges, speed limits, optimum, success
+ * criterion) defined at the top of TestFunctions, and these are the only place they are
+ * looked up from; the function is evaluated with its kernel in FunctionKernels.
+ *
+ * The kernel is picked once, when the function for a run is created (see
+ * FunctionKernels.getKernel), so evaluating a particle goes straight to it.
+ */
+
+public class BuiltInFunction implements ObjectiveFunctionProvider {
+
+	private final int functionNum;
+	private final double initMinVal;
+	private final double initRange;
+	private final double searchSpaceMaxVal;
+	private final double searchSpaceRange;
+	private final double speedMinVal;
+	private final double speedMaxVal;
+	private final double speedRange;
+	private final double optCoord;
+	private final double optValue;
+	private final double shiftRange;
+	private final double successCriterion;
+	private final double successDistanceFromOpt;
+
+
+	public BuiltInFunction(int functionNum, double initMinVal, double initRange, 
+			double searchSpaceMaxVal, double searchSpaceRange, 
+			double speedMinVal, double speedMaxVal, double speedRange, 
+			double optCoord, double optValue, double shiftRange, 
+			double successCriterion, double successDistanceFromOpt) {
+		this.functionNum = functionNum;
+		this.initMinVal = initMinVal;
+		this.initRange = initRange;
+		this.searchSpaceMaxVal = searchSpaceMaxVal;
+		this.searchSpaceRange = searchSpaceRange;
+		this.speedMinVal = speedMinVal;
+		this.speedMaxVal = speedMaxVal;
+		this.speedRange = speedRange;
+		this.optCoord = optCoord;
+		this.optValue = optValue;
+		this.shiftRange = shiftRange;
+		this.successCriterion = successCriterion;
+		this.successDistanceFromOpt = successDistanceFromOpt;
+	}
+
+
+	public ObjectiveFunction create(double shiftAmount, TestFunctions.KernelMode mode) {
+		return new ShiftedFunction(FunctionKernels.getKernel(functionNum, mode), shiftAmount, getOptValue());
+	}
+
+
+	// a kernel with the shift for a run
+	private static final class ShiftedFunction implements ObjectiveFunction {
+
+		private final FunctionKernels.Kernel kernel;
+		private final double shiftAmount;
+		private final double optValue;
+
+		public ShiftedFunction(FunctionKernels.Kernel kernel, double shiftAmount, double optValue) {
+			this.kernel = kernel;
+			this.shiftAmount = shiftAmount;
+			this.optValue = optValue;
+		}
+
+		public double evaluate(double[] x, int offset, int dims) {
+			return kernel.eval(x, offset, dims, shiftAmount);
+		}
+
+		public double getOptValue() {
+			return optValue;
+		}
+	}
+
+
+	// getters
+
+	public int getFunctionNum() {
+		return functionNum;
+	}
+
+	public String getName() {
+		return TestFunctions.getFunctionName(functionNum);
+	}
+
+	public double getInitMinVal() {
+		return initMinVal;
+	}
+
+	public double getInitRange() {
+		return initRange;
+	}
+
+	public double getSearchSpaceMaxVal() {
+		return searchSpaceMaxVal;
+	}
+
+	public double getSearchSpaceRange() {
+		return searchSpaceRange;
+	}
+
+	public double getSpeedMinVal() {
+		return speedMinVal;
+	}
+
+	public double getSpeedMaxVal() {
+		return speedMaxVal;
+	}
+
+	public double getSpeedRange() {
+		return speedRange;
+	}
+
+	public double getOptCoord() {
+		return optCoord;
+	}
+
+	public double getOptValue() {
+		return optValue;
+	}
+
+	public double getShiftRange() {
+		return shiftRange;
+	}
+
+	public double getSuccessCriterion() {
+		return successCriterion;
+	}
+
+	public double getSuccessDistanceFromOpt() {
+		return successDistanceFromOpt;
+	}
+
+}
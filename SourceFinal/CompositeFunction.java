@@ -0,0 +1,197 @@
+/*
+ * A composition function, as in the CEC 2013/2017 benchmarks: rotated Rastrigin, Griewank
+ * and Ackley functions, each with its own optimum and rotation (see RotationMatrices.java),
+ * mixed together with weights that depend on how close the point is to each optimum:
+ *
+ * 	w_i = exp(-|x - o_i|^2 / (2 D sigma_i^2)) / |x - o_i|
+ * 	F(x) = sum of w_i * (g_i(x) + bias_i), over the sum of w_i
+ *
+ * The first component has no bias and its optimum at the shifted optimum location of the run
+ * (see SimulationContext), so that's where the global optimum is, with value 0; the others are
+ * local optima, at fixed random points, that a swarm can get stuck in. The search space is
+ * [-100, 100] in every dimension, and each component's search space is scaled to fit it.
+ */
+
+public class CompositeFunction implements ObjectiveFunctionProvider {
+
+	// the components, in order: the function, sigma (how far its weight reaches) and bias
+	private static final int[] COMPONENTS = { TestFunctions.RASTRIGIN_FUNCTION_NUM, TestFunctions.GRIEWANK_FUNCTION_NUM, TestFunctions.ACKLEY_FUNCTION_NUM };
+	private static final double[] SIGMAS = { 10.0, 20.0, 30.0 };
+	private static final double[] BIASES = { 0.0, 100.0, 200.0 };
+
+	private static final double SEARCH_SPACE_MIN_VAL = -100.0;
+	private static final double SEARCH_SPACE_MAX_VAL = 100.0;
+	private static final double SEARCH_SPACE_RANGE = SEARCH_SPACE_MAX_VAL - SEARCH_SPACE_MIN_VAL;
+
+	// the optima are all within this much of the origin
+	private static final double OPT_RANGE = 80.0;
+
+	private static final double SUCCESS_CRITERION = 10.0;
+
+	private final int functionNum;
+
+
+	public CompositeFunction(int functionNum) {
+		this.functionNum = functionNum;
+	}
+
+
+	public ObjectiveFunction create(double shiftAmount, TestFunctions.KernelMode mode) {
+		return new Composite(mode, shiftAmount);
+	}
+
+
+	// the function for a run; the matrices and optima for the number of dimensions are looked
+	// up the first time a point is evaluated
+	private static final class Composite implements ObjectiveFunction {
+
+		private final FunctionKernels.Kernel[] kernels = new FunctionKernels.Kernel[COMPONENTS.length];
+		private final double[] optCoords = new double[COMPONENTS.length];
+		private final double[] scales = new double[COMPONENTS.length];
+		private final double shiftAmount;
+		private Tables tables = null;
+
+		public Composite(TestFunctions.KernelMode mode, double shiftAmount) {
+			this.shiftAmount = shiftAmount;
+			for (int i = 0; i < COMPONENTS.length; i++) {
+				kernels[i] = FunctionKernels.getKernel(COMPONENTS[i], mode);
+				ObjectiveFunctionProvider component = TestFunctions.getProvider(COMPONENTS[i]);
+				optCoords[i] = component.getOptCoord();
+				scales[i] = component.getSearchSpaceMaxVal() / SEARCH_SPACE_MAX_VAL;
+			}
+		}
+
+		public double evaluate(double[] x, int offset, int dims) {
+
+			Tables t = tables;
+			if (t == null || t.dims != dims) {
+				t = new Tables(dims);
+				tables = t;
+			}
+
+			double[] scratch = RotationMatrices.getScratch(2 * dims);
+			double sumWeights = 0.0;
+			double sumWeighted = 0.0;
+			double sumValues = 0.0;
+
+			for (int i = 0; i < COMPONENTS.length; i++) {
+
+				// y = x - the component's optimum, and its squared length
+				double[] optimum = t.optima[i];
+				double lengthSquared = 0.0;
+				for (int d = 0; d < dims; d++) {
+					double y = x[offset + d] - ((optimum == null) ? shiftAmount : optimum[d]);
+					scratch[d] = y;
+					lengthSquared += y * y;
+				}
+
+				// z = y rotated and scaled to the component's search space, around its own optimum
+				RotationMatrices.rotate(t.matrices[i], scratch, 0, scratch, dims, dims, scales[i]);
+				for (int d = dims; d < 2 * dims; d++) {
+					scratch[d] += optCoords[i];
+				}
+				double value = kernels[i].eval(scratch, dims, dims, 0.0) + BIASES[i];
+
+				// right on one of the optima, only that component counts
+				if (lengthSquared == 0.0) {
+					return value;
+				}
+
+				double weight = Math.exp(-lengthSquared / (2.0 * dims * SIGMAS[i] * SIGMAS[i])) / Math.sqrt(lengthSquared);
+				sumWeights += weight;
+				sumWeighted += weight * value;
+				sumValues += value;
+			}
+
+			// far enough from all of the optima, every weight is 0, and they all count the same
+			if (sumWeights == 0.0) {
+				return sumValues / COMPONENTS.length;
+			}
+			return sumWeighted / sumWeights;
+		}
+
+		public double getOptValue() {
+			return 0.0;
+		}
+	}
+
+
+	// the matrices and optima of the components for a number of dimensions; the first
+	// component's optimum is the shifted optimum of the run (null here, see evaluate), the
+	// others are fixed random points
+	// NOTE: the fields are final, so a thread that sees a Tables sees all of it
+	private static final class Tables {
+
+		private final int dims;
+		private final double[][] matrices = new double[COMPONENTS.length][];
+		private final double[][] optima = new double[COMPONENTS.length][];
+
+		public Tables(int dims) {
+			this.dims = dims;
+			for (int i = 0; i < COMPONENTS.length; i++) {
+				matrices[i] = RotationMatrices.getMatrix(dims, i);
+				optima[i] = (i == 0) ? null : RotationMatrices.getPoint(dims, i, OPT_RANGE);
+			}
+		}
+	}
+
+
+	// getters
+
+	public int getFunctionNum() {
+		return functionNum;
+	}
+
+	public String getName() {
+		return "COMPOSITE_FUNCTION_1";
+	}
+
+	public double getInitMinVal() {
+		return SEARCH_SPACE_MIN_VAL;
+	}
+
+	public double getInitRange() {
+		return SEARCH_SPACE_RANGE;
+	}
+
+	public double getSearchSpaceMaxVal() {
+		return SEARCH_SPACE_MAX_VAL;
+	}
+
+	public double getSearchSpaceRange() {
+		return SEARCH_SPACE_RANGE;
+	}
+
+	public double getSpeedMinVal() {
+		return SEARCH_SPACE_MIN_VAL;
+	}
+
+	public double getSpeedMaxVal() {
+		return SEARCH_SPACE_MAX_VAL;
+	}
+
+	public double getSpeedRange() {
+		return SEARCH_SPACE_RANGE;
+	}
+
+	public double getOptCoord() {
+		return 0.0;
+	}
+
+	public double getOptValue() {
+		return 0.0;
+	}
+
+	public double getShiftRange() {
+		return OPT_RANGE;
+	}
+
+	public double getSuccessCriterion() {
+		return SUCCESS_CRITERION;
+	}
+
+	public double getSuccessDistanceFromOpt() {
+		return SEARCH_SPACE_RANGE * TestFunctions.SUCCESS_DISTANCE_FRACTION;
+	}
+
+}
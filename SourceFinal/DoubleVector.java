@@ -6,7 +6,7 @@
  * a scalar value to all elements in the vector.
  */
 
-
+import java.util.random.RandomGenerator;
 
 public class DoubleVector {
 
@@ -39,11 +39,11 @@ public class DoubleVector {
 
 	// create and return a DoubleVector with elements in (-maxMagnitude, +maxMagnitude),
 	// i.e. not including -maxMagnitude or +maxMagnitude
-	public static DoubleVector randomVector(int size, double maxMagnitude) {
+	public static DoubleVector randomVector(int size, double maxMagnitude, RandomGenerator rand) {
 		DoubleVector v = new DoubleVector(size);
 		for(int i = 0 ; i < size ; ++i) {
-			double element = Utilities.rand.nextDouble() * maxMagnitude;
-			if (Utilities.rand.nextDouble() < 0.5)
+			double element = rand.nextDouble() * maxMagnitude;
+			if (rand.nextDouble() < 0.5)
 				element *= -1.0;
 			v.set(i, element);
 		}
@@ -78,6 +78,20 @@ public class DoubleVector {
 	}
 
 
+	// the array the values are kept in (not a copy), for code that works on raw arrays,
+	// e.g. FunctionKernels; it shouldn't be changed
+	public double[] getValues() {
+		return vector;
+	}
+
+
+	// copy this vector's worth of values from an array, starting at offset; used to get
+	// a particle's row out of the arrays in ArraySwarm
+	public void copyFrom(double[] values, int offset) {
+		System.arraycopy(values, offset, vector, 0, vector.length);
+	}
+
+
 	
 	// GETTERS AND SETTERS
 
@@ -279,11 +293,11 @@ public class DoubleVector {
 
 	// add a random scalar in (-magnitude, +magnitude) to each element
 	// i.e. not including -magnitude or +magnitude
-	public void addRandomScalarMagnitude(double magnitude) {
+	public void addRandomScalarMagnitude(double magnitude, RandomGenerator rand) {
 
 		for(int i = 0 ; i < vector.length ; ++i) {
-			double element = Utilities.rand.nextDouble() * magnitude;
-			if (Utilities.rand.nextDouble() < 0.5)
+			double element = rand.nextDouble() * magnitude;
+			if (rand.nextDouble() < 0.5)
 				element *= -1.0;
 			vector[i] += element;
 		}
@@ -336,16 +350,32 @@ public class DoubleVector {
 
 
 	// multiply each element of the vector by a value in [lowVal, highVal)
-	public void multRandomScalar(double lowVal, double highVal) {
+	public void multRandomScalar(double lowVal, double highVal, RandomGenerator rand) {
 
 		double range = highVal - lowVal;
 		for(int i = 0 ; i < vector.length ; ++i)
-			vector[i] *= lowVal + (Utilities.rand.nextDouble() * range);
+			vector[i] *= lowVal + (rand.nextDouble() * range);
 	}
 
 
 
 
+	// add (v1 - v2) to this vector, with each element of (v1 - v2) multiplied by a value in [lowVal, highVal);
+	// same as sub(v1, v2), then multRandomScalar(lowVal, highVal, rand), then addVector, but without
+	// making a new vector (this is the "axpy" of the PSO velocity update, with a random scale)
+	public void addRandomScaledDiff(DoubleVector v1, DoubleVector v2, double lowVal, double highVal, RandomGenerator rand) {
+
+		if (vector.length != v1.size() || vector.length != v2.size()) {
+			System.out.println("error:  vectors not same size in DoubleVector.addRandomScaledDiff");
+			System.exit(0);
+		}
+
+		double range = highVal - lowVal;
+		for(int i = 0 ; i < vector.length ; ++i)
+			vector[i] += (v1.vector[i] - v2.vector[i]) * (lowVal + (rand.nextDouble() * range));
+	}
+
+
 	// multiply each item in a vector by a scalar and return a second vector that is the result
 	public static DoubleVector multVectorScalar (DoubleVector vectorIn, double scalar) {
 
@@ -0,0 +1,138 @@
+/*
+ * Remembers the function values of the positions evaluated in a PSO run, so a particle that
+ * comes back to one of them (which happens a lot once the swarm has collapsed, or when the
+ * velocities are held at the speed limits) isn't evaluated again. It sits in front of the run's
+ * ObjectiveFunction (see SimulationContext), so the swarms don't know it is there.
+ *
+ * Positions are looked up by their cells in a grid with cells epsilon wide in every dimension;
+ * with epsilon 0, only exactly the same position (bit for bit) matches, so the values are the
+ * same as without the cache. Only the most recently used maxSize positions are kept.
+ *
+ * The number of hits (values that came from the cache) and misses (values that had to be
+ * worked out) is added up over all runs, and written to the results file (see TestFlockPSO).
+ *
+ * Looking a position up doesn't allocate anything: its cell is worked out in a scratch Cell
+ * that belongs to the cache (under the lock, since the particles may be evaluated on several
+ * threads), and it is only copied when it is put in the cache.
+ *
+ * NOTE: looking a position up costs much less than evaluating one of the rotated functions, or
+ *       a function added with an ObjectiveFunctionProvider, but not much less than evaluating
+ *       one of the built-in functions, so the cache is off by default
+ *       (Parameters.evaluationCacheSize = 0)
+ * NOTE: with epsilon > 0, a position gets the value of whichever position in its cell was
+ *       evaluated first; when the particles are evaluated on several threads, that can change
+ *       from one program to the next, so the results can too
+ */
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EvaluationCache implements ObjectiveFunction {
+
+	// hits and misses over all runs
+	private static AtomicLong totalHits = new AtomicLong();
+	private static AtomicLong totalMisses = new AtomicLong();
+
+	private final ObjectiveFunction function;
+	private final double epsilon;
+
+	// values by position, least recently used first
+	private final LinkedHashMap<Cell, Double> values;
+
+	// the cell being looked up (only used while holding the lock)
+	private final Cell lookup = new Cell();
+
+
+	public EvaluationCache(ObjectiveFunction function, final int maxSize, double epsilon) {
+		this.function = function;
+		this.epsilon = epsilon;
+		values = new LinkedHashMap<Cell, Double>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Cell, Double> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+
+	public double evaluate(double[] x, int offset, int dims) {
+
+		synchronized (this) {
+			lookup.set(x, offset, dims, epsilon);
+			Double value = values.get(lookup);
+			if (value != null) {
+				totalHits.incrementAndGet();
+				return value;
+			}
+		}
+
+		// evaluated outside the lock, so other threads can use the cache meanwhile; the cell
+		// is worked out again afterwards, since another thread may have changed lookup by then
+		double value = function.evaluate(x, offset, dims);
+		synchronized (this) {
+			totalMisses.incrementAndGet();
+			lookup.set(x, offset, dims, epsilon);
+			values.put(lookup.copy(), value);
+		}
+		return value;
+	}
+
+
+	public double getOptValue() {
+		return function.getOptValue();
+	}
+
+
+	// the cell of a position in the grid: the bits of each coordinate if epsilon is 0, otherwise
+	// the number of the cell along each dimension
+	// NOTE: only the cache's scratch Cell is ever changed; the ones in the cache are copies
+	private static final class Cell {
+
+		private long[] coords = new long[0];
+		private int hash;
+
+		// make this the cell of the position x[offset], ..., x[offset + dims - 1]
+		public void set(double[] x, int offset, int dims, double epsilon) {
+			if (coords.length != dims) {
+				coords = new long[dims];
+			}
+			for (int i = 0; i < dims; i++) {
+				if (epsilon == 0.0) {
+					coords[i] = Double.doubleToLongBits(x[offset + i]);
+				}
+				else {
+					coords[i] = (long) Math.floor(x[offset + i] / epsilon);
+				}
+			}
+			hash = Arrays.hashCode(coords);
+		}
+
+		public Cell copy() {
+			Cell cell = new Cell();
+			cell.coords = coords.clone();
+			cell.hash = hash;
+			return cell;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object other) {
+			return (other instanceof Cell) && Arrays.equals(coords, ((Cell) other).coords);
+		}
+	}
+
+
+	// getters
+
+	public static long getTotalHits() {
+		return totalHits.get();
+	}
+
+	public static long getTotalMisses() {
+		return totalMisses.get();
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Remembers the fitnesses of trees that have already been evaluated, so that a tree that
+ * runs exactly the same way as one of them (an elite copied into the next generation, or a
+ * child that crossover and mutation turned back into an existing tree) doesn't have to
+ * be evaluated again; each evaluation is numPSORuns runs of FLOCK-PSO.
+ *
+ * Trees are looked up by their canonical hash (see GPTree.getCanonicalHash). Only the
+ * most recently used maxSize fitnesses are kept.
+ *
+ * NOTE: the fitness of a tree is noisy, so a remembered fitness is just one sample (or the
+ *       average of a few, see Population.EliteResamplePolicy); this is why the cache is off
+ *       by default (Parameters.fitnessCacheSize = 0)
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class FitnessCache {
+
+	// a remembered fitness, and how many evaluations it is the average of
+	public static class Entry {
+
+		private final double fitness;
+		private final int numSamples;
+
+		public Entry(double fitness, int numSamples) {
+			this.fitness = fitness;
+			this.numSamples = numSamples;
+		}
+
+		public double getFitness() {
+			return fitness;
+		}
+
+		public int getNumSamples() {
+			return numSamples;
+		}
+	}
+
+
+	// entries by canonical hash, least recently used first
+	private LinkedHashMap<Long, Entry> entries;
+
+
+	public FitnessCache(final int maxSize) {
+		entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+
+	// null if there is no fitness for the tree
+	public synchronized Entry get(GPTree tree) {
+		return entries.get(tree.getCanonicalHash());
+	}
+
+
+	// remember the tree's fitness (replacing what was there)
+	public synchronized void put(GPTree tree) {
+		entries.put(tree.getCanonicalHash(), new Entry(tree.getFitness(), tree.numFitnessSamples));
+	}
+
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+}
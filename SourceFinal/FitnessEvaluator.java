@@ -0,0 +1,98 @@
+/*
+ * Calculates the fitnesses of a batch of GP trees, e.g. the initial population or
+ * the children in a generation. Each tree gets its own PSO object, so the evaluations
+ * don't share anything and can be run on several threads at once.
+ * 
+ * The results are returned in the same order as the trees were sent in, no matter
+ * which evaluation finishes first. Each tree comes with its own stream of random numbers
+ * (split off in order before the evaluations start), so the fitnesses are the same no
+ * matter how many threads there are.
+ * 
+ * Each result is a FitnessResult, which holds the fitness along with what it was worked
+ * out from (and whether racing cut the evaluation short, see Parameters.useRacing).
+ * 
+ * The ExecutorService that does the work can be sent in; by default a ForkJoinPool
+ * with Parameters.numEvalThreads threads is used. With a single thread, the trees are
+ * just evaluated one after another on the calling thread.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.SplittableRandom;
+import java.util.function.BiFunction;
+
+public class FitnessEvaluator {
+
+	// null when evaluating on the calling thread
+	private ExecutorService executor;
+
+
+	public FitnessEvaluator(int numThreads) {
+		if (numThreads > 1) {
+			executor = new ForkJoinPool(numThreads);
+		}
+		else {
+			executor = null;
+		}
+	}
+
+
+	// use an executor that has been set up somewhere else
+	public FitnessEvaluator(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+
+	// calculate the fitness of every tree in the list; fitnesses[i] is the result for trees.get(i),
+	// using the random numbers in treeRands.get(i)
+	public FitnessResult[] evaluateAll(List<GPTree> trees, List<SplittableRandom> treeRands, 
+			BiFunction<GPTree, SplittableRandom, FitnessResult> fitnessFunction) {
+
+		FitnessResult[] fitnesses = new FitnessResult[trees.size()];
+
+		if (executor == null) {
+			for (int i = 0; i < trees.size(); i++) {
+				fitnesses[i] = fitnessFunction.apply(trees.get(i), treeRands.get(i));
+			}
+			return fitnesses;
+		}
+
+		// start all the evaluations, then collect the results in tree order
+		List<Future<FitnessResult>> results = new ArrayList<Future<FitnessResult>>();
+		for (int i = 0; i < trees.size(); i++) {
+			final GPTree tree = trees.get(i);
+			final SplittableRandom treeRand = treeRands.get(i);
+			results.add(executor.submit(new Callable<FitnessResult>() {
+				public FitnessResult call() {
+					return fitnessFunction.apply(tree, treeRand);
+				}
+			}));
+		}
+
+		try {
+			for (int i = 0; i < trees.size(); i++) {
+				fitnesses[i] = results.get(i).get();
+			}
+		}
+		catch (InterruptedException | ExecutionException e) {
+			System.out.println("error: fitness evaluation failed in FitnessEvaluator.evaluateAll");
+			e.printStackTrace();
+			System.exit(0);
+		}
+
+		return fitnesses;
+	}
+
+
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -4,7 +4,8 @@
  * 	- how far in the solution space that value is 
  * 	  from the location of the optimum 
  * This class just allows us to package FitnessData objects 
- * for both.
+ * for both, along with the fitness of the tree that is
+ * worked out from them (see Population.calcFitness).
  */
 
 
@@ -13,6 +14,14 @@ public class FitnessResult {
 	private FitnessData functionValue;
 	private FitnessData distGlobalOpt;
 	
+	private double fitness;
+	// true if racing stopped the FLOCK-PSO runs early (see Parameters.useRacing), so the
+	// fitness is from only some of the runs: it isn't a full sample of the tree's fitness
+	private boolean raced = false;
+	// the number of iterations each FLOCK-PSO run did (see PSO.runSwarm); only the runs
+	// that were done if racing stopped them early
+	private int[] iterationsRun;
+	
 	public FitnessResult() {
 		functionValue = null;
 		distGlobalOpt = null;
@@ -40,6 +49,30 @@ public class FitnessResult {
 	public void setDistGlobalOpt(FitnessData distGlobalOpt) {
 		this.distGlobalOpt = distGlobalOpt;
 	}
+
+	public double getFitness() {
+		return fitness;
+	}
+
+	public void setFitness(double fitness) {
+		this.fitness = fitness;
+	}
+
+	public boolean isRaced() {
+		return raced;
+	}
+
+	public void setRaced(boolean raced) {
+		this.raced = raced;
+	}
+
+	public int[] getIterationsRun() {
+		return iterationsRun;
+	}
+
+	public void setIterationsRun(int[] iterationsRun) {
+		this.iterationsRun = iterationsRun;
+	}
 	
 	
 	
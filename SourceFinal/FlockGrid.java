@@ -0,0 +1,187 @@
+/*
+ * A uniform grid over the 2D flock space, used to find the particles that might be
+ * within a particle's neighborRadius without checking the distance to every other
+ * particle (which is O(N^2) per iteration and gets slow with lots of dummy particles).
+ *
+ * The cells are square and at least as big as the largest neighborRadius in the swarm
+ * when the grid is rebuilt (once per Swarm.update), so a query usually only has to look
+ * at the particle's own cell and the ones around it. Each cell keeps a linked list of the
+ * particles in it (stored in arrays, indexed by particleID), so when a particle moves it
+ * can be switched to its new cell right away; particles that move later in the same
+ * iteration see it where it really is, just like with the brute-force search.
+ *
+ * Particles outside the flock space (the boundary is soft, so they do get out) are put in
+ * the nearest edge cell. That can only make a cell hold more particles than it should, never
+ * fewer, so no neighbors are missed.
+ *
+ * getCandidates returns the particle IDs in increasing order, so the caller processes
+ * neighbors in the same order as the brute-force loop and the sums come out exactly the same.
+ */
+
+import java.util.Arrays;
+
+public class FlockGrid {
+
+	// don't let the grid get bigger than this many cells on a side, even if the radii are tiny
+	private static final int MAX_CELLS_PER_SIDE = 64;
+
+	private int numParticles;
+
+	// the flock space goes from minCoord to minCoord + spaceLength in each dimension
+	private double minCoord;
+	private double spaceLength;
+
+	private int cellsPerSide;
+	private double cellSize;
+
+	// linked list of particles in each cell: cellHead[cell] is the first particle in the
+	// cell (-1 if empty), nextInCell/prevInCell link the particles in the cell together
+	private int[] cellHead;
+	private int[] nextInCell;
+	private int[] prevInCell;
+	// the cell each particle is in
+	private int[] particleCell;
+
+
+	public FlockGrid(int numParticles, int flockSpaceDimLength) {
+		this.numParticles = numParticles;
+		this.spaceLength = flockSpaceDimLength;
+		this.minCoord = -flockSpaceDimLength / 2;   // int division, like the boundary checks in Particle
+		this.nextInCell = new int[numParticles];
+		this.prevInCell = new int[numParticles];
+		this.particleCell = new int[numParticles];
+		this.cellHead = new int[MAX_CELLS_PER_SIDE * MAX_CELLS_PER_SIDE];
+	}
+
+
+	// size the cells from the largest radius and put every particle in its cell
+	public void rebuild(ParticleState[] particles) {
+
+		double maxRadius = 0.0;
+		for (int p = 0 ; p < particles.length ; p++) {
+			double radius = particles[p].getRadius();
+			if (radius > maxRadius && radius < Double.POSITIVE_INFINITY) {
+				maxRadius = radius;
+			}
+		}
+
+		// cells have to be at least as big as the largest radius (but the grid can't be
+		// bigger than the maximum number of cells on a side, or smaller than one cell)
+		cellsPerSide = MAX_CELLS_PER_SIDE;
+		if (maxRadius > 0.0) {
+			cellsPerSide = (int) Math.min(MAX_CELLS_PER_SIDE, Math.floor(spaceLength / maxRadius));
+		}
+		if (cellsPerSide < 1) {
+			cellsPerSide = 1;
+		}
+		cellSize = spaceLength / cellsPerSide;
+
+		Arrays.fill(cellHead, 0, cellsPerSide * cellsPerSide, -1);
+		for (int p = 0 ; p < particles.length ; p++) {
+			addToCell(p, cellOf(particles[p].getFlockX(), particles[p].getFlockY()));
+		}
+	}
+
+
+	// call after a particle's flock location changes
+	public void moveParticle(int particleID, DoubleVector location) {
+		moveParticle(particleID, location.get(0), location.get(1));
+	}
+
+	public void moveParticle(int particleID, double x, double y) {
+		int newCell = cellOf(x, y);
+		if (newCell != particleCell[particleID]) {
+			removeFromCell(particleID);
+			addToCell(particleID, newCell);
+		}
+	}
+
+
+	// put the IDs of all the particles that could be within radius of location into
+	// candidates, in increasing order, and return how many there are; if the radius covers
+	// the whole grid (or isn't a normal number), every particle is a candidate
+	public int getCandidates(DoubleVector location, double radius, int[] candidates) {
+		return getCandidates(location.get(0), location.get(1), radius, candidates);
+	}
+
+	public int getCandidates(double x, double y, double radius, int[] candidates) {
+
+		// nothing is within a negative radius
+		if (radius < 0.0) {
+			return 0;
+		}
+
+		// + 1 so rounding in cellOf can never cause a cell to be skipped
+		double ringsNeeded = Math.floor(radius / cellSize) + 1;
+		if (!(ringsNeeded < cellsPerSide)) {
+			for (int p = 0 ; p < numParticles ; p++) {
+				candidates[p] = p;
+			}
+			return numParticles;
+		}
+		int rings = (int) ringsNeeded;
+
+		int col = clampedIndex(x);
+		int row = clampedIndex(y);
+		int minCol = Math.max(0, col - rings);
+		int maxCol = Math.min(cellsPerSide - 1, col + rings);
+		int minRow = Math.max(0, row - rings);
+		int maxRow = Math.min(cellsPerSide - 1, row + rings);
+
+		int numCandidates = 0;
+		for (int r = minRow ; r <= maxRow ; r++) {
+			for (int c = minCol ; c <= maxCol ; c++) {
+				for (int p = cellHead[r * cellsPerSide + c] ; p != -1 ; p = nextInCell[p]) {
+					candidates[numCandidates++] = p;
+				}
+			}
+		}
+
+		// same order as the brute-force search
+		Arrays.sort(candidates, 0, numCandidates);
+		return numCandidates;
+	}
+
+
+	private int cellOf(double x, double y) {
+		return clampedIndex(y) * cellsPerSide + clampedIndex(x);
+	}
+
+	// index of the row/column a coordinate falls in, clamped to the edges of the grid
+	private int clampedIndex(double coord) {
+		double index = Math.floor((coord - minCoord) / cellSize);
+		if (index < 0 || index != index) { // index != index is true for NaN
+			return 0;
+		}
+		if (index > cellsPerSide - 1) {
+			return cellsPerSide - 1;
+		}
+		return (int) index;
+	}
+
+	private void addToCell(int particleID, int cell) {
+		particleCell[particleID] = cell;
+		prevInCell[particleID] = -1;
+		nextInCell[particleID] = cellHead[cell];
+		if (cellHead[cell] != -1) {
+			prevInCell[cellHead[cell]] = particleID;
+		}
+		cellHead[cell] = particleID;
+	}
+
+	private void removeFromCell(int particleID) {
+		int cell = particleCell[particleID];
+		int prev = prevInCell[particleID];
+		int next = nextInCell[particleID];
+		if (prev != -1) {
+			nextInCell[prev] = next;
+		}
+		else {
+			cellHead[cell] = next;
+		}
+		if (next != -1) {
+			prevInCell[next] = prev;
+		}
+	}
+
+}
@@ -0,0 +1,12 @@
+/*
+ * A GPTree turned into a Java class of its own (see FlockProgramGenerator.java), so the JIT
+ * compiler can optimize each tree like any other code.
+ *
+ * run does exactly what running the tree does to the particle.
+ */
+
+public interface FlockProgram {
+
+	public void run(ParticleState particle);
+
+}
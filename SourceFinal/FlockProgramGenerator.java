@@ -0,0 +1,394 @@
+/*
+ * Turns a GPTree into a FlockProgram: Java source is written for the tree, compiled in memory
+ * with the system Java compiler, and loaded as a hidden class, so each tree ends up as an
+ * ordinary method that HotSpot can inline and optimize.
+ *
+ * The generated code follows the recursive evaluator in GPNode (and GPProgram) exactly: every value goes
+ * into its own local variable, in the order the recursive evaluator works them out, and
+ * the same quirks are kept (DIV by 0 gives 0.0, INC and DEC give 0.0, AND and OR don't
+ * short-circuit, a node of the wrong type gives 0.0 or false).
+ *
+ * Compiling a class takes a while, so the programs are kept in a cache, by source code, so
+ * copies of a tree (e.g. elites) share one. The cache only holds the most recently used
+ * programs; a hidden class that isn't in the cache or used by any tree is unloaded.
+ *
+ * If there is no Java compiler (i.e. only a JRE) or a tree doesn't compile (e.g. the method
+ * would be too big), null is returned, with a message saying why, and the tree is run as a
+ * GPProgram instead.
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+public class FlockProgramGenerator {
+
+	// name of the generated class (a hidden class gets a unique name added when it is defined)
+	private static final String CLASS_NAME = "GeneratedFlockProgram";
+
+	// programs by source code, least recently used first
+	private static LinkedHashMap<String, FlockProgram> cache = null;
+
+	// programs that are being compiled, by source code, so a tree that several runs need at
+	// once is only compiled once
+	private static HashMap<String, CompletableFuture<FlockProgram>> compiling = new HashMap<String, CompletableFuture<FlockProgram>>();
+
+	// null if there is no Java compiler
+	private static JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+	private static boolean warnedNoCompiler = false;
+
+
+	// what a node's value is wanted for by its parent
+	private static enum Want { DOUBLE, BOOLEAN, NONE };
+
+
+	// the program for the tree with the given root; generated if it isn't in the cache
+	// NOTE: only looking in the cache is done under the lock; the compiling is done outside
+	//       it, so other threads can get their programs (or compile others) in the meantime,
+	//       and a thread that wants a program that is being compiled waits for it
+	public static FlockProgram getProgram(GPNode root) {
+
+		String source = generateSource(root);
+		CompletableFuture<FlockProgram> result;
+		boolean compileHere = false;
+
+		synchronized (FlockProgramGenerator.class) {
+			if (cache == null) {
+				final int cacheSize = Parameters.flockProgramCacheSize;
+				cache = new LinkedHashMap<String, FlockProgram>(16, 0.75f, true) {
+					protected boolean removeEldestEntry(Map.Entry<String, FlockProgram> eldest) {
+						return size() > cacheSize;
+					}
+				};
+			}
+
+			FlockProgram program = cache.get(source);
+			if (program != null) {
+				return program;
+			}
+
+			result = compiling.get(source);
+			if (result == null) {
+				result = new CompletableFuture<FlockProgram>();
+				compiling.put(source, result);
+				compileHere = true;
+			}
+		}
+
+		if (!compileHere) {
+			// another thread is compiling it
+			return result.join();
+		}
+
+		FlockProgram program = null;
+		try {
+			program = compile(source);
+		}
+		finally {
+			// even if compiling went wrong, so the threads waiting for it don't wait forever
+			synchronized (FlockProgramGenerator.class) {
+				if (program != null) {
+					cache.put(source, program);
+				}
+				compiling.remove(source);
+			}
+			result.complete(program);
+		}
+		return program;
+	}
+
+
+	private static synchronized void warnNoCompiler() {
+		if (!warnedNoCompiler) {
+			System.out.println("no Java compiler available; GENERATED trees are run as COMPILED trees");
+			warnedNoCompiler = true;
+		}
+	}
+
+
+	// Java source for a class that runs the tree
+	public static String generateSource(GPNode root) {
+		SourceWriter writer = new SourceWriter();
+		writer.generate(root, Want.NONE);
+		return "public final class " + CLASS_NAME + " implements FlockProgram {\n"
+				+ "\tpublic void run(ParticleState p) {\n"
+				+ writer.body
+				+ "\t}\n"
+				+ "}\n";
+	}
+
+
+	// compile the source and load it as a hidden class in this class's package
+	private static FlockProgram compile(String source) {
+
+		if (compiler == null) {
+			warnNoCompiler();
+			return null;
+		}
+
+		InMemoryFileManager fileManager = new InMemoryFileManager(compiler.getStandardFileManager(null, null, null));
+		List<String> options = List.of("-classpath", System.getProperty("java.class.path"), "-g:none", "-proc:none");
+		List<JavaFileObject> sources = List.of(new SourceFile(source));
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		boolean compiled = compiler.getTask(null, fileManager, diagnostics, options, null, sources).call();
+		if (!compiled || fileManager.classBytes == null) {
+			String reason = "no class was written";
+			for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+				if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+					reason = diagnostic.getMessage(null);
+					break;
+				}
+			}
+			System.out.println("couldn't compile the class generated for a tree (" + reason + "); it is run as a COMPILED tree");
+			return null;
+		}
+
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(fileManager.classBytes.toByteArray(), true);
+			return (FlockProgram) lookup.lookupClass().getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException e) {
+			System.out.println("couldn't load the class generated for a tree (" + e + "); it is run as a COMPILED tree");
+			return null;
+		}
+	}
+
+
+
+	// writes the statements for the nodes of a tree
+	private static class SourceWriter {
+
+		private StringBuilder body = new StringBuilder();
+		private int numLocals = 0;
+		private int indent = 2;
+
+
+		// write the statements for a node, and return an expression for its value
+		// (null for NONE); the expression is a constant or a local, so it can be used
+		// later without working anything out again
+		private String generate(GPNode node, Want want) {
+
+			ArrayList<GPNode> children = node.getChildren();
+
+			switch (node.getNodeType()) {
+
+			case HEADER_SEQUENCE:
+			case SEQUENCE:
+				for (int i = 0; i < children.size(); i++) {
+					generate(children.get(i), Want.NONE);
+				}
+				return defaultValue(want);
+
+			case IF:
+				String condition = generate(children.get(0), Want.BOOLEAN);
+				line("if (" + condition + ") {");
+				++indent;
+				generate(children.get(1), Want.NONE);
+				--indent;
+				if (children.size() >= 3) {
+					line("}");
+					line("else {");
+					++indent;
+					generate(children.get(2), Want.NONE);
+					--indent;
+				}
+				line("}");
+				return defaultValue(want);
+
+			case VAR:
+			case HEADER_VAR:
+				// reading a variable doesn't change anything, so it's only done if the value is used
+				if (want == Want.DOUBLE) {
+					return local("double", "p.getVarValue(" + node.getVarSlot() + ")");
+				}
+				return defaultValue(want);
+
+			case CONST:
+			case HEADER_CONST:
+				if (want == Want.DOUBLE) {
+					return doubleLiteral(node.getConstValue());
+				}
+				return defaultValue(want);
+
+			case ASSIGN:
+			case HEADER_ASSIGN:
+				int assignSlot = generateVarSlot(children.get(0));
+				String value = generate(children.get(1), Want.DOUBLE);
+				line("p.assignVariable(" + assignSlot + ", " + value + ");");
+				return defaultValue(want);
+
+			case ADD:
+				return convertDouble(binary(children, Want.DOUBLE, "double", "%s + %s"), want);
+
+			case SUB:
+				return convertDouble(binary(children, Want.DOUBLE, "double", "%s - %s"), want);
+
+			case MULT:
+				return convertDouble(binary(children, Want.DOUBLE, "double", "%s * %s"), want);
+
+			case DIV:
+				// the recursive evaluator gives 0.0 when the denominator is 0
+				return convertDouble(binary(children, Want.DOUBLE, "double", "(%2$s != 0) ? %1$s / %2$s : 0.0"), want);
+
+			case EXP:
+				return convertDouble(binary(children, Want.DOUBLE, "double", "Math.pow(%s, %s)"), want);
+
+			case INC:
+				line("p.increment(" + generateVarSlot(children.get(0)) + ");");
+				return defaultValue(want);
+
+			case DEC:
+				line("p.decrement(" + generateVarSlot(children.get(0)) + ");");
+				return defaultValue(want);
+
+			case LT:
+				return convertBoolean(binary(children, Want.DOUBLE, "boolean", "%s < %s"), want);
+
+			case GT:
+				return convertBoolean(binary(children, Want.DOUBLE, "boolean", "%s > %s"), want);
+
+			case LEQ:
+				return convertBoolean(binary(children, Want.DOUBLE, "boolean", "%s <= %s"), want);
+
+			case GEQ:
+				return convertBoolean(binary(children, Want.DOUBLE, "boolean", "%s >= %s"), want);
+
+			case EQ:
+				return convertBoolean(binary(children, Want.DOUBLE, "boolean", "%s == %s"), want);
+
+			case AND:
+				return convertBoolean(binary(children, Want.BOOLEAN, "boolean", "%s && %s"), want);
+
+			case OR:
+				return convertBoolean(binary(children, Want.BOOLEAN, "boolean", "%s || %s"), want);
+
+			case NEG:
+				String operand = generate(children.get(0), Want.BOOLEAN);
+				return convertBoolean(local("boolean", "!" + operand), want);
+
+			default:
+				// the recursive evaluator only complains when it gets to such a node, so the program does too
+				line("System.out.println(\"error: undefined NodeType\");");
+				line("System.exit(0);");
+				return defaultValue(want);
+			}
+		}
+
+
+		// both children are worked out first, so AND and OR don't short-circuit
+		private String binary(ArrayList<GPNode> children, Want childWant, String type, String format) {
+			String left = generate(children.get(0), childWant);
+			String right = generate(children.get(1), childWant);
+			return local(type, String.format(format, left, right));
+		}
+
+		// the slot of the variable named by the first child of an ASSIGN, INC or DEC;
+		// if that child isn't a VAR it is still run, but gives no variable (-1)
+		private int generateVarSlot(GPNode child) {
+			generate(child, Want.NONE);
+			return child.getAssignedSlot();
+		}
+
+		// a double value used where something else is wanted
+		private String convertDouble(String value, Want want) {
+			return (want == Want.DOUBLE) ? value : defaultValue(want);
+		}
+
+		// a boolean value used where something else is wanted
+		private String convertBoolean(String value, Want want) {
+			return (want == Want.BOOLEAN) ? value : defaultValue(want);
+		}
+
+		// what a node gives when it is asked for a type it doesn't have: 0.0 or false
+		private String defaultValue(Want want) {
+			if (want == Want.DOUBLE) {
+				return "0.0";
+			}
+			if (want == Want.BOOLEAN) {
+				return "false";
+			}
+			return null;
+		}
+
+		private String local(String type, String expression) {
+			String name = type.charAt(0) + Integer.toString(numLocals++);
+			line(type + " " + name + " = " + expression + ";");
+			return name;
+		}
+
+		private void line(String statement) {
+			for (int i = 0; i < indent; i++) {
+				body.append('\t');
+			}
+			body.append(statement).append('\n');
+		}
+	}
+
+
+	// a double constant written so it reads back as exactly the same value
+	private static String doubleLiteral(double value) {
+		if (Double.isNaN(value)) {
+			return "Double.NaN";
+		}
+		if (Double.isInfinite(value)) {
+			return (value > 0) ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+		}
+		return "(" + Double.toString(value) + ")";
+	}
+
+
+
+	// the source of the generated class, for the compiler
+	private static class SourceFile extends SimpleJavaFileObject {
+
+		private final String source;
+
+		public SourceFile(String source) {
+			super(URI.create("string:///" + CLASS_NAME + ".java"), JavaFileObject.Kind.SOURCE);
+			this.source = source;
+		}
+
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return source;
+		}
+	}
+
+
+	// keeps the class file the compiler writes in memory
+	private static class InMemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+		private ByteArrayOutputStream classBytes = null;
+
+		public InMemoryFileManager(JavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className,
+				JavaFileObject.Kind kind, FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("bytes:///" + className + kind.extension), kind) {
+				public OutputStream openOutputStream() {
+					classBytes = new ByteArrayOutputStream();
+					return classBytes;
+				}
+			};
+		}
+	}
+
+}
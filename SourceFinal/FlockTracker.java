@@ -63,8 +63,8 @@ public class FlockTracker {
 	
 	
 	//Add a particles data. Used totalParticles times every iteration of flock movement
-	public void addParticle(Particle particle) {													//should probably be just regular radius
-		addPosition(particle.getCurrLocation().get(0), particle.getCurrLocation().get(1), particle.getRadius(), particle.getParticleID());
+	public void addParticle(ParticleState particle) {													//should probably be just regular radius
+		addPosition(particle.getFlockX(), particle.getFlockY(), particle.getRadius(), particle.getParticleID());
 		double[] flockParam = particle.getParameters();	
 		addFlockParameters(flockParam[0], flockParam[1], flockParam[2], flockParam[3], flockParam[4], flockParam[5], flockParam[6], flockParam[7], flockParam[8], flockParam[9]);
 	}
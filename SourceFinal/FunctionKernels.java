@@ -0,0 +1,390 @@
+/*
+ * The test functions (see TestFunctions.java) written on raw arrays: the point is the dims
+ * values of x starting at xOffset, and the shift (the same in every dimension, see
+ * SimulationContext.getShiftAmount) is subtracted from each coordinate as it is used.
+ * Working on the arrays directly skips the bounds check in DoubleVector.get, and lets
+ * ArraySwarm evaluate a particle straight out of its big positions array.
+ *
+ * There are two versions of most functions:
+ * 	- SCALAR does exactly the same arithmetic, in the same order, as the original code,
+ * 	  so the results are exactly the same
+ * 	- BLOCKED works on LANES dimensions at a time, with a separate sum (or product) for each
+ * 	  lane that are only added together at the end; the lanes don't depend on each other, so
+ * 	  the CPU can work on them at the same time (and the JIT can use SIMD instructions where it
+ * 	  is able to). Adding the values up in a different order gives slightly different results,
+ * 	  so BLOCKED runs don't repeat SCALAR runs exactly.
+ *
+ * NOTE: jdk.incubator.vector would make the lanes explicit, but it needs --add-modules at
+ *       compile and run time, so the lanes are written out by hand instead
+ *
+ * The penalized functions have too many branches to gain anything from BLOCKED, so they
+ * only have a SCALAR version, which is used in both modes.
+ */
+
+public class FunctionKernels {
+
+	// how many dimensions BLOCKED works on at a time
+	public static final int LANES = 4;
+
+	// 1/sqrt(i+1) for each dimension i, for BLOCKED Griewank; replaced by a bigger table
+	// when there are more dimensions (a table is never changed once it's made, so several
+	// runs can use it at the same time)
+	private static volatile double[] griewankScales = new double[0];
+
+
+	// one of the kernels below, picked once for a run so it can be called straight away
+	// (see BuiltInFunction)
+	public static interface Kernel {
+		public double eval(double[] x, int xOffset, int dims, double shift);
+	}
+
+	public static Kernel getKernel(int functionNum, TestFunctions.KernelMode mode) {
+
+		boolean blocked = (mode == TestFunctions.KernelMode.BLOCKED);
+
+		switch (functionNum) {
+		case TestFunctions.SCHWEFEL_FUNCTION_NUM:
+			return blocked ? FunctionKernels::schwefelBlocked : FunctionKernels::schwefel;
+		case TestFunctions.ROSENBROCK_FUNCTION_NUM:
+			return blocked ? FunctionKernels::rosenbrockBlocked : FunctionKernels::rosenbrock;
+		case TestFunctions.RASTRIGIN_FUNCTION_NUM:
+			return blocked ? FunctionKernels::rastriginBlocked : FunctionKernels::rastrigin;
+		case TestFunctions.ACKLEY_FUNCTION_NUM:
+			return blocked ? FunctionKernels::ackleyBlocked : FunctionKernels::ackley;
+		case TestFunctions.GRIEWANK_FUNCTION_NUM:
+			return blocked ? FunctionKernels::griewankBlocked : FunctionKernels::griewank;
+		case TestFunctions.SPHERE_FUNCTION_NUM:
+			return blocked ? FunctionKernels::sphereBlocked : FunctionKernels::sphere;
+		case TestFunctions.PENALIZED_FUNCTION_1_NUM:
+			return FunctionKernels::penalizedFunction1;
+		case TestFunctions.PENALIZED_FUNCTION_2_NUM:
+			return FunctionKernels::penalizedFunction2;
+		default:
+			System.out.println("error: undefined function " + functionNum + " in FunctionKernels.getKernel");
+			System.exit(0);
+			return null;
+		}
+	}
+
+
+
+	// SCALAR
+	// ======
+
+	//  Schwefel Problem 2.26
+	// 	minimum is 0.0, which occurs at (-420.9687,...,-420.9687)
+	public static double schwefel(double[] x, int xOffset, int dims, double shift) {
+		double sum = 0;
+		for (int i = 0; i < dims; ++i) {
+			double xi = x[xOffset + i] - shift;
+			sum += xi * Math.sin(Math.sqrt(Math.abs(xi)));
+		}
+		return 418.9829 * dims + sum;
+	}
+
+
+	//  Rosenbrock Function
+	// 	minimum is 0.0, which occurs at (1.0,...,1.0)
+	// NOTE: the last dimension is only used as the "next" dimension of the one before it
+	public static double rosenbrock(double[] x, int xOffset, int dims, double shift) {
+		double retVal = 0;
+		for (int i = 0; i < dims - 1; ++i) {
+			double xi = x[xOffset + i] - shift;
+			double xiPlusOne = x[xOffset + i + 1] - shift;
+			retVal += 100.0 * Math.pow(xiPlusOne - xi*xi, 2.0) + Math.pow(xi-1.0, 2.0);
+		}
+		return retVal;
+	}
+
+
+	//  Rastrigin Function
+	// 	minimum is 0.0, which occurs at (0.0,...,0.0)
+	public static double rastrigin(double[] x, int xOffset, int dims, double shift) {
+		double retVal = 0;
+		for (int i = 0; i < dims; ++i) {
+			double xi = x[xOffset + i] - shift;
+			retVal += xi*xi - 10.0*Math.cos(2.0*Math.PI*xi) + 10.0;
+		}
+		return retVal;
+	}
+
+
+	//  Ackley Function
+	// 	minimum is 0.0, which occurs at (0.0,...,0.0)
+	public static double ackley(double[] x, int xOffset, int dims, double shift) {
+		double firstSum = 0.0;
+		double secondSum = 0.0;
+		for (int i = 0; i < dims; ++i) {
+			double xi = x[xOffset + i] - shift;
+			firstSum += xi * xi;
+			secondSum += Math.cos(2.0*Math.PI*xi);
+		}
+		return -20.0 * Math.exp(-0.2 * Math.sqrt(firstSum/dims)) - Math.exp(secondSum/dims) + 20.0 + Math.E;
+	}
+
+
+	//  Griewank Function
+	// 	minimum is 0.0, which occurs at (0.0,...,0.0)
+	public static double griewank(double[] x, int xOffset, int dims, double shift) {
+		double sumSquares = 0.0;
+		double productCos = 1.0;
+		for (int i = 0; i < dims; ++i) {
+			double xi = x[xOffset + i] - shift;
+			sumSquares += xi * xi;
+			productCos *= Math.cos(xi/Math.sqrt(i+1));
+		}
+		return sumSquares/4000.0 - productCos + 1.0;
+	}
+
+
+	// Sphere function
+	// 	minimum is 0.0, which occurs at (0.0,...,0.0)
+	public static double sphere(double[] x, int xOffset, int dims, double shift) {
+		double sumSquares = 0.0;
+		for (int i = 0; i < dims; ++i) {
+			double xi = x[xOffset + i] - shift;
+			sumSquares += xi * xi;
+		}
+		return sumSquares;
+	}
+
+
+
+	// Penalized Function 1
+	// 	minimum is 0.0, which occurs at (1.0,...,1.0)
+	public static double penalizedFunction1(double[] x, int xOffset, int dims, double shift) {
+
+		double firstSum = 0.0;
+		for (int i = 0; i < dims - 1; ++i) {
+			double yiAti = yi(x[xOffset + i] - shift);
+			double sinTerm = Math.sin(Math.PI*yi(x[xOffset + i + 1] - shift));
+			firstSum += (yiAti-1.0) * (yiAti-1.0) * (1.0 + 10.0*sinTerm*sinTerm);
+		}
+
+		double uSum = 0.0;
+		for (int i = 0; i < dims; ++i) {
+			uSum += u(x[xOffset + i] - shift, 10.0, 100.0, 4.0);
+		}
+
+		double firstSinTerm = Math.sin(Math.PI*yi(x[xOffset] - shift));
+		double yiAtnMinus1 = yi(x[xOffset + dims - 1] - shift);
+
+		// some papers have PI/30.0 (first coefficient), but more papers have PI/n  where n = number of dimensions
+		return Math.PI/dims * (10.0*firstSinTerm*firstSinTerm + firstSum + (yiAtnMinus1-1.0)*(yiAtnMinus1-1.0)) + uSum;
+	}
+
+
+	// Penalized Function 2
+	// 	minimum is 0.0, which occurs at (1.0,...,1.0)
+	public static double penalizedFunction2(double[] x, int xOffset, int dims, double shift) {
+
+		double firstSum = 0.0;
+		for (int i = 0; i < dims - 1; ++i) {
+			double xi = x[xOffset + i] - shift;
+			double sinTerm = Math.sin(3.0*Math.PI*(x[xOffset + i + 1] - shift));
+			firstSum += (xi-1.0)*(xi-1.0) * (1.0 + sinTerm*sinTerm);
+		}
+
+		double uSum = 0.0;
+		for (int i = 0; i < dims; ++i) {
+			uSum += u(x[xOffset + i] - shift, 5.0, 100.0, 4.0);
+		}
+
+		double firstSinTerm = Math.sin(3.0*Math.PI*(x[xOffset] - shift));
+		double lastXi = x[xOffset + dims - 1] - shift;
+		double lastSinTerm = Math.sin(2.0*Math.PI*lastXi);
+		return 0.1 * (firstSinTerm*firstSinTerm + firstSum + (lastXi-1.0)*(lastXi-1.0) * (1.0 + lastSinTerm*lastSinTerm)) + uSum;
+	}
+
+
+	// needed in Penalized Function 1
+	private static double yi(double xi) {
+		return 1.0 + (xi + 1.0) / 4.0;
+	}
+
+
+	// needed in Penalized Function 1 and Penalized Function 2
+	private static double u(double xi, double a, double k, double m) {
+		if (xi > a) {
+			return k * Math.pow(xi-a, m);
+		}
+		else if (xi <= a && xi >= -a) {
+			return 0.0;
+		}
+		else {  // xi < -a
+			return k * Math.pow(-xi-a, m);
+		}
+	}
+
+
+
+	// BLOCKED
+	// =======
+	// each loop does LANES dimensions at a time, then the ones left over one at a time
+
+	public static double schwefelBlocked(double[] x, int xOffset, int dims, double shift) {
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int i = 0;
+		for (; i <= dims - LANES; i += LANES) {
+			double x0 = x[xOffset + i] - shift;
+			double x1 = x[xOffset + i + 1] - shift;
+			double x2 = x[xOffset + i + 2] - shift;
+			double x3 = x[xOffset + i + 3] - shift;
+			sum0 += x0 * Math.sin(Math.sqrt(Math.abs(x0)));
+			sum1 += x1 * Math.sin(Math.sqrt(Math.abs(x1)));
+			sum2 += x2 * Math.sin(Math.sqrt(Math.abs(x2)));
+			sum3 += x3 * Math.sin(Math.sqrt(Math.abs(x3)));
+		}
+		for (; i < dims; ++i) {
+			double xi = x[xOffset + i] - shift;
+			sum0 += xi * Math.sin(Math.sqrt(Math.abs(xi)));
+		}
+		return 418.9829 * dims + ((sum0 + sum1) + (sum2 + sum3));
+	}
+
+
+	public static double rosenbrockBlocked(double[] x, int xOffset, int dims, double shift) {
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int numTerms = dims - 1;
+		int i = 0;
+		for (; i <= numTerms - LANES; i += LANES) {
+			double x0 = x[xOffset + i] - shift;
+			double x1 = x[xOffset + i + 1] - shift;
+			double x2 = x[xOffset + i + 2] - shift;
+			double x3 = x[xOffset + i + 3] - shift;
+			double x4 = x[xOffset + i + 4] - shift;
+			double t0 = x1 - x0*x0, t1 = x2 - x1*x1, t2 = x3 - x2*x2, t3 = x4 - x3*x3;
+			sum0 += 100.0 * t0*t0 + (x0-1.0) * (x0-1.0);
+			sum1 += 100.0 * t1*t1 + (x1-1.0) * (x1-1.0);
+			sum2 += 100.0 * t2*t2 + (x2-1.0) * (x2-1.0);
+			sum3 += 100.0 * t3*t3 + (x3-1.0) * (x3-1.0);
+		}
+		for (; i < numTerms; ++i) {
+			double xi = x[xOffset + i] - shift;
+			double t = x[xOffset + i + 1] - shift - xi*xi;
+			sum0 += 100.0 * t*t + (xi-1.0) * (xi-1.0);
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+
+	// the +10.0 for each dimension is added once at the end
+	public static double rastriginBlocked(double[] x, int xOffset, int dims, double shift) {
+		double sq0 = 0, sq1 = 0, sq2 = 0, sq3 = 0;
+		double cos0 = 0, cos1 = 0, cos2 = 0, cos3 = 0;
+		int i = 0;
+		for (; i <= dims - LANES; i += LANES) {
+			double x0 = x[xOffset + i] - shift;
+			double x1 = x[xOffset + i + 1] - shift;
+			double x2 = x[xOffset + i + 2] - shift;
+			double x3 = x[xOffset + i + 3] - shift;
+			sq0 += x0*x0;
+			sq1 += x1*x1;
+			sq2 += x2*x2;
+			sq3 += x3*x3;
+			cos0 += Math.cos(2.0*Math.PI*x0);
+			cos1 += Math.cos(2.0*Math.PI*x1);
+			cos2 += Math.cos(2.0*Math.PI*x2);
+			cos3 += Math.cos(2.0*Math.PI*x3);
+		}
+		for (; i < dims; ++i) {
+			double xi = x[xOffset + i] - shift;
+			sq0 += xi*xi;
+			cos0 += Math.cos(2.0*Math.PI*xi);
+		}
+		return ((sq0 + sq1) + (sq2 + sq3)) - 10.0 * ((cos0 + cos1) + (cos2 + cos3)) + 10.0 * dims;
+	}
+
+
+	public static double ackleyBlocked(double[] x, int xOffset, int dims, double shift) {
+		double sq0 = 0, sq1 = 0, sq2 = 0, sq3 = 0;
+		double cos0 = 0, cos1 = 0, cos2 = 0, cos3 = 0;
+		int i = 0;
+		for (; i <= dims - LANES; i += LANES) {
+			double x0 = x[xOffset + i] - shift;
+			double x1 = x[xOffset + i + 1] - shift;
+			double x2 = x[xOffset + i + 2] - shift;
+			double x3 = x[xOffset + i + 3] - shift;
+			sq0 += x0*x0;
+			sq1 += x1*x1;
+			sq2 += x2*x2;
+			sq3 += x3*x3;
+			cos0 += Math.cos(2.0*Math.PI*x0);
+			cos1 += Math.cos(2.0*Math.PI*x1);
+			cos2 += Math.cos(2.0*Math.PI*x2);
+			cos3 += Math.cos(2.0*Math.PI*x3);
+		}
+		for (; i < dims; ++i) {
+			double xi = x[xOffset + i] - shift;
+			sq0 += xi*xi;
+			cos0 += Math.cos(2.0*Math.PI*xi);
+		}
+		double firstSum = (sq0 + sq1) + (sq2 + sq3);
+		double secondSum = (cos0 + cos1) + (cos2 + cos3);
+		return -20.0 * Math.exp(-0.2 * Math.sqrt(firstSum/dims)) - Math.exp(secondSum/dims) + 20.0 + Math.E;
+	}
+
+
+	// uses a table of 1/sqrt(i+1) instead of dividing by sqrt(i+1) every time
+	public static double griewankBlocked(double[] x, int xOffset, int dims, double shift) {
+		double[] scales = getGriewankScales(dims);
+		double sq0 = 0, sq1 = 0, sq2 = 0, sq3 = 0;
+		double prod0 = 1, prod1 = 1, prod2 = 1, prod3 = 1;
+		int i = 0;
+		for (; i <= dims - LANES; i += LANES) {
+			double x0 = x[xOffset + i] - shift;
+			double x1 = x[xOffset + i + 1] - shift;
+			double x2 = x[xOffset + i + 2] - shift;
+			double x3 = x[xOffset + i + 3] - shift;
+			sq0 += x0*x0;
+			sq1 += x1*x1;
+			sq2 += x2*x2;
+			sq3 += x3*x3;
+			prod0 *= Math.cos(x0 * scales[i]);
+			prod1 *= Math.cos(x1 * scales[i + 1]);
+			prod2 *= Math.cos(x2 * scales[i + 2]);
+			prod3 *= Math.cos(x3 * scales[i + 3]);
+		}
+		for (; i < dims; ++i) {
+			double xi = x[xOffset + i] - shift;
+			sq0 += xi*xi;
+			prod0 *= Math.cos(xi * scales[i]);
+		}
+		return ((sq0 + sq1) + (sq2 + sq3))/4000.0 - ((prod0 * prod1) * (prod2 * prod3)) + 1.0;
+	}
+
+
+	public static double sphereBlocked(double[] x, int xOffset, int dims, double shift) {
+		double sq0 = 0, sq1 = 0, sq2 = 0, sq3 = 0;
+		int i = 0;
+		for (; i <= dims - LANES; i += LANES) {
+			double x0 = x[xOffset + i] - shift;
+			double x1 = x[xOffset + i + 1] - shift;
+			double x2 = x[xOffset + i + 2] - shift;
+			double x3 = x[xOffset + i + 3] - shift;
+			sq0 += x0*x0;
+			sq1 += x1*x1;
+			sq2 += x2*x2;
+			sq3 += x3*x3;
+		}
+		for (; i < dims; ++i) {
+			double xi = x[xOffset + i] - shift;
+			sq0 += xi*xi;
+		}
+		return (sq0 + sq1) + (sq2 + sq3);
+	}
+
+
+	private static double[] getGriewankScales(int dims) {
+		double[] scales = griewankScales;
+		if (scales.length < dims) {
+			scales = new double[dims];
+			for (int i = 0; i < dims; i++) {
+				scales[i] = 1.0 / Math.sqrt(i+1);
+			}
+			griewankScales = scales;
+		}
+		return scales;
+	}
+
+}
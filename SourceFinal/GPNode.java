@@ -1,5 +1,6 @@
 
 import java.util.ArrayList;
+import java.util.random.RandomGenerator;
 
 /* 
  * The program that changes flock parameter values is in the form of a tree.
@@ -17,6 +18,8 @@ public class GPNode {
 	private GPNode parent;
 	private ArrayList<GPNode> children;
 	private String varName = "";
+	// the slot of the variable (see ParticleState.java), worked out when the name is set; -1 if no variable
+	private int varSlot = -1;
 	private double constValue = 0; //for a Header Sequence, this becomes the seed
 	// allows node to return double, boolean, or String
 	private ReturnType returnType;
@@ -56,7 +59,7 @@ public class GPNode {
 	}
 
 	
-	// flags to signal what value is stored in a ReturnValue object
+	// flags to pick the version of getRandomNode/getRandomTerminalNode for a return type
 	public static final double DOUBLE_FLAG = 0.0;
 	public static final boolean BOOLEAN_FLAG = false;
 	public static final String STRING_FLAG = "";
@@ -106,6 +109,7 @@ public class GPNode {
 		this.parent = null;
 		this.children = null;
 		this.varName = "";
+		this.varSlot = -1;
 		this.constValue = 0.0;
 		this.returnType = ReturnType.NONE;
 		this.index = 0;
@@ -133,6 +137,7 @@ public class GPNode {
 		this.parent = parent;
 		this.children = new ArrayList<GPNode>();
 		this.varName = "";             
+		this.varSlot = -1;
 		this.constValue = 0.0;
 		this.returnType = returnType;
 		this.index = 0;
@@ -158,26 +163,27 @@ public class GPNode {
 	}
 	
 	
-	// the ReturnValue object is needed for the recursive calls in runAux
-	// but must be created only once, so must be created outside the runAux method;
 	// we need the PSO Particle, so we can operate on a specific particle's
-	// parameter values
-	public void evaluate(Particle particle) {
-		ReturnValue retVal = new ReturnValue();
-		evaluateAux(retVal, particle);
+	// parameter values, and the SimulationContext of the run the particle is in
+	public void evaluate(ParticleState particle, SimulationContext context) {
+		exec(particle, context);
 	}
-	
-	
-	// evaluates node and puts resulting value in the ReturnValue object retVal
-	public void evaluateAux(ReturnValue retVal, Particle particle) {
 
-		// possibly need three ReturnValue objects, so create them here
-		ReturnValue retVal0 = new ReturnValue();
-		ReturnValue retVal1 = new ReturnValue();
-		ReturnValue retVal2 = new ReturnValue();
-		
-		
-        //     NEED TO REVIEW THIS  *********************************************************
+
+	// There is one way to evaluate a node for each thing its parent can want from it,
+	// so no object is needed to hold the result:
+	//	- exec: the parent doesn't use a value (children of SEQUENCE and IF)
+	//	- evalDouble: the parent wants a double
+	//	- evalBoolean: the parent wants a boolean
+	// A node asked for a type it doesn't have is still evaluated (it might change a variable),
+	// and then gives 0.0 or false.
+	// NOTE: GPProgram and FlockProgramGenerator do exactly the same things in the same order,
+	//       so if anything changes here, it has to change there too
+
+
+	// evaluate a node whose value isn't used
+	public void exec(ParticleState particle, SimulationContext context) {
+
 		switch(nodeType) {
 
 		// sequence
@@ -187,18 +193,16 @@ public class GPNode {
 		case SEQUENCE:
 			// just evaluate the children
 			for(int i = 0; i < children.size(); i++) { //should be exactly 9 in a HEADER_SEQUENCE
-				children.get(i).evaluateAux(retVal0, particle);
+				children.get(i).exec(particle, context);
 			}
 			return;
 			
 		// if
 		case IF:
-			// evaluate the first child to get the value of the boolean expression
-			children.get(0).evaluateAux(retVal0, particle);
-
+			// evaluate the first child to get the value of the boolean expression;
 			// if true, evaluate the second child
-			if (retVal0.getValue(BOOLEAN_FLAG)) {
-				children.get(1).evaluateAux(retVal1, particle);
+			if (children.get(0).evalBoolean(particle, context)) {
+				children.get(1).exec(particle, context);
 				return;
 			}
 
@@ -209,170 +213,261 @@ public class GPNode {
 
 			// if there's a third node and the boolean was false,
 			// evaluate the third child
-			children.get(2).evaluateAux(retVal2, particle);
+			children.get(2).exec(particle, context);
 			return;
 
-		// variable 
+		// a variable or a constant on its own does nothing
 		case VAR:
 		case HEADER_VAR:
-			// WHICH ONE??????????????????????                               CHECK THIS!
-			// there are contexts where we want the variable name,
-			// and contexts where we want the variable value
-			retVal.setValue(varName);      
-			retVal.setValue(particle.getVarValue(varName));
-			return;
-			
-			
-		// constant
 		case CONST:
 		case HEADER_CONST:
-			// just return the constant value
-			retVal.setValue(constValue);
 			return;
-		
 	
 		// assigning new value to Particle variable
 		case ASSIGN:
 		case HEADER_ASSIGN:
-			// child 1 gives us the variable name
-			children.get(0).evaluateAux(retVal0, particle);
-			String ASSIGNvarName = retVal0.getValue(STRING_FLAG);
+			// child 1 is the variable (its slot is worked out when the tree is built)
+			children.get(0).exec(particle, context);
+			int ASSIGNslot = children.get(0).getAssignedSlot();
 			
 			// child 2 gives us the value being assigned
-			children.get(1).evaluateAux(retVal1, particle);
-			double value = retVal1.getValue(DOUBLE_FLAG);
+			double value = children.get(1).evalDouble(particle, context);
 			
 			// make the assigment
-			particle.assignVariable(ASSIGNvarName, value);
+			particle.assignVariable(ASSIGNslot, value);
 			return;			
+
+		// ++
+		case INC:
+			// add 1 to the child variable
+			children.get(0).exec(particle, context);
+			particle.increment(children.get(0).getAssignedSlot());
+			return;
+
+		// --
+		case DEC:
+			// subtract 1 from the child variable
+			children.get(0).exec(particle, context);
+			particle.decrement(children.get(0).getAssignedSlot());
+			return;
+
+		// the value of an arithmetic node isn't used, but its children are still evaluated
+		case ADD:
+		case SUB:
+		case MULT:
+		case DIV:
+		case EXP:
+			evalDouble(particle, context);
+			return;
+
+		// the same for a relational or logical node
+		case LT:
+		case GT:
+		case LEQ:
+		case GEQ:
+		case EQ:
+		case AND:
+		case OR:
+		case NEG:
+			evalBoolean(particle, context);
+			return;
+
+		default:
+			System.out.println("error: undefined NodeType");
+			System.exit(0);
+		}
+	}
+
+
+	// evaluate a node whose value is wanted as a double
+	public double evalDouble(ParticleState particle, SimulationContext context) {
+
+		switch(nodeType) {
+
+		// variable 
+		case VAR:
+		case HEADER_VAR:
+			return particle.getVarValue(varSlot);
 			
+		// constant
+		case CONST:
+		case HEADER_CONST:
+			// just return the constant value
+			return constValue;
 
 		// addition
 		case ADD:
 			// evaluate the two children and add the values
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue(retVal0.getValue(DOUBLE_FLAG) + retVal1.getValue(DOUBLE_FLAG));
-			return;
+			double addLeft = children.get(0).evalDouble(particle, context);
+			return addLeft + children.get(1).evalDouble(particle, context);
 			
 		// subtraction
 		case SUB:
 			// evaluate the two children and subtract the child 2 value from the child 1 value
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue(retVal0.getValue(DOUBLE_FLAG) - retVal1.getValue(DOUBLE_FLAG));
-			return;
+			double subLeft = children.get(0).evalDouble(particle, context);
+			return subLeft - children.get(1).evalDouble(particle, context);
 			
 		// multiplication
 		case MULT:
 			// evaluate the two children and multiply the values
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue(retVal0.getValue(DOUBLE_FLAG) * retVal1.getValue(DOUBLE_FLAG));
-			return;
+			double multLeft = children.get(0).evalDouble(particle, context);
+			return multLeft * children.get(1).evalDouble(particle, context);
 			
 		// division
 		case DIV:
-			// evaluate the two children and divide the child 1 value by the child 2 value
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			if (retVal1.getValue(DOUBLE_FLAG) != 0) {
-				retVal.setValue(retVal0.getValue(DOUBLE_FLAG) / retVal1.getValue(DOUBLE_FLAG));
+			// evaluate the two children and divide the child 1 value by the child 2 value;
+			// dividing by 0 gives 0.0
+			double numerator = children.get(0).evalDouble(particle, context);
+			double denominator = children.get(1).evalDouble(particle, context);
+			if (denominator != 0) {
+				return numerator / denominator;
 			}
-			return;
+			return 0.0;
 			
 		// exponent
 		case EXP:
 			// evaluate the two children and raise the child 1 value to the child 2 value power
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue((double) Math.pow(retVal0.getValue(DOUBLE_FLAG), retVal1.getValue(DOUBLE_FLAG)));
-			return;
+			double base = children.get(0).evalDouble(particle, context);
+			return (double) Math.pow(base, children.get(1).evalDouble(particle, context));
 
-		// ++
-		case INC:
-			// add 1 to the child variable
-			children.get(0).evaluateAux(retVal0, particle);
-			String INCvarName = retVal0.getValue(STRING_FLAG);
-			particle.increment(INCvarName);
-			return;
+		// a relational or logical node used as a double
+		case LT:
+		case GT:
+		case LEQ:
+		case GEQ:
+		case EQ:
+		case AND:
+		case OR:
+		case NEG:
+			evalBoolean(particle, context);
+			return 0.0;
+
+		// anything else (including INC and DEC) has no value
+		default:
+			exec(particle, context);
+			return 0.0;
+		}
+	}
+
+
+	// evaluate a node whose value is wanted as a boolean
+	public boolean evalBoolean(ParticleState particle, SimulationContext context) {
+
+		switch(nodeType) {
 
-		// --
-		case DEC:
-			// subtract 1 from the child variable
-			children.get(0).evaluateAux(retVal0, particle);
-			String DECvarName = retVal0.getValue(STRING_FLAG);
-			particle.decrement(DECvarName);
-			return;
-			
 		// less than
 		case LT:
 			// check whether child 1 value is less than child 2 value
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue(retVal0.getValue(DOUBLE_FLAG) < retVal1.getValue(DOUBLE_FLAG));
-			return;
+			double ltLeft = children.get(0).evalDouble(particle, context);
+			return ltLeft < children.get(1).evalDouble(particle, context);
 
 		// greater than
 		case GT:
 			// check whether child 1 value is greater than child 2 value
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue(retVal0.getValue(DOUBLE_FLAG) > retVal1.getValue(DOUBLE_FLAG));
-			return;
+			double gtLeft = children.get(0).evalDouble(particle, context);
+			return gtLeft > children.get(1).evalDouble(particle, context);
 
 		// less than or equal to
 		case LEQ:
 			// check whether child 1 value is less than or equal to child 2 value
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue(retVal0.getValue(DOUBLE_FLAG) <= retVal1.getValue(DOUBLE_FLAG));
-			return;
+			double leqLeft = children.get(0).evalDouble(particle, context);
+			return leqLeft <= children.get(1).evalDouble(particle, context);
 
 		// greater than or equal to
 		case GEQ:
 			// check whether child 1 value is greater than or equal to child 2 value
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue(retVal0.getValue(DOUBLE_FLAG) >= retVal1.getValue(DOUBLE_FLAG));
-			return;
+			double geqLeft = children.get(0).evalDouble(particle, context);
+			return geqLeft >= children.get(1).evalDouble(particle, context);
 
 		// equal
 		case EQ:
 			// check whether child 1 value is equal to the child 2 value
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue(retVal0.getValue(DOUBLE_FLAG) == retVal1.getValue(DOUBLE_FLAG));
-			return;
+			double eqLeft = children.get(0).evalDouble(particle, context);
+			return eqLeft == children.get(1).evalDouble(particle, context);
 
 		// and
 		case AND:
-			// logically AND the values of the two children
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue(retVal0.getValue(BOOLEAN_FLAG) && retVal1.getValue(BOOLEAN_FLAG));
-			return;
+			// logically AND the values of the two children (both are always evaluated)
+			boolean andLeft = children.get(0).evalBoolean(particle, context);
+			boolean andRight = children.get(1).evalBoolean(particle, context);
+			return andLeft && andRight;
 
 		// or
 		case OR:
-			// logically Or the values of the two children
-			children.get(0).evaluateAux(retVal0, particle);
-			children.get(1).evaluateAux(retVal1, particle);
-			retVal.setValue(retVal0.getValue(BOOLEAN_FLAG) || retVal1.getValue(BOOLEAN_FLAG));
-			return;
+			// logically Or the values of the two children (both are always evaluated)
+			boolean orLeft = children.get(0).evalBoolean(particle, context);
+			boolean orRight = children.get(1).evalBoolean(particle, context);
+			return orLeft || orRight;
 
 		// negate
 		case NEG:
 			// logically negate the single child
-			children.get(0).evaluateAux(retVal0, particle);
-			retVal.setValue(!retVal0.getValue(BOOLEAN_FLAG));
-			return;
+			return !children.get(0).evalBoolean(particle, context);
+
+		// an arithmetic node, variable or constant used as a boolean
+		case VAR:
+		case HEADER_VAR:
+		case CONST:
+		case HEADER_CONST:
+		case ADD:
+		case SUB:
+		case MULT:
+		case DIV:
+		case EXP:
+			evalDouble(particle, context);
+			return false;
 
+		// anything else has no value
+		default:
+			exec(particle, context);
+			return false;
+		}
+	}
+
+
+
+	// a hash of the subtree: node types, variables and constants, in order;
+	// a HEADER_ node is the same as the plain one, since it runs the same way
+	public long structuralHash() {
 
+		NodeType canonicalType = nodeType;
+		switch (nodeType) {
+		case HEADER_SEQUENCE:
+			canonicalType = NodeType.SEQUENCE;
+			break;
+		case HEADER_ASSIGN:
+			canonicalType = NodeType.ASSIGN;
+			break;
+		case HEADER_VAR:
+			canonicalType = NodeType.VAR;
+			break;
+		case HEADER_CONST:
+			canonicalType = NodeType.CONST;
+			break;
 		default:
-			System.out.println("error: undefined NodeType");
-			System.exit(0);
+			break;
+		}
+
+		long hash = mixHash(0x9E3779B97F4A7C15L, canonicalType.ordinal());
+		if (canonicalType == NodeType.VAR) {
+			hash = mixHash(hash, varSlot);
+		}
+		else if (canonicalType == NodeType.CONST) {
+			hash = mixHash(hash, Double.doubleToLongBits(constValue));
 		}
+		hash = mixHash(hash, children.size());
+		for (int i = 0; i < children.size(); i++) {
+			hash = mixHash(hash, children.get(i).structuralHash());
+		}
+		return hash;
+	}
+
+	// combine a hash with a value (the finishing step of SplitMix64, so every bit of the value counts)
+	private static long mixHash(long hash, long value) {
+		long z = hash * 31 + value + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
 	}
 
 
@@ -384,46 +479,46 @@ public class GPNode {
 	
 	// for getting random nonterminal nodes
 	
-	public static NodeType getRandomNode(double doubleFlag) {
-		int randVal = Utilities.nextInt(0, doubleReturn.length);
+	public static NodeType getRandomNode(double doubleFlag, RandomGenerator rand) {
+		int randVal = Utilities.nextInt(rand, 0, doubleReturn.length);
 		return doubleReturn[randVal];
 	}
 	
-	public static NodeType getRandomNode(boolean booleanFlag) {
-		int randVal = Utilities.nextInt(0, booleanReturn.length);
+	public static NodeType getRandomNode(boolean booleanFlag, RandomGenerator rand) {
+		int randVal = Utilities.nextInt(rand, 0, booleanReturn.length);
 		return booleanReturn[randVal];
 	}
 
-	public static NodeType getRandomNode(String stringFlag) {
-		int randVal = Utilities.nextInt(0, stringReturn.length);
+	public static NodeType getRandomNode(String stringFlag, RandomGenerator rand) {
+		int randVal = Utilities.nextInt(rand, 0, stringReturn.length);
 		return stringReturn[randVal];
 	}
 	
-	public static NodeType getRandomNode(char noneFlag) {
-		int randVal = Utilities.nextInt(0, noReturn.length);
+	public static NodeType getRandomNode(char noneFlag, RandomGenerator rand) {
+		int randVal = Utilities.nextInt(rand, 0, noReturn.length);
 		return noReturn[randVal];
 	}
 	
 
 	// for getting random terminal nodes
 
-	public static NodeType getRandomTerminalNode(double doubleFlag) {
-		int randVal = Utilities.nextInt(0, terminalDoubleReturn.length);
+	public static NodeType getRandomTerminalNode(double doubleFlag, RandomGenerator rand) {
+		int randVal = Utilities.nextInt(rand, 0, terminalDoubleReturn.length);
 		return terminalDoubleReturn[randVal];
 	}
 	
-	public static NodeType getRandomTerminalNode(boolean booleanFlag) {
-		int randVal = Utilities.nextInt(0, terminalBoolReturn.length);
+	public static NodeType getRandomTerminalNode(boolean booleanFlag, RandomGenerator rand) {
+		int randVal = Utilities.nextInt(rand, 0, terminalBoolReturn.length);
 		return terminalBoolReturn[randVal];
 	}
 	
-	public static NodeType getRandomTerminalNode(String stringFlag) {
-		int randVal = Utilities.nextInt(0, terminalStringReturn.length);
+	public static NodeType getRandomTerminalNode(String stringFlag, RandomGenerator rand) {
+		int randVal = Utilities.nextInt(rand, 0, terminalStringReturn.length);
 		return terminalStringReturn[randVal];
 	}
 	
-	public static NodeType getRandomTerminalNode(char noneFlag) {
-		int randVal = Utilities.nextInt(0, terminalNoReturn.length);
+	public static NodeType getRandomTerminalNode(char noneFlag, RandomGenerator rand) {
+		int randVal = Utilities.nextInt(rand, 0, terminalNoReturn.length);
 		return terminalNoReturn[randVal];
 	}
 
@@ -483,8 +578,29 @@ public class GPNode {
 
 
 
+	// also works out the slot of the variable, so running the tree never has to compare names
 	public void setVarName(String varName) {
 		this.varName = varName;
+		this.varSlot = GPTree.getVarSlot(varName);
+		if (varSlot < 0 && !varName.isEmpty()) {
+			System.out.println("error: unknown variable name in GPNode.setVarName: \"" + varName + "\"");
+			System.exit(0);
+		}
+	}
+
+
+	public int getVarSlot() {
+		return varSlot;
+	}
+
+
+	// the slot of the variable this node names when it is the first child of an ASSIGN, INC or DEC;
+	// only a VAR names a variable, so for anything else this is -1
+	public int getAssignedSlot() {
+		if (nodeType == NodeType.VAR || nodeType == NodeType.HEADER_VAR) {
+			return varSlot;
+		}
+		return -1;
 	}
 
 
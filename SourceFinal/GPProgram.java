@@ -0,0 +1,510 @@
+/*
+ * A GPTree compiled into a flat list of instructions, so that running the tree for a particle
+ * is a single loop over an int array instead of a recursive walk of the GPNodes.
+ *
+ * The instructions work on two stacks, one of doubles and one of booleans, that are kept in an
+ * EvalStack; each particle has its own EvalStack, so nothing is created while a program runs.
+ *
+ * The program does exactly what the recursive evaluator in GPNode does, including its quirks:
+ * 	- a DIV with a zero denominator gives 0.0
+ * 	- INC and DEC give 0.0 (and false)
+ * 	- both children of AND and OR are always evaluated, left to right
+ * 	- a node used where a different type is wanted is still run, and gives 0.0 or false
+ *
+ * A program is compiled from a tree once, after the tree has been created, crossed over
+ * and mutated (see GPTree.compile), and never changes, so any number of particles can run it
+ * at the same time.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class GPProgram {
+
+	// INSTRUCTIONS
+	// the ones followed by "k" take the next int in the code as an operand
+	private static final int PUSH_CONST = 0;      // k: index into constants; push onto double stack
+	private static final int PUSH_FALSE = 1;      // push false onto boolean stack
+	private static final int LOAD_VAR = 2;        // k: slot of the variable; push the particle's value
+	private static final int POP_DOUBLE = 3;
+	private static final int POP_BOOLEAN = 4;
+	private static final int ADD = 5;
+	private static final int SUB = 6;
+	private static final int MULT = 7;
+	private static final int DIV = 8;
+	private static final int EXP = 9;
+	private static final int LT = 10;
+	private static final int GT = 11;
+	private static final int LEQ = 12;
+	private static final int GEQ = 13;
+	private static final int EQ = 14;
+	private static final int AND = 15;
+	private static final int OR = 16;
+	private static final int NEG = 17;
+	private static final int ASSIGN = 18;         // k: slot of the variable; pop a double and assign it
+	private static final int INC = 19;            // k: slot of the variable
+	private static final int DEC = 20;            // k: slot of the variable
+	private static final int JUMP_IF_FALSE = 21;  // k: where to go if the popped boolean is false
+	private static final int JUMP = 22;           // k: where to go
+	private static final int UNDEFINED = 23;      // a node with no NodeType; stops the program, like GPNode.exec
+
+
+	// the compiled program
+	private final int[] code;
+	private final double[] constants;
+
+	// the most each stack holds at one time while the program runs
+	private final int maxDoubleDepth;
+	private final int maxBooleanDepth;
+
+
+	// what a node's value is wanted for by its parent
+	private static enum Want { DOUBLE, BOOLEAN, NONE };
+
+
+	private GPProgram(int[] code, double[] constants, int maxDoubleDepth, int maxBooleanDepth) {
+		this.code = code;
+		this.constants = constants;
+		this.maxDoubleDepth = maxDoubleDepth;
+		this.maxBooleanDepth = maxBooleanDepth;
+	}
+
+
+	// compile the tree with the given root
+	public static GPProgram compile(GPNode root) {
+		Compiler compiler = new Compiler();
+		compiler.compileNode(root, Want.NONE);
+		return compiler.finish();
+	}
+
+
+	// run the program on a particle, using the particle's own EvalStack
+	public void run(ParticleState particle, EvalStack stack) {
+
+		stack.ensureCapacity(maxDoubleDepth, maxBooleanDepth);
+		double[] d = stack.doubles;
+		boolean[] b = stack.booleans;
+		int ds = 0;   // number of values on the double stack
+		int bs = 0;   // number of values on the boolean stack
+
+		int pc = 0;
+		int length = code.length;
+		while (pc < length) {
+			switch (code[pc++]) {
+
+			case PUSH_CONST:
+				d[ds++] = constants[code[pc++]];
+				break;
+
+			case PUSH_FALSE:
+				b[bs++] = false;
+				break;
+
+			case LOAD_VAR:
+				d[ds++] = particle.getVarValue(code[pc++]);
+				break;
+
+			case POP_DOUBLE:
+				--ds;
+				break;
+
+			case POP_BOOLEAN:
+				--bs;
+				break;
+
+			case ADD:
+				--ds;
+				d[ds - 1] = d[ds - 1] + d[ds];
+				break;
+
+			case SUB:
+				--ds;
+				d[ds - 1] = d[ds - 1] - d[ds];
+				break;
+
+			case MULT:
+				--ds;
+				d[ds - 1] = d[ds - 1] * d[ds];
+				break;
+
+			case DIV:
+				// the recursive evaluator gives 0.0 when the denominator is 0
+				--ds;
+				d[ds - 1] = (d[ds] != 0) ? d[ds - 1] / d[ds] : 0.0;
+				break;
+
+			case EXP:
+				--ds;
+				d[ds - 1] = Math.pow(d[ds - 1], d[ds]);
+				break;
+
+			case LT:
+				ds -= 2;
+				b[bs++] = d[ds] < d[ds + 1];
+				break;
+
+			case GT:
+				ds -= 2;
+				b[bs++] = d[ds] > d[ds + 1];
+				break;
+
+			case LEQ:
+				ds -= 2;
+				b[bs++] = d[ds] <= d[ds + 1];
+				break;
+
+			case GEQ:
+				ds -= 2;
+				b[bs++] = d[ds] >= d[ds + 1];
+				break;
+
+			case EQ:
+				ds -= 2;
+				b[bs++] = d[ds] == d[ds + 1];
+				break;
+
+			case AND:
+				--bs;
+				b[bs - 1] = b[bs - 1] && b[bs];
+				break;
+
+			case OR:
+				--bs;
+				b[bs - 1] = b[bs - 1] || b[bs];
+				break;
+
+			case NEG:
+				b[bs - 1] = !b[bs - 1];
+				break;
+
+			case ASSIGN:
+				particle.assignVariable(code[pc++], d[--ds]);
+				break;
+
+			case INC:
+				particle.increment(code[pc++]);
+				break;
+
+			case DEC:
+				particle.decrement(code[pc++]);
+				break;
+
+			case JUMP_IF_FALSE:
+				if (b[--bs]) {
+					++pc;
+				}
+				else {
+					pc = code[pc];
+				}
+				break;
+
+			case JUMP:
+				pc = code[pc];
+				break;
+
+			case UNDEFINED:
+			default:
+				System.out.println("error: undefined NodeType");
+				System.exit(0);
+			}
+		}
+	}
+
+
+	public int getCodeLength() {
+		return code.length;
+	}
+
+
+
+	// the two stacks a program runs on; each particle keeps one, and it only grows
+	// if a program needs more room than any program before it
+	public static class EvalStack {
+
+		private double[] doubles = new double[16];
+		private boolean[] booleans = new boolean[16];
+
+		private void ensureCapacity(int doubleDepth, int booleanDepth) {
+			if (doubles.length < doubleDepth) {
+				doubles = new double[doubleDepth];
+			}
+			if (booleans.length < booleanDepth) {
+				booleans = new boolean[booleanDepth];
+			}
+		}
+	}
+
+
+
+	// turns the GPNodes into instructions; keeps track of how deep the stacks get
+	private static class Compiler {
+
+		private int[] code = new int[64];
+		private int length = 0;
+		private ArrayList<Double> constants = new ArrayList<Double>();
+
+		private int doubleDepth = 0;
+		private int booleanDepth = 0;
+		private int maxDoubleDepth = 0;
+		private int maxBooleanDepth = 0;
+
+
+		// compile a node so that it leaves one value of the wanted type on the stacks
+		// (or nothing, for NONE), in the same order GPNode evaluates things
+		private void compileNode(GPNode node, Want want) {
+
+			ArrayList<GPNode> children = node.getChildren();
+
+			switch (node.getNodeType()) {
+
+			case HEADER_SEQUENCE:
+			case SEQUENCE:
+				for (int i = 0; i < children.size(); i++) {
+					compileNode(children.get(i), Want.NONE);
+				}
+				pushDefault(want);
+				return;
+
+			case IF:
+				compileNode(children.get(0), Want.BOOLEAN);
+				int jumpToElse = emitJump(JUMP_IF_FALSE);
+				compileNode(children.get(1), Want.NONE);
+				if (children.size() < 3) {
+					patchJump(jumpToElse);
+				}
+				else {
+					int jumpToEnd = emitJump(JUMP);
+					patchJump(jumpToElse);
+					compileNode(children.get(2), Want.NONE);
+					patchJump(jumpToEnd);
+				}
+				pushDefault(want);
+				return;
+
+			case VAR:
+			case HEADER_VAR:
+				// reading a variable doesn't change anything, so it's only done if the value is used
+				if (want == Want.DOUBLE) {
+					emit(LOAD_VAR, node.getVarSlot());
+					changeDoubleDepth(1);
+				}
+				else {
+					pushDefault(want);
+				}
+				return;
+
+			case CONST:
+			case HEADER_CONST:
+				if (want == Want.DOUBLE) {
+					emitConst(node.getConstValue());
+				}
+				else {
+					pushDefault(want);
+				}
+				return;
+
+			case ASSIGN:
+			case HEADER_ASSIGN:
+				int assignSlot = compileVarSlot(children.get(0));
+				compileNode(children.get(1), Want.DOUBLE);
+				emit(ASSIGN, assignSlot);
+				changeDoubleDepth(-1);
+				pushDefault(want);
+				return;
+
+			case ADD:
+				compileBinary(children, Want.DOUBLE, ADD);
+				convertDouble(want);
+				return;
+
+			case SUB:
+				compileBinary(children, Want.DOUBLE, SUB);
+				convertDouble(want);
+				return;
+
+			case MULT:
+				compileBinary(children, Want.DOUBLE, MULT);
+				convertDouble(want);
+				return;
+
+			case DIV:
+				compileBinary(children, Want.DOUBLE, DIV);
+				convertDouble(want);
+				return;
+
+			case EXP:
+				compileBinary(children, Want.DOUBLE, EXP);
+				convertDouble(want);
+				return;
+
+			case INC:
+				emit(INC, compileVarSlot(children.get(0)));
+				pushDefault(want);
+				return;
+
+			case DEC:
+				emit(DEC, compileVarSlot(children.get(0)));
+				pushDefault(want);
+				return;
+
+			case LT:
+				compileBinary(children, Want.DOUBLE, LT);
+				convertBoolean(want);
+				return;
+
+			case GT:
+				compileBinary(children, Want.DOUBLE, GT);
+				convertBoolean(want);
+				return;
+
+			case LEQ:
+				compileBinary(children, Want.DOUBLE, LEQ);
+				convertBoolean(want);
+				return;
+
+			case GEQ:
+				compileBinary(children, Want.DOUBLE, GEQ);
+				convertBoolean(want);
+				return;
+
+			case EQ:
+				compileBinary(children, Want.DOUBLE, EQ);
+				convertBoolean(want);
+				return;
+
+			case AND:
+				compileBinary(children, Want.BOOLEAN, AND);
+				convertBoolean(want);
+				return;
+
+			case OR:
+				compileBinary(children, Want.BOOLEAN, OR);
+				convertBoolean(want);
+				return;
+
+			case NEG:
+				compileNode(children.get(0), Want.BOOLEAN);
+				emit(NEG);
+				convertBoolean(want);
+				return;
+
+			default:
+				// the recursive evaluator only complains when it gets to such a node, so the program does too
+				emit(UNDEFINED);
+				pushDefault(want);
+			}
+		}
+
+
+		// both children, then the operation; arithmetic ops leave a double, the others a boolean
+		private void compileBinary(ArrayList<GPNode> children, Want childWant, int op) {
+			compileNode(children.get(0), childWant);
+			compileNode(children.get(1), childWant);
+			emit(op);
+			if (childWant == Want.BOOLEAN) {
+				changeBooleanDepth(-1);
+			}
+			else if (op == ADD || op == SUB || op == MULT || op == DIV || op == EXP) {
+				changeDoubleDepth(-1);
+			}
+			else {
+				changeDoubleDepth(-2);
+				changeBooleanDepth(1);
+			}
+		}
+
+
+		// the slot of the variable named by the first child of an ASSIGN, INC or DEC;
+		// if that child isn't a VAR it is still run, but gives no variable (-1)
+		private int compileVarSlot(GPNode child) {
+			compileNode(child, Want.NONE);
+			return child.getAssignedSlot();
+		}
+
+
+		// a node whose value is a double, used where something else is wanted
+		private void convertDouble(Want want) {
+			if (want != Want.DOUBLE) {
+				emit(POP_DOUBLE);
+				changeDoubleDepth(-1);
+				pushDefault(want);
+			}
+		}
+
+		// a node whose value is a boolean, used where something else is wanted
+		private void convertBoolean(Want want) {
+			if (want != Want.BOOLEAN) {
+				emit(POP_BOOLEAN);
+				changeBooleanDepth(-1);
+				pushDefault(want);
+			}
+		}
+
+		// what a node gives when it is asked for a type it doesn't have: 0.0 or false
+		private void pushDefault(Want want) {
+			if (want == Want.DOUBLE) {
+				emitConst(0.0);
+			}
+			else if (want == Want.BOOLEAN) {
+				emit(PUSH_FALSE);
+				changeBooleanDepth(1);
+			}
+		}
+
+		private void emitConst(double value) {
+			int index = constants.indexOf(value);
+			if (index < 0) {
+				index = constants.size();
+				constants.add(value);
+			}
+			emit(PUSH_CONST, index);
+			changeDoubleDepth(1);
+		}
+
+		// returns where the jump target goes, so it can be filled in by patchJump
+		private int emitJump(int op) {
+			emit(op, -1);
+			if (op == JUMP_IF_FALSE) {
+				changeBooleanDepth(-1);
+			}
+			return length - 1;
+		}
+
+		// the jump at the given place goes to the next instruction emitted
+		private void patchJump(int place) {
+			code[place] = length;
+		}
+
+		private void emit(int op) {
+			if (length == code.length) {
+				code = Arrays.copyOf(code, 2 * length);
+			}
+			code[length++] = op;
+		}
+
+		private void emit(int op, int operand) {
+			emit(op);
+			emit(operand);
+		}
+
+		private void changeDoubleDepth(int change) {
+			doubleDepth += change;
+			maxDoubleDepth = Math.max(maxDoubleDepth, doubleDepth);
+		}
+
+		private void changeBooleanDepth(int change) {
+			booleanDepth += change;
+			maxBooleanDepth = Math.max(maxBooleanDepth, booleanDepth);
+		}
+
+		private GPProgram finish() {
+			double[] constantArray = new double[constants.size()];
+			for (int i = 0; i < constantArray.length; i++) {
+				constantArray[i] = constants.get(i);
+			}
+			return new GPProgram(Arrays.copyOf(code, length), constantArray, maxDoubleDepth, maxBooleanDepth);
+		}
+	}
+
+}
@@ -0,0 +1,444 @@
+/*
+ * Makes a smaller copy of a GP tree that does exactly the same thing when it is run;
+ * GPTree runs the copy, and the tree itself is left alone for crossover and mutation.
+ *
+ * What gets simplified:
+ * 	- arithmetic on constants is worked out, e.g. ADD(CONST 2, CONST 3) becomes CONST 5
+ * 	  (with the same quirks as GPNode.evalDouble, e.g. dividing by 0 gives 0.0)
+ * 	- an IF whose condition only compares constants becomes the branch that would be taken
+ * 	- AND/OR with a constant true/false on one side becomes the other side, when that
+ * 	  gives the same value; NEG(NEG(x)) becomes x
+ * 	- anything in a SEQUENCE (or the branch of an IF) that has no effect is removed,
+ * 	  e.g. a VAR, a CONST, or a comparison of variables
+ * 	- an ASSIGN that is immediately followed by another ASSIGN to the same variable is removed,
+ * 	  if its value has no effect and the second value doesn't read the variable;
+ * 	  so is an ASSIGN of a variable to itself
+ * 	- SEQUENCEs inside SEQUENCEs are merged, and a SEQUENCE with one child becomes that child
+ *
+ * NOTE: a node is only removed if running it can't change anything (see hasNoEffect), or if
+ *       it is never run (the branch of an IF that isn't taken) or its effect is undone right away
+ *       (an overwritten ASSIGN); INC, DEC and undefined nodes always stay
+ *
+ */
+
+import java.util.ArrayList;
+
+public class GPSimplifier {
+
+	// the simplified copy of the tree with the given root; the tree itself isn't changed
+	public static GPNode simplify(GPNode root) {
+
+		GPNode simplified = simplifyStatement(root.getDeepCopy(null));
+
+		// if nothing is left, running the tree does nothing
+		if (simplified == null) {
+			simplified = new GPNode(null, 0, GPNode.ReturnType.NONE);
+			simplified.setNodeType(GPNode.NodeType.SEQUENCE);
+		}
+
+		setParentsAndDepths(simplified, null, 0);
+		return simplified;
+	}
+
+
+	// the number of nodes in a tree (to see how much smaller the simplified one is)
+	public static int countNodes(GPNode node) {
+		int count = 1;
+		for (GPNode child : node.getChildren()) {
+			count += countNodes(child);
+		}
+		return count;
+	}
+
+
+	// simplify a node whose value isn't used (see GPNode.exec);
+	// returns null if the node doesn't need to be run at all
+	private static GPNode simplifyStatement(GPNode node) {
+
+		ArrayList<GPNode> children = node.getChildren();
+
+		switch (node.getNodeType()) {
+
+		case HEADER_SEQUENCE:
+		case SEQUENCE:
+			ArrayList<GPNode> statements = new ArrayList<GPNode>();
+			for (int i = 0; i < children.size(); i++) {
+				GPNode statement = simplifyStatement(children.get(i));
+				if (statement == null) {
+					continue;
+				}
+				// a SEQUENCE inside a SEQUENCE just runs its children in order
+				if (isSequence(statement)) {
+					statements.addAll(statement.getChildren());
+				}
+				else {
+					statements.add(statement);
+				}
+			}
+			removeOverwrittenAssigns(statements);
+			if (statements.isEmpty()) {
+				return null;
+			}
+			if (statements.size() == 1) {
+				return statements.get(0);
+			}
+			node.setChildren(statements);
+			return node;
+
+		case IF:
+			GPNode condition = simplifyValue(children.get(0));
+			GPNode thenBranch = simplifyStatement(children.get(1));
+			GPNode elseBranch = (children.size() < 3) ? null : simplifyStatement(children.get(2));
+
+			// the condition only compares constants, so we already know which branch is taken
+			Boolean knownCondition = getKnownBoolean(condition);
+			if (knownCondition != null) {
+				return knownCondition ? thenBranch : elseBranch;
+			}
+
+			// nothing to do in either branch: only the condition has to be evaluated, if that does anything
+			if (thenBranch == null && elseBranch == null) {
+				return hasNoEffect(condition) ? null : condition;
+			}
+
+			ArrayList<GPNode> ifChildren = new ArrayList<GPNode>();
+			ifChildren.add(condition);
+			ifChildren.add((thenBranch == null) ? emptySequence() : thenBranch);
+			if (elseBranch != null) {
+				ifChildren.add(elseBranch);
+			}
+			node.setChildren(ifChildren);
+			return node;
+
+		case ASSIGN:
+		case HEADER_ASSIGN:
+			GPNode value = simplifyValue(children.get(1));
+			// assigning a variable its own value changes nothing
+			if (isVar(children.get(0)) && isVar(value) && value.getVarSlot() == children.get(0).getVarSlot()) {
+				return null;
+			}
+			children.set(1, value);
+			return node;
+
+		case INC:
+		case DEC:
+			return node;
+
+		case VAR:
+		case HEADER_VAR:
+		case CONST:
+		case HEADER_CONST:
+		case ADD:
+		case SUB:
+		case MULT:
+		case DIV:
+		case EXP:
+		case LT:
+		case GT:
+		case LEQ:
+		case GEQ:
+		case EQ:
+		case AND:
+		case OR:
+		case NEG:
+			// the value isn't used, so the node only has to be run if it changes something
+			GPNode simplified = simplifyValue(node);
+			return hasNoEffect(simplified) ? null : simplified;
+
+		default:
+			// an undefined node stops the program, so it has to stay
+			return node;
+		}
+	}
+
+
+	// simplify a node whose value is used (see GPNode.evalDouble and GPNode.evalBoolean)
+	private static GPNode simplifyValue(GPNode node) {
+
+		ArrayList<GPNode> children = node.getChildren();
+
+		switch (node.getNodeType()) {
+
+		case ADD:
+		case SUB:
+		case MULT:
+		case DIV:
+		case EXP:
+			children.set(0, simplifyValue(children.get(0)));
+			children.set(1, simplifyValue(children.get(1)));
+			if (isConst(children.get(0)) && isConst(children.get(1))) {
+				return newConst(node, foldArithmetic(node.getNodeType(),
+						children.get(0).getConstValue(), children.get(1).getConstValue()));
+			}
+			return node;
+
+		case LT:
+		case GT:
+		case LEQ:
+		case GEQ:
+		case EQ:
+			children.set(0, simplifyValue(children.get(0)));
+			children.set(1, simplifyValue(children.get(1)));
+			return node;
+
+		case AND:
+		case OR:
+			children.set(0, simplifyValue(children.get(0)));
+			children.set(1, simplifyValue(children.get(1)));
+			// true AND x, and false OR x, are just x (the constant side does nothing,
+			// so it doesn't matter that it would have been evaluated first)
+			boolean keepValue = (node.getNodeType() == GPNode.NodeType.AND);
+			for (int i = 0; i < 2; i++) {
+				Boolean known = getKnownBoolean(children.get(i));
+				GPNode other = children.get(1 - i);
+				if (known != null && known == keepValue && isBooleanNode(other)) {
+					return other;
+				}
+			}
+			return node;
+
+		case NEG:
+			children.set(0, simplifyValue(children.get(0)));
+			GPNode negated = children.get(0);
+			if (negated.getNodeType() == GPNode.NodeType.NEG && isBooleanNode(negated.getChildren().get(0))) {
+				return negated.getChildren().get(0);
+			}
+			return node;
+
+		case VAR:
+		case HEADER_VAR:
+		case CONST:
+		case HEADER_CONST:
+			return node;
+
+		default:
+			// a node without a value (e.g. an INC) used as a value still has to be run, and gives 0.0 or false;
+			// if what's left of it does have a value (e.g. a SEQUENCE that became its only child, an ADD),
+			// it goes in a SEQUENCE so it still gives 0.0 or false
+			GPNode statement = simplifyStatement(node);
+			if (statement == null) {
+				return emptySequence();
+			}
+			if (hasValue(statement)) {
+				GPNode sequence = emptySequence();
+				sequence.getChildren().add(statement);
+				return sequence;
+			}
+			return statement;
+		}
+	}
+
+
+	// the same arithmetic as GPNode.evalDouble
+	private static double foldArithmetic(GPNode.NodeType nodeType, double left, double right) {
+		switch (nodeType) {
+		case ADD:
+			return left + right;
+		case SUB:
+			return left - right;
+		case MULT:
+			return left * right;
+		case DIV:
+			if (right != 0) {
+				return left / right;
+			}
+			return 0.0;
+		default:
+			return Math.pow(left, right);
+		}
+	}
+
+
+	// the value of a boolean node made only of constants (the same as GPNode.evalBoolean);
+	// null if it depends on something else
+	private static Boolean getKnownBoolean(GPNode node) {
+
+		ArrayList<GPNode> children = node.getChildren();
+
+		switch (node.getNodeType()) {
+
+		case LT:
+		case GT:
+		case LEQ:
+		case GEQ:
+		case EQ:
+			if (!isConst(children.get(0)) || !isConst(children.get(1))) {
+				return null;
+			}
+			double left = children.get(0).getConstValue();
+			double right = children.get(1).getConstValue();
+			switch (node.getNodeType()) {
+			case LT:
+				return left < right;
+			case GT:
+				return left > right;
+			case LEQ:
+				return left <= right;
+			case GEQ:
+				return left >= right;
+			default:
+				return left == right;
+			}
+
+		case AND:
+		case OR:
+			Boolean knownLeft = getKnownBoolean(children.get(0));
+			Boolean knownRight = getKnownBoolean(children.get(1));
+			if (knownLeft == null || knownRight == null) {
+				return null;
+			}
+			if (node.getNodeType() == GPNode.NodeType.AND) {
+				return knownLeft && knownRight;
+			}
+			return knownLeft || knownRight;
+
+		case NEG:
+			Boolean known = getKnownBoolean(children.get(0));
+			return (known == null) ? null : !known;
+
+		default:
+			return null;
+		}
+	}
+
+
+	// an ASSIGN is overwritten if the next statement assigns the same variable without reading it;
+	// it can only be removed if working out its value has no effect
+	private static void removeOverwrittenAssigns(ArrayList<GPNode> statements) {
+		int i = 0;
+		while (i < statements.size() - 1) {
+			GPNode first = statements.get(i);
+			GPNode second = statements.get(i + 1);
+			if (isAssignToVar(first) && isAssignToVar(second)
+					&& first.getChildren().get(0).getVarSlot() == second.getChildren().get(0).getVarSlot()
+					&& hasNoEffect(first.getChildren().get(1))
+					&& !readsSlot(second.getChildren().get(1), first.getChildren().get(0).getVarSlot())) {
+				statements.remove(i);
+				// the ASSIGN before this one might be overwritten now too
+				if (i > 0) {
+					--i;
+				}
+			}
+			else {
+				++i;
+			}
+		}
+	}
+
+
+	// true if evaluating the node can't change a variable or stop the program
+	private static boolean hasNoEffect(GPNode node) {
+		switch (node.getNodeType()) {
+		case VAR:
+		case HEADER_VAR:
+		case CONST:
+		case HEADER_CONST:
+			return true;
+		case ADD:
+		case SUB:
+		case MULT:
+		case DIV:
+		case EXP:
+		case LT:
+		case GT:
+		case LEQ:
+		case GEQ:
+		case EQ:
+		case AND:
+		case OR:
+		case NEG:
+			for (GPNode child : node.getChildren()) {
+				if (!hasNoEffect(child)) {
+					return false;
+				}
+			}
+			return true;
+		case SEQUENCE:
+			// only the empty SEQUENCEs made by simplifyValue
+			return node.getChildren().isEmpty();
+		default:
+			return false;
+		}
+	}
+
+
+	// does anything in the subtree use the variable in this slot?
+	private static boolean readsSlot(GPNode node, int slot) {
+		if (isVar(node) && node.getVarSlot() == slot) {
+			return true;
+		}
+		for (GPNode child : node.getChildren()) {
+			if (readsSlot(child, slot)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	private static boolean isConst(GPNode node) {
+		return node.getNodeType() == GPNode.NodeType.CONST || node.getNodeType() == GPNode.NodeType.HEADER_CONST;
+	}
+
+	private static boolean isVar(GPNode node) {
+		return node.getNodeType() == GPNode.NodeType.VAR || node.getNodeType() == GPNode.NodeType.HEADER_VAR;
+	}
+
+	private static boolean isSequence(GPNode node) {
+		return node.getNodeType() == GPNode.NodeType.SEQUENCE || node.getNodeType() == GPNode.NodeType.HEADER_SEQUENCE;
+	}
+
+	private static boolean isAssignToVar(GPNode node) {
+		return (node.getNodeType() == GPNode.NodeType.ASSIGN || node.getNodeType() == GPNode.NodeType.HEADER_ASSIGN)
+				&& isVar(node.getChildren().get(0));
+	}
+
+	// nodes whose value is a double or a boolean (see GPNode.doubleReturn and GPNode.booleanReturn)
+	private static boolean hasValue(GPNode node) {
+		if (isBooleanNode(node) || node.getNodeType() == GPNode.NodeType.HEADER_VAR || node.getNodeType() == GPNode.NodeType.HEADER_CONST) {
+			return true;
+		}
+		for (GPNode.NodeType nodeType : GPNode.doubleReturn) {
+			if (node.getNodeType() == nodeType) {
+				return !(nodeType == GPNode.NodeType.INC || nodeType == GPNode.NodeType.DEC);
+			}
+		}
+		return false;
+	}
+
+	// nodes whose value is a boolean (see GPNode.booleanReturn)
+	private static boolean isBooleanNode(GPNode node) {
+		for (GPNode.NodeType nodeType : GPNode.booleanReturn) {
+			if (node.getNodeType() == nodeType) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	// a CONST to put in place of a node
+	private static GPNode newConst(GPNode replaced, double value) {
+		GPNode constNode = new GPNode(replaced.getParent(), replaced.getDepth(), GPNode.ReturnType.DOUBLE);
+		constNode.setNodeType(GPNode.NodeType.CONST);
+		constNode.setConstValue(value);
+		return constNode;
+	}
+
+	private static GPNode emptySequence() {
+		GPNode sequence = new GPNode(null, 0, GPNode.ReturnType.NONE);
+		sequence.setNodeType(GPNode.NodeType.SEQUENCE);
+		return sequence;
+	}
+
+
+	// nodes have been moved around, so fix up their parents and depths
+	private static void setParentsAndDepths(GPNode node, GPNode parent, int depth) {
+		node.setParent(parent);
+		node.setDepth(depth);
+		for (GPNode child : node.getChildren()) {
+			setParentsAndDepths(child, node, depth + 1);
+		}
+	}
+
+}
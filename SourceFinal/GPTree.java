@@ -5,6 +5,7 @@ import java.io.PrintWriter;
 import java.util.*;
 
 import java.io.*;
+import java.util.random.RandomGenerator;
 
 public class GPTree {
 	
@@ -13,8 +14,61 @@ public class GPTree {
 										"separationWeight", "alignmentWeight", "cohesionWeight", "pacekeepingWeight",
 										"randomMotionProbability", "numNeighborsOwnFlock", "numNeighborsAllFlocks" };
 
+	// the slot (see ParticleState.java) of the flock parameter with the given name; -1 if there is none
+	// NOTE: this is done once, when a VAR node gets its name, so running a tree never compares names
+	public static int getVarSlot(String varName) {
+		switch (varName) {
+		case "maxSpeed":
+			return ParticleState.MAX_SPEED;
+		case "normalSpeed":
+			return ParticleState.NORMAL_SPEED;
+		case "neighborRadius":
+			return ParticleState.NEIGHBOR_RADIUS;
+		case "separationWeight":
+			return ParticleState.SEPARATION_WEIGHT;
+		case "alignmentWeight":
+			return ParticleState.ALIGNMENT_WEIGHT;
+		case "cohesionWeight":
+			return ParticleState.COHESION_WEIGHT;
+		case "pacekeepingWeight":
+			return ParticleState.PACEKEEPING_WEIGHT;
+		case "randomMotionProbability":
+			return ParticleState.RANDOM_MOTION_PROB;
+		case "numNeighborsOwnFlock":
+			return ParticleState.NUM_NEIGHBORS_OWN_FLOCK;
+		case "numNeighborsAllFlocks":
+			return ParticleState.NUM_NEIGHBORS_ALL_FLOCKS;
+		default:
+			return -1;
+		}
+	}
+
+	// how the tree is run (see run below)
+	// RECURSIVE: GPNode.evaluate walks the nodes
+	// COMPILED: the tree is compiled into a GPProgram
+	// GENERATED: a Java class is generated for the tree (see FlockProgramGenerator.java)
+	public static enum TreeBackend {
+		RECURSIVE, COMPILED, GENERATED
+	}
+
 	// root node of tree
 	private GPNode root;
+
+	// what is actually run: a simplified copy of the tree (see GPSimplifier.java), or the tree itself
+	// if simplifyGPTrees is turned off in Parameters; the tree itself is what crossover and mutation change
+	private GPNode executableRoot;
+
+	// the executable tree compiled into a flat program (see GPProgram.java); must be compiled again
+	// whenever the nodes change, i.e. after crossover and mutation
+	private GPProgram program;
+
+	// the generated class for the tree, if one is needed; null until then
+	private FlockProgram flockProgram;
+	// true if a class couldn't be generated, so the program is used instead
+	private boolean flockProgramFailed;
+
+	// see getCanonicalHash; 0 until it is worked out
+	private long canonicalHash;
 	
 	// needed for breeding
 	private double fitness;
@@ -35,19 +89,39 @@ public class GPTree {
 	//for use in seeing the flocking
 	public int generation;
 	
-	public GPTree() {
-		generateTree();
+	// how many evaluations the fitness is the average of (see Population.EliteResamplePolicy)
+	public int numFitnessSamples;
+	
+	// the random numbers for generating the tree come from rand (the Population's stream)
+	public GPTree(RandomGenerator rand) {
+		generateTree(rand);
+		fitness = 0;
+		generation = 0;
+	}
+
+
+	// an empty tree, used for copies; the root is set afterwards
+	private GPTree() {
 		fitness = 0;
 		generation = 0;
 	}
 
 
 	// make completely separate copy, i.e. no references to nodes in tree being copied
+	// NOTE: this doesn't generate a random tree first, so it doesn't use any random numbers
+	//       and is safe to call from any thread
 	public GPTree getDeepCopy() {
 		GPTree copy = new GPTree();
 		copy.setRoot(root.getDeepCopy(null));
 		copy.setFitness(fitness);
 		copy.generation = generation;
+		copy.numFitnessSamples = numFitnessSamples;
+		copy.canonicalHash = canonicalHash;
+		// the nodes are the same, so the programs are too (a program never changes, so it can be shared)
+		copy.executableRoot = executableRoot;
+		copy.program = program;
+		copy.flockProgram = flockProgram;
+		copy.flockProgramFailed = flockProgramFailed;
 		
 		
 		return copy;
@@ -56,8 +130,90 @@ public class GPTree {
 	
 	// called from the Particle class at the end of the moveFlockAndGetNeighbors method
 	// running the tree requires the particle so that the tree has access to the particle's variables;
-	public void run(Particle particle) {
-		root.evaluate(particle);
+	// the context of the particle's run is passed along so nothing in the tree needs static data
+	public void run(ParticleState particle, SimulationContext context) {
+		getExecutableRoot().evaluate(particle, context);
+	}
+
+	// same, but the way the tree is run is the run's treeBackend (see Parameters.java);
+	// stack is the particle's own, so the compiled program doesn't need to create anything
+	public void run(ParticleState particle, SimulationContext context, GPProgram.EvalStack stack) {
+		switch (context.getTreeBackend()) {
+		case GENERATED:
+			FlockProgram currFlockProgram = getFlockProgram();
+			if (currFlockProgram != null) {
+				currFlockProgram.run(particle);
+			}
+			else {
+				// no class could be generated, so run the compiled program
+				getProgram().run(particle, stack);
+			}
+			return;
+		case COMPILED:
+			getProgram().run(particle, stack);
+			return;
+		default:
+			getExecutableRoot().evaluate(particle, context);
+		}
+	}
+
+
+	// simplify the tree and compile it into a program; called when the tree is generated, and
+	// by Population after crossover and mutation
+	public void compile() {
+		executableRoot = Parameters.simplifyGPTrees ? GPSimplifier.simplify(root) : root;
+		program = GPProgram.compile(executableRoot);
+		flockProgram = null;
+		flockProgramFailed = false;
+		canonicalHash = 0;
+	}
+
+	// the tree that is run, simplified now if that hasn't been done yet
+	public GPNode getExecutableRoot() {
+		GPNode currExecutableRoot = executableRoot;
+		if (currExecutableRoot == null) {
+			currExecutableRoot = Parameters.simplifyGPTrees ? GPSimplifier.simplify(root) : root;
+			executableRoot = currExecutableRoot;
+		}
+		return currExecutableRoot;
+	}
+
+	// the program for the tree, compiled now if that hasn't been done yet
+	public GPProgram getProgram() {
+		GPProgram currProgram = program;
+		if (currProgram == null) {
+			currProgram = GPProgram.compile(getExecutableRoot());
+			program = currProgram;
+		}
+		return currProgram;
+	}
+
+	// a hash of what the tree does: trees that run the same way get the same hash (e.g. copies, or
+	// trees that only differ in code the simplifier removes), so they can share a fitness
+	// (see FitnessCache.java); the hash is of the executable tree
+	public long getCanonicalHash() {
+		long currHash = canonicalHash;
+		if (currHash == 0) {
+			currHash = getExecutableRoot().structuralHash();
+			// 0 means "not worked out yet"
+			if (currHash == 0) {
+				currHash = 1;
+			}
+			canonicalHash = currHash;
+		}
+		return currHash;
+	}
+
+	// the generated class for the tree, generated now if that hasn't been done yet;
+	// null if it can't be generated
+	public FlockProgram getFlockProgram() {
+		FlockProgram currFlockProgram = flockProgram;
+		if (currFlockProgram == null && !flockProgramFailed) {
+			currFlockProgram = FlockProgramGenerator.getProgram(getExecutableRoot());
+			flockProgram = currFlockProgram;
+			flockProgramFailed = (currFlockProgram == null);
+		}
+		return currFlockProgram;
 	}
 
 
@@ -67,7 +223,7 @@ public class GPTree {
 	// NOTE: currently, a tree always has an IF node at the root; 
 	// SEQUENCE nodes would also make sense                                          THIS SHOULD BE IMPLEMENTED!!!!!!!!
 	// ****************************************************************************************************************
-	public void generateTree() {
+	public void generateTree(RandomGenerator rand) {
 		
 		//randomize, because I was trying to get some repeatable results by setting the seed elsewhere
 		seed = (int) System.nanoTime();
@@ -82,13 +238,13 @@ public class GPTree {
 		
 		//The following doesn't actually do anything, I was trying to 
 		// just set the seed to a wide range
-		root.setConstValue(Utilities.nextInt(0, 100000000));
+		root.setConstValue(Utilities.nextInt(rand, 0, 100000000));
 //		
 //		//after the header, the depth is 2
 		int depth = 2;
 //		
 //		//use Swarm.generateRandomParameters
-		double[] RandomParameters = Swarm.generateRandomParameters();
+		double[] RandomParameters = Swarm.generateRandomParameters(rand);
 		
 //		// child 1 of IF is BOOLEAN            
 //		GPNode newChild = generateSubtree(root, depth, GPNode.ReturnType.BOOLEAN, false);
@@ -126,21 +282,22 @@ public class GPTree {
 		root.getChildren().add(ifNode);
 		
 		// child 1 of IF is BOOLEAN   
-		GPNode newChild = generateSubtree(ifNode, depth, GPNode.ReturnType.BOOLEAN, false);
+		GPNode newChild = generateSubtree(ifNode, depth, GPNode.ReturnType.BOOLEAN, false, rand);
 		ifNode.getChildren().add(newChild);
 		//add another child here for the initial if node
 		//continue the tree: GPNode newChild = generateSubtree(root, depth, GPNode.ReturnType.BOOLEAN, false);
 		
 //		// either 1 more child (if) or 2 more children (if-else);
 //		// decide randomly
-		int numChildren = determineNumIfChildren();
+		int numChildren = determineNumIfChildren(rand);
 //
 //		// child 2 and child 3 (if present) must evaluate to NONE
 		for(int i = 1; i < numChildren; i++) {
-			newChild = generateSubtree(ifNode, depth, GPNode.ReturnType.NONE, false);
+			newChild = generateSubtree(ifNode, depth, GPNode.ReturnType.NONE, false, rand);
 			ifNode.getChildren().add(newChild);
 		}
 
+		compile();
 	}
 
 	// probably not needed at this point
@@ -154,7 +311,7 @@ public class GPTree {
 	//   depth is the depth of the root of subtree being created
 	//   returnType is the return/evaluation type of the root of the subtree
 	//   terminal indicates if we want to end this branch
-	public static GPNode generateSubtree(GPNode parent, int depth, GPNode.ReturnType returnType, boolean terminal, GPNode node) {
+	public static GPNode generateSubtree(GPNode parent, int depth, GPNode.ReturnType returnType, boolean terminal, GPNode node, RandomGenerator rand) {
 
 		// Create subtree root
 		GPNode subtreeRoot = new GPNode(parent, depth, returnType);
@@ -189,7 +346,7 @@ public class GPTree {
 		double probabilityTerminal = depth * 1.0 / Parameters.maxTreeDepth;
 //		boolean terminal = false; // <-- to be used later when making recursive call                          ?????????
 		
-		if (terminal || Utilities.rand.nextDouble() <= probabilityTerminal) {
+		if (terminal || rand.nextDouble() <= probabilityTerminal) {
 			terminal = true;
 			
 			//needed for fitness depth penalty
@@ -199,16 +356,16 @@ public class GPTree {
 				
 			// get random terminal node of the specified type
 			if (returnType == GPNode.ReturnType.DOUBLE) {
-				nodeType = GPNode.getRandomTerminalNode(GPNode.DOUBLE_FLAG);
+				nodeType = GPNode.getRandomTerminalNode(GPNode.DOUBLE_FLAG, rand);
 			} 
 			else if (returnType == GPNode.ReturnType.BOOLEAN) {
-				nodeType = GPNode.getRandomTerminalNode(GPNode.BOOLEAN_FLAG);
+				nodeType = GPNode.getRandomTerminalNode(GPNode.BOOLEAN_FLAG, rand);
 			} 
 			else if (returnType == GPNode.ReturnType.STRING) {
-				nodeType = GPNode.getRandomTerminalNode(GPNode.STRING_FLAG);
+				nodeType = GPNode.getRandomTerminalNode(GPNode.STRING_FLAG, rand);
 			} 
 			else if (returnType == GPNode.ReturnType.NONE) {
-				nodeType = GPNode.getRandomTerminalNode(GPNode.NONE_FLAG);
+				nodeType = GPNode.getRandomTerminalNode(GPNode.NONE_FLAG, rand);
 			} 
 			else {
 				System.out.println("error: unknown return type in GPTree.generateSubtree");
@@ -223,16 +380,16 @@ public class GPTree {
 			terminal = false;
 			
 			if (returnType == GPNode.ReturnType.DOUBLE) {
-				nodeType = GPNode.getRandomNode(GPNode.DOUBLE_FLAG);
+				nodeType = GPNode.getRandomNode(GPNode.DOUBLE_FLAG, rand);
 			} 
 			else if (returnType == GPNode.ReturnType.BOOLEAN) {
-				nodeType = GPNode.getRandomNode(GPNode.BOOLEAN_FLAG);
+				nodeType = GPNode.getRandomNode(GPNode.BOOLEAN_FLAG, rand);
 			} 
 			else if (returnType == GPNode.ReturnType.STRING) {
-				nodeType = GPNode.getRandomNode(GPNode.STRING_FLAG);
+				nodeType = GPNode.getRandomNode(GPNode.STRING_FLAG, rand);
 			} 			
 			else if (returnType == GPNode.ReturnType.NONE) {
-				nodeType = GPNode.getRandomNode(GPNode.NONE_FLAG);
+				nodeType = GPNode.getRandomNode(GPNode.NONE_FLAG, rand);
 			} 
 			else {
 				System.out.println("error: unknown return type in GPTree.generateSubtree");
@@ -253,23 +410,23 @@ public class GPTree {
 		if (nodeType == GPNode.NodeType.CONST) {
 			
 			//maybe replace .5 with pSmallConstantValue to avoid hard coding?
-			if(Utilities.rand.nextDouble() < .5) {
-				subtreeRoot.setConstValue(Utilities.nextDouble(0, 1));
+			if(rand.nextDouble() < .5) {
+				subtreeRoot.setConstValue(Utilities.nextDouble(rand, 0, 1));
 			}
 			else {
-				subtreeRoot.setConstValue(Utilities.nextDouble(Parameters.minConstant, Parameters.maxConstant));
+				subtreeRoot.setConstValue(Utilities.nextDouble(rand, Parameters.minConstant, Parameters.maxConstant));
 			}
 		} 
 		
 		// if it's a variable, set its name
 		else if (nodeType == GPNode.NodeType.VAR) {
-			int randIndex = Utilities.nextInt(0, VAR_NAMES.length);
+			int randIndex = Utilities.nextInt(rand, 0, VAR_NAMES.length);
 			subtreeRoot.setVarName(VAR_NAMES[randIndex]);
 		}
 		
 		// add children if not a variable or constant
 		else {
-			ArrayList<GPNode> children = generateChildren(subtreeRoot, depth+1, nodeType, terminal);
+			ArrayList<GPNode> children = generateChildren(subtreeRoot, depth+1, nodeType, terminal, rand);
 			subtreeRoot.setChildren(children);
 		}
 		
@@ -282,7 +439,7 @@ public class GPTree {
 		//   depth is the depth of the root of subtree being created
 		//   returnType is the return/evaluation type of the root of the subtree
 		//   terminal indicates if we want to end this branch
-	public static GPNode generateSubtree(GPNode parent, int depth, GPNode.ReturnType returnType, boolean terminal) {
+	public static GPNode generateSubtree(GPNode parent, int depth, GPNode.ReturnType returnType, boolean terminal, RandomGenerator rand) {
 
 		// Create subtree root
 		GPNode subtreeRoot = new GPNode(parent, depth, returnType);
@@ -300,7 +457,7 @@ public class GPTree {
 																								// max depth of the tree
 //		boolean terminal = false; // <-- to be used later when making recursive call                          ?????????
 		
-		if (terminal || Utilities.rand.nextDouble() <= probabilityTerminal) {
+		if (terminal || rand.nextDouble() <= probabilityTerminal) {
 			terminal = true;
 			
 			//needed for fitness depth penalty
@@ -310,16 +467,16 @@ public class GPTree {
 				
 			// get random terminal node of the specified type
 			if (returnType == GPNode.ReturnType.DOUBLE) {
-				nodeType = GPNode.getRandomTerminalNode(GPNode.DOUBLE_FLAG);
+				nodeType = GPNode.getRandomTerminalNode(GPNode.DOUBLE_FLAG, rand);
 			} 
 			else if (returnType == GPNode.ReturnType.BOOLEAN) {
-				nodeType = GPNode.getRandomTerminalNode(GPNode.BOOLEAN_FLAG);
+				nodeType = GPNode.getRandomTerminalNode(GPNode.BOOLEAN_FLAG, rand);
 			} 
 			else if (returnType == GPNode.ReturnType.STRING) {
-				nodeType = GPNode.getRandomTerminalNode(GPNode.STRING_FLAG);
+				nodeType = GPNode.getRandomTerminalNode(GPNode.STRING_FLAG, rand);
 			} 
 			else if (returnType == GPNode.ReturnType.NONE) {
-				nodeType = GPNode.getRandomTerminalNode(GPNode.NONE_FLAG);
+				nodeType = GPNode.getRandomTerminalNode(GPNode.NONE_FLAG, rand);
 			} 
 			else {
 				System.out.println("error: unknown return type in GPTree.generateSubtree");
@@ -334,16 +491,16 @@ public class GPTree {
 			terminal = false;
 			
 			if (returnType == GPNode.ReturnType.DOUBLE) {
-				nodeType = GPNode.getRandomNode(GPNode.DOUBLE_FLAG);
+				nodeType = GPNode.getRandomNode(GPNode.DOUBLE_FLAG, rand);
 			} 
 			else if (returnType == GPNode.ReturnType.BOOLEAN) {
-				nodeType = GPNode.getRandomNode(GPNode.BOOLEAN_FLAG);
+				nodeType = GPNode.getRandomNode(GPNode.BOOLEAN_FLAG, rand);
 			} 
 			else if (returnType == GPNode.ReturnType.STRING) {
-				nodeType = GPNode.getRandomNode(GPNode.STRING_FLAG);
+				nodeType = GPNode.getRandomNode(GPNode.STRING_FLAG, rand);
 			} 			
 			else if (returnType == GPNode.ReturnType.NONE) {
-				nodeType = GPNode.getRandomNode(GPNode.NONE_FLAG);
+				nodeType = GPNode.getRandomNode(GPNode.NONE_FLAG, rand);
 			} 
 			else {
 				System.out.println("error: unknown return type in GPTree.generateSubtree");
@@ -364,23 +521,23 @@ public class GPTree {
 		if (nodeType == GPNode.NodeType.CONST) {
 			
 			//maybe replace .5 with pSmallConstantValue to avoid hard coding?
-			if(Utilities.rand.nextDouble() < .5) {
-				subtreeRoot.setConstValue(Utilities.nextDouble(0, 1));
+			if(rand.nextDouble() < .5) {
+				subtreeRoot.setConstValue(Utilities.nextDouble(rand, 0, 1));
 			}
 			else {
-				subtreeRoot.setConstValue(Utilities.nextDouble(Parameters.minConstant, Parameters.maxConstant));
+				subtreeRoot.setConstValue(Utilities.nextDouble(rand, Parameters.minConstant, Parameters.maxConstant));
 			}
 		} 
 		
 		// if it's a variable, set its name
 		else if (nodeType == GPNode.NodeType.VAR) {
-			int randIndex = Utilities.nextInt(0, VAR_NAMES.length);
+			int randIndex = Utilities.nextInt(rand, 0, VAR_NAMES.length);
 			subtreeRoot.setVarName(VAR_NAMES[randIndex]);
 		}
 		
 		// add children if not a variable or constant
 		else {
-			ArrayList<GPNode> children = generateChildren(subtreeRoot, depth+1, nodeType, terminal);
+			ArrayList<GPNode> children = generateChildren(subtreeRoot, depth+1, nodeType, terminal, rand);
 			subtreeRoot.setChildren(children);
 		}
 		
@@ -402,7 +559,7 @@ public class GPTree {
 	//   depth is the depth of the children
 	//   nodeType is the return/evaluation type of the parent we are generating the children for
 	//   terminal indicates if we want to end this branch
-	public static ArrayList<GPNode> generateChildren(GPNode parent, int depth, GPNode.NodeType nodeType, boolean terminal) {
+	public static ArrayList<GPNode> generateChildren(GPNode parent, int depth, GPNode.NodeType nodeType, boolean terminal, RandomGenerator rand) {
 
 		// what will be returned (array of the children, where each is the root of a subtree)
 		ArrayList<GPNode> children = new ArrayList<GPNode>();
@@ -420,23 +577,23 @@ public class GPTree {
 	
 			case SEQUENCE:
 				// children of a SEQUENCE are "commands" and don't return a value
-				int numChildren = determineNumSequenceChildren();
+				int numChildren = determineNumSequenceChildren(rand);
 				for(int i = 0; i < numChildren; i++) {
-					child = generateSubtree(parent, depth, GPNode.ReturnType.NONE, terminal);
+					child = generateSubtree(parent, depth, GPNode.ReturnType.NONE, terminal, rand);
 					children.add(child);
 				}
 				break;
 	
 			case IF:
-				numChildren = determineNumIfChildren();
+				numChildren = determineNumIfChildren(rand);
 
 				// first child must be a boolean value
-				child = generateSubtree(parent, depth, GPNode.ReturnType.BOOLEAN, terminal);
+				child = generateSubtree(parent, depth, GPNode.ReturnType.BOOLEAN, terminal, rand);
 				children.add(child);
 
 				// other child (children) should not return a value
 				for(int i = 1; i < numChildren; i++) {
-					child = generateSubtree(parent, depth, GPNode.ReturnType.NONE, terminal);
+					child = generateSubtree(parent, depth, GPNode.ReturnType.NONE, terminal, rand);
 					children.add(child);
 				}
 				break;
@@ -446,14 +603,14 @@ public class GPTree {
 			case DEC:
 				// first child (only child for INC and DEC) must be a variable, not a subtree
 				child = new GPNode(parent, depth, GPNode.ReturnType.STRING);
-				String varName = VAR_NAMES[Utilities.nextInt(0, VAR_NAMES.length)];
+				String varName = VAR_NAMES[Utilities.nextInt(rand, 0, VAR_NAMES.length)];
 				child.setVarName(varName);
 				child.setNodeType(GPNode.NodeType.VAR);
 				children.add(child);
 				
 				// second child (only for ASSIGN) must return DOUBLE
 				if (nodeType == GPNode.NodeType.ASSIGN) {
-					child = generateSubtree(parent, depth, GPNode.ReturnType.DOUBLE, terminal);
+					child = generateSubtree(parent, depth, GPNode.ReturnType.DOUBLE, terminal, rand);
 					children.add(child);
 				}
 				break;
@@ -464,9 +621,9 @@ public class GPTree {
 			case DIV:
 			case EXP:
 				// both children must be DOUBLEs
-				child = generateSubtree(parent, depth, GPNode.ReturnType.DOUBLE, terminal);
+				child = generateSubtree(parent, depth, GPNode.ReturnType.DOUBLE, terminal, rand);
 				children.add(child);
-				child = generateSubtree(parent, depth, GPNode.ReturnType.DOUBLE, terminal);
+				child = generateSubtree(parent, depth, GPNode.ReturnType.DOUBLE, terminal, rand);
 				children.add(child);
 				break;
 
@@ -479,27 +636,27 @@ public class GPTree {
 				// variable on the LHS whose value is being compared to some arbitrary
 				// DOUBLE value on the right side
 				child = new GPNode(parent, depth, GPNode.ReturnType.STRING);
-				varName = VAR_NAMES[Utilities.nextInt(0, VAR_NAMES.length)];
+				varName = VAR_NAMES[Utilities.nextInt(rand, 0, VAR_NAMES.length)];
 				child.setVarName(varName);
 				child.setNodeType(GPNode.NodeType.VAR);
 				children.add(child);
 
-				child = generateSubtree(parent, depth, GPNode.ReturnType.DOUBLE, terminal);
+				child = generateSubtree(parent, depth, GPNode.ReturnType.DOUBLE, terminal, rand);
 				children.add(child);
 				break;
 
 			case OR:
 			case AND:
 				// both children must be BOOLEAN
-				child = generateSubtree(parent, depth, GPNode.ReturnType.BOOLEAN, terminal);
+				child = generateSubtree(parent, depth, GPNode.ReturnType.BOOLEAN, terminal, rand);
 				children.add(child);
-				child = generateSubtree(parent, depth, GPNode.ReturnType.BOOLEAN, terminal);
+				child = generateSubtree(parent, depth, GPNode.ReturnType.BOOLEAN, terminal, rand);
 				children.add(child);
 				break;
 
 			case NEG:
 				// single child must be BOOLEAN
-				child = generateSubtree(parent, depth, GPNode.ReturnType.BOOLEAN, terminal);
+				child = generateSubtree(parent, depth, GPNode.ReturnType.BOOLEAN, terminal, rand);
 				children.add(child);
 				break;
 
@@ -513,15 +670,15 @@ public class GPTree {
 
 	
 	// number of SEQUENCE children is defined by minSequenceLength and maxSequenceLength
-	public static int determineNumSequenceChildren() {	
-		return Utilities.nextInt(Parameters.minSequenceLength, Parameters.maxSequenceLength+1);
+	public static int determineNumSequenceChildren(RandomGenerator rand) {	
+		return Utilities.nextInt(rand, Parameters.minSequenceLength, Parameters.maxSequenceLength+1);
 	}
 
 	// will have either:
 	//     2 children (boolean expression and what to do if true) OR
 	//     3 children (boolean expression, what to do if true, and what to do if false)
-	public static int determineNumIfChildren() {
-		return Utilities.nextInt(2, 4); 
+	public static int determineNumIfChildren(RandomGenerator rand) {
+		return Utilities.nextInt(rand, 2, 4); 
 	}
 	
 
@@ -653,6 +810,11 @@ public class GPTree {
 
 	public void setRoot(GPNode root) {
 		this.root = root;
+		this.executableRoot = null;
+		this.program = null;
+		this.flockProgram = null;
+		this.flockProgramFailed = false;
+		this.canonicalHash = 0;
 	}
 
 
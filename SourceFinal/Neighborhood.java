@@ -1,54 +1,76 @@
-
 /*
  * There is a neighborhood object for each particle. It contains an ID and
- * an array of all the particles in that neighborhood, including the particle
- * whose neighborhood it is.
+ * a list of all the particles in that neighborhood, including the particle
+ * whose neighborhood it is (if the self model says so).
  * 
+ * The list holds particle IDs (indices into the swarm's array of particles), and only
+ * the first numNeighbors of them are used, so a flock neighborhood can be emptied and
+ * refilled on every iteration without creating anything, and going through the neighbors
+ * only looks at real neighbors.
  */
 
 public class Neighborhood {
 
 
 	private int neighID;
-	private Particle[] neighParticles;  
-	private int nextNeighIndex = 0;   // only used when adding neighborhoods; keeps track of index of next one
+	// all the particles in the swarm; the neighbors are neighIDs[0] to neighIDs[numNeighbors-1]
+	private Particle[] particles;
+	private int[] neighIDs;  
+	private int numNeighbors = 0;
 
 
 	// this constructor just creates an array big enough to hold all the neighbors -- 
 	// neighbors are added using the addNeighbor method
 
-	public Neighborhood(int size, int particleID) {
+	public Neighborhood(Particle[] particles, int particleID) {
 		this.neighID = particleID;
-		nextNeighIndex = 0;
-		neighParticles = new Particle[size];
+		this.particles = particles;
+		numNeighbors = 0;
+		neighIDs = new int[particles.length];
 	}
 
 	
 	// after the particles are created in the Swarm constructor, the constructor calls the createNeighborhoods method, 
 	// which calls this constructor for each particle to create the Neighborhood in that particle.
-	public Neighborhood (Particle[] particles, int particleID, 
+	// the context of the run gives the size of the grid for von Neumann and Moore neighborhoods
+	// NOTE: only the regular particles are put in neighborhoods, not the dummy particles at the
+	//       end of the array of particles
+	public Neighborhood (SimulationContext context, Particle[] particles, int particleID, 
 			PSO.Topology currentTopology, PSO.SelfModel currentSelfModel, PSO.InfluenceModel currentInfluenceModel) {
 		
 		this.neighID = particleID;
-		nextNeighIndex = 0;
+		this.particles = particles;
+
+		neighIDs = getNeighborIDs(context, context.getNumParticles(), particleID, currentTopology, currentSelfModel);
+		if (neighIDs == null) {
+			neighIDs = new int[0];
+		}
+		numNeighbors = neighIDs.length;
+	}
+
+
+	// the IDs of the particles in a particle's neighborhood for the given topology, in the order they
+	// go in the neighborhood; ArraySwarm uses these directly, since it doesn't have Particle objects
+	public static int[] getNeighborIDs(SimulationContext context, int numParticles, int particleID, 
+			PSO.Topology currentTopology, PSO.SelfModel currentSelfModel) {
+
+		int[] neighIDs = null;
 
-		// this is wasteful, since every particle will have a Neighborhood object containing an array
-		// of all the particles; however, since they are just references to particles, it's not so bad
 		if (currentTopology == PSO.Topology.GBEST) {
 
 			if (currentSelfModel == PSO.SelfModel.INCLUDE_SELF) {
-				neighParticles = new Particle[particles.length];
-				for (int partID = 0 ; partID < particles.length ; partID++) {
-					neighParticles[partID] = particles[partID];
+				neighIDs = new int[numParticles];
+				for (int partID = 0 ; partID < numParticles ; partID++) {
+					neighIDs[partID] = partID;
 				}
 			}
 
 			else {
 				int nextParticleIndex = 0;  // need this to keep track when self is not included and that partID is skipped
-				neighParticles = new Particle[particles.length-1];
-				for (int partID = 0 ; partID < particles.length ; partID++) {
+				neighIDs = new int[numParticles-1];
+				for (int partID = 0 ; partID < numParticles ; partID++) {
 					if (partID != particleID)
-						neighParticles[nextParticleIndex++] = particles[partID];
+						neighIDs[nextParticleIndex++] = partID;
 				}
 
 			}
@@ -61,18 +83,18 @@ public class Neighborhood {
 			// the non-self particles are always the first two in the list; 
 			// if self is included, make the array size 3 and put the self at the end
 			if (currentSelfModel == PSO.SelfModel.INCLUDE_SELF) {
-				neighParticles = new Particle[3];
-				neighParticles[2] = particles[particleID];
+				neighIDs = new int[3];
+				neighIDs[2] = particleID;
 			}
 			else {
-				neighParticles = new Particle[2];
+				neighIDs = new int[2];
 			}
 
-			int leftIndex = particleID == 0? particles.length - 1: particleID - 1;				
-			int rightIndex = particleID == particles.length - 1? 0: particleID + 1;
+			int leftIndex = particleID == 0? numParticles - 1: particleID - 1;				
+			int rightIndex = particleID == numParticles - 1? 0: particleID + 1;
 
-			neighParticles[0] = particles[leftIndex];
-			neighParticles[1] = particles[rightIndex];
+			neighIDs[0] = leftIndex;
+			neighIDs[1] = rightIndex;
 
 		}
 
@@ -81,40 +103,36 @@ public class Neighborhood {
 			// the non-self particles are always the first four in the list; 
 			// if self is included, make the array size 5 and put the self at the end
 			if (currentSelfModel == PSO.SelfModel.INCLUDE_SELF) {
-				neighParticles = new Particle[5];
-				neighParticles[4] = particles[particleID];
+				neighIDs = new int[5];
+				neighIDs[4] = particleID;
 			}
 			else {
-				neighParticles = new Particle[4];
+				neighIDs = new int[4];
 			}
 
-			// get the dimensions of the torus from PSO, where they are set by hand
-			// for each possible # of particles
-			int numRowsVonNeumann = Parameters.numRowsVonNeumannAndMoore;
-			int numColsVonNeumann = Parameters.numColsVonNeumannAndMoore;
+			// get the dimensions of the torus from the context, where they are copied from
+			// Parameters, where they are set by hand for each possible # of particles
+			int numRowsVonNeumann = context.getNumRowsVonNeumannAndMoore();
+			int numColsVonNeumann = context.getNumColsVonNeumannAndMoore();
 
 			int row = particleID  / numColsVonNeumann;
 			int col = particleID  % numColsVonNeumann;
 
 			int northParticleRow = row - 1 < 0? numRowsVonNeumann - 1: row - 1;
 			int northParticleCol = col;
-			int particleNum = (northParticleRow * numColsVonNeumann) + northParticleCol;
-			neighParticles[0] = particles[particleNum];
+			neighIDs[0] = (northParticleRow * numColsVonNeumann) + northParticleCol;
 
 			int eastParticleRow = row;
 			int eastParticleCol = (col + 1) % numColsVonNeumann;
-			particleNum = (eastParticleRow * numColsVonNeumann) + eastParticleCol;
-			neighParticles[1] = particles[particleNum];
+			neighIDs[1] = (eastParticleRow * numColsVonNeumann) + eastParticleCol;
 
 			int southParticleRow = (row + 1) % numRowsVonNeumann;
 			int southParticleCol = col;
-			particleNum = (southParticleRow * numColsVonNeumann) + southParticleCol;
-			neighParticles[2] = particles[particleNum];
+			neighIDs[2] = (southParticleRow * numColsVonNeumann) + southParticleCol;
 
 			int westParticleRow = row;
 			int westParticleCol = col - 1 < 0? numColsVonNeumann - 1: col - 1;
-			particleNum = (westParticleRow * numColsVonNeumann) + westParticleCol;
-			neighParticles[3] = particles[particleNum];			
+			neighIDs[3] = (westParticleRow * numColsVonNeumann) + westParticleCol;			
 
 		}
 
@@ -123,17 +141,17 @@ public class Neighborhood {
 			// the non-self particles are always the first eight in the list; 
 			// if self is included, make the array size 9 and put the self at the end
 			if (currentSelfModel == PSO.SelfModel.INCLUDE_SELF) {
-				neighParticles = new Particle[9];
-				neighParticles[8] = particles[particleID];
+				neighIDs = new int[9];
+				neighIDs[8] = particleID;
 			}
 			else {
-				neighParticles = new Particle[8];
+				neighIDs = new int[8];
 			}
 
-			// get the dimensions of the torus from PSO, where they are set by hand
-			// for each possible # of particles
-			int numRowsMoore = Parameters.numRowsVonNeumannAndMoore;
-			int numColsMoore = Parameters.numColsVonNeumannAndMoore;
+			// get the dimensions of the torus from the context, where they are copied from
+			// Parameters, where they are set by hand for each possible # of particles
+			int numRowsMoore = context.getNumRowsVonNeumannAndMoore();
+			int numColsMoore = context.getNumColsVonNeumannAndMoore();
 
 			int row = particleID  / numColsMoore;
 			int col = particleID  % numColsMoore;
@@ -159,8 +177,7 @@ public class Neighborhood {
 							neighCol = 0;
 						}
 
-						int particleNum = (neighRow * numColsMoore) + neighCol;
-						neighParticles[nextParticleIndex++] = particles[particleNum];
+						neighIDs[nextParticleIndex++] = (neighRow * numColsMoore) + neighCol;
 					}
 				}
 			}
@@ -168,15 +185,16 @@ public class Neighborhood {
 		
 		else if (currentTopology == PSO.Topology.FLOCK) {
 			if (currentSelfModel == PSO.SelfModel.INCLUDE_SELF) {
-				neighParticles = new Particle[1];
-				neighParticles[0] = particles[particleID];
+				neighIDs = new int[1];
+				neighIDs[0] = particleID;
 			}
 			else {
-				neighParticles = new Particle[0];
+				neighIDs = new int[0];
 				
 			}
 		}
-		
+
+		return neighIDs;
 	}
 
 
@@ -198,68 +216,30 @@ public class Neighborhood {
 
 		
 		// if it's the standard gbest including self, it's faster to just return the
-		// true global best that we're keeping track of in Swarm.java
+		// true global best that the particle's run is keeping track of
 		if (currentTopology == PSO.Topology.GBEST && currentSelfModel == PSO.SelfModel.INCLUDE_SELF) {
 			
-			return Swarm.globalBest.getPosition(); //This was being called no matter what for all 10 weeks of this project
+			return particle.getContext().getGlobalBest().getPosition(); //This was being called no matter what for all 10 weeks of this project
 		}
 
 		// whether the self is included was dealt with when the neighborhood was created;
 		// if the self is not supposed to be in the neighborhood, it's not (see constructor for details)
 		// so just go through the list of particles and find the best one
-		Particle bestParticle = null;
-		if(currentSelfModel == PSO.SelfModel.INCLUDE_SELF) {
-			bestParticle = particle;
-		}
-
+		// NOTE: the particle's own personal best is used if there is nobody else in the neighborhood,
+		//       even if the self is not included
+		Particle bestParticle = particle;
 		double bestPBestFuncVal = Double.MAX_VALUE;
 
-		//this commented below was how it was originally, consider putting it back 
-		//int numPartsInNeigh = neighParticles.length;
-		
-		int numPartsInNeigh = particle.getNeighborhood().getNeighParticles().length;
-		Neighborhood neighborhoodParticles = particle.getNeighborhood();
-		
-		//neighborhoodParticles.print();
-		
-		for (int p = 0 ; p < numPartsInNeigh ; ++p) {
-			
-			//this commented below was how it was originally, consider putting it back 
-			//Particle nextParticle = neighParticles[p];
-			
-			Particle nextParticle = neighborhoodParticles.getNeighParticles()[p];
-			
-			//test
-			//System.out.println("particle ID: " + particle.getParticleID() + " Neighbor: " + nextParticle.getParticleID() + " p: "+ p);
-			
-			try {
-				
-				
-				if(nextParticle != null) {
-					//nullPointerException here (without the above if statement) **************
-					Solution nextPBestFuncValSol = nextParticle.getPersonalBest();
-					
-					double nextPBestFuncVal = nextPBestFuncValSol.getFunctionValue();
-					if (nextPBestFuncVal < bestPBestFuncVal) {
-						bestParticle = nextParticle;
-						bestPBestFuncVal = nextPBestFuncVal;
-						//System.out.println("Particle " + (p+1) + " of " + numPartsInNeigh + " Best value found: " + bestPBestFuncVal);
-					}
-				}
-			}
-			catch (Exception e){
-				System.out.println("Exception in Neighborhood.getNeighBestPosition");
-				System.out.println("Number of particles in neighborhood: " + numPartsInNeigh + " p: " + p);
-				e.printStackTrace();
+		for (int n = 0 ; n < numNeighbors ; ++n) {
+			Particle nextParticle = particles[neighIDs[n]];
+			double nextPBestFuncVal = nextParticle.getPersonalBest().getFunctionValue();
+			if (nextPBestFuncVal < bestPBestFuncVal) {
+				bestParticle = nextParticle;
+				bestPBestFuncVal = nextPBestFuncVal;
 			}
-			
 		}
 
-		//print statements here
-		
 		return bestParticle.getPersonalBest().getPosition();
-		
-		
 	}
 	
 	
@@ -267,25 +247,31 @@ public class Neighborhood {
 	// particle in the neighborhood influences the change in velocity
 	public DoubleVector getFIPSAcceleration (Particle particle) {
 
-		int numPartsInNeigh = neighParticles.length;
+		DoubleVector acceleration = new DoubleVector(particle.getPosition().size(), 0.0);
+		calcFIPSAcceleration(particle, acceleration);
+		return acceleration;
+	}
+
+
+	// same as getFIPSAcceleration, but puts the change in velocity in the vector sent in
+	// instead of creating a new one
+	public void calcFIPSAcceleration (Particle particle, DoubleVector acceleration) {
+
+		int numPartsInNeigh = numNeighbors;
 		
 		// each particle has equal influence; this is not always the case in FIPS;
 		// sometimes they are weighted by fitness
 		double componentTheta = PSO.theta / numPartsInNeigh;
 		DoubleVector position = particle.getPosition();
-		DoubleVector acceleration = new DoubleVector(position.size(), 0.0);
+		acceleration.setAll(0.0);
 
 		// whether the self is included was dealt with when the neighborhood was created;
 		// if the self is not supposed to be in the neighborhood, it's not (see constructor for details)
 		// so just go through the list of particles and do the standard FIPS calculation
 		for (int p = 0 ; p < numPartsInNeigh ; ++p) {
-			Particle nextParticle = neighParticles[p];
-			DoubleVector vectorToNextPBest = DoubleVector.sub(nextParticle.getPosition(), position);
-			vectorToNextPBest.multRandomScalar(0.0, componentTheta);
-			acceleration.addVector(vectorToNextPBest);
+			Particle nextParticle = particles[neighIDs[p]];
+			acceleration.addRandomScaledDiff(nextParticle.getPosition(), position, 0.0, componentTheta, particle.getRand());
 		}
-
-		return acceleration;
 	}
 	
 
@@ -293,15 +279,21 @@ public class Neighborhood {
 	// miscellaneous methods 
 		
 	public void addNeighbor(Particle particle) {
-		neighParticles[nextNeighIndex++] = particle;
+		neighIDs[numNeighbors++] = particle.getParticleID();
+	}
+
+
+	// take all the neighbors out, so the neighborhood can be filled in again
+	public void clear() {
+		numNeighbors = 0;
 	}
 	
 	
 	// does the neighborhood contain a particular particle
 	public boolean containsParticle (Particle particle) {
 
-		for (int p = 0 ; p < neighParticles.length ; ++p) {
-			if (neighParticles[p] == particle)	{
+		for (int n = 0 ; n < numNeighbors ; ++n) {
+			if (neighIDs[n] == particle.getParticleID())	{
 				return true;
 			}
 		}
@@ -310,24 +302,35 @@ public class Neighborhood {
 	}
 
 	
+	// the particles in the neighborhood, in a new array that is exactly big enough; this is
+	// for showing the neighborhood, going through it should use getNeighborID
 	public Particle[] getNeighParticles() {
+		Particle[] neighParticles = new Particle[numNeighbors];
+		for (int n = 0 ; n < numNeighbors ; ++n) {
+			neighParticles[n] = particles[neighIDs[n]];
+		}
 		return neighParticles;
 	}
 
+
+	public int getNumNeighbors() {
+		return numNeighbors;
+	}
+
+
+	public int getNeighborID(int n) {
+		return neighIDs[n];
+	}
+
 	
 	public int getNeighID () {
 		return neighID;
 	}
 	
 	public void print() {
-		System.out.println("neighID: " + neighID + " nextNeighIndex: " + nextNeighIndex);
-		for(int i = 0; i < neighParticles.length; i++) {
-			if(neighParticles[i] == null) {
-				System.out.println("null");
-			}
-			else {
-				System.out.println(neighParticles[i].getParticleID());
-			}
+		System.out.println("neighID: " + neighID + " numNeighbors: " + numNeighbors);
+		for(int n = 0; n < numNeighbors; n++) {
+			System.out.println(neighIDs[n]);
 		}
 	}
 	
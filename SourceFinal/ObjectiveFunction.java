@@ -0,0 +1,29 @@
+/*
+ * A test function, with its shift, that evaluates a point straight out of an array: the
+ * point is the dims values of x starting at offset. Nothing is allocated, so the swarms
+ * can call it for every particle on every iteration (see SimulationContext.getObjectiveFunction).
+ *
+ * The error of a value is value - getOptValue().
+ *
+ * evaluateAll does a whole batch of points at once, e.g. a chunk of a swarm's particles after
+ * they have all moved (see ArraySwarm.updateSynchronous, which does the chunks on several
+ * threads); the points are the rows of a matrix kept in one array, one row of dims values per
+ * point. By default it just evaluates the points one after another, but an implementation can
+ * do them however it likes (somewhere else altogether, for example), as long as values[i] ends
+ * up the value of point i.
+ */
+
+public interface ObjectiveFunction {
+
+	public double evaluate(double[] x, int offset, int dims);
+
+	public double getOptValue();
+
+	// values[i] = the value of point i, for the points from firstPoint up to (but not including) lastPoint
+	public default void evaluateAll(double[] x, int firstPoint, int lastPoint, int dims, double[] values) {
+		for (int i = firstPoint; i < lastPoint; i++) {
+			values[i] = evaluate(x, i * dims, dims);
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Everything the PSO needs to know about a test function: the ranges the particles start
+ * in, the search space, the speed limits, where the optimum is and what its value is, what
+ * counts as success, and how much the optimum can be shifted. create makes the function,
+ * shifted for one run, that the particles are evaluated with.
+ *
+ * The eight functions in TestFunctions are built in (see BuiltInFunction). Other functions
+ * can be added without changing any code here: put a class that implements this interface
+ * (and has a public no-argument constructor) on the classpath, list it in
+ * META-INF/services/ObjectiveFunctionProvider, and set Parameters.functionNum to its
+ * getFunctionNum(). TestFunctions.getProvider finds them with java.util.ServiceLoader.
+ *
+ * Each run gets the provider once, when its SimulationContext is created, and evaluates
+ * every particle through the one ObjectiveFunction it creates.
+ */
+
+public interface ObjectiveFunctionProvider {
+
+	// the number Parameters.functionNum is set to for this function (the built-in
+	// functions are 0 to TestFunctions.NUMBER_OPT_FUNCTIONS - 1)
+	public int getFunctionNum();
+
+	public String getName();
+
+	// the particles start between getInitMinVal() and getInitMinVal() + getInitRange()
+	public double getInitMinVal();
+
+	public double getInitRange();
+
+	public double getSearchSpaceMaxVal();
+
+	public double getSearchSpaceRange();
+
+	// each component of a velocity is kept between these
+	public double getSpeedMinVal();
+
+	public double getSpeedMaxVal();
+
+	public double getSpeedRange();
+
+	// the optimum is at this coordinate in every dimension, before it is shifted
+	public double getOptCoord();
+
+	public double getOptValue();
+
+	// the optimum is shifted by up to this much either way, the same in every dimension
+	public double getShiftRange();
+
+	// a run succeeds when the error of the global best is no more than this
+	public double getSuccessCriterion();
+
+	public double getSuccessDistanceFromOpt();
+
+	// the function with its optimum shifted by shiftAmount in every dimension
+	public ObjectiveFunction create(double shiftAmount, TestFunctions.KernelMode mode);
+
+}
@@ -11,6 +11,13 @@
  */
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 //import jsc.independentsamples.MannWhitneyTest;
 //import org.apache.commons.math3.stat.inference.MannWhitneyUTest;
 
@@ -36,216 +43,392 @@ public class PSO {
 		NEIGH_BEST, FIPS
 	}
 
+	// how are the particles in a swarm stored?
+	// OBJECTS: a Particle object for each particle (Swarm.java)
+	// ARRAYS: all the particles in big arrays, one row per particle (ArraySwarm.java)
+	public static enum SwarmBackend {
+		OBJECTS, ARRAYS
+	}
+
 	// the usual PSO parameters
 	public static double nBestTheta = 2.05;
 	public static double pBestTheta = 2.05;
 	public static double theta = nBestTheta + pBestTheta;
 	public static double constrictionFactor = 2.0 / (theta - 2.0 + Math.sqrt(theta*theta - 4.0*theta));
 
-	public static boolean usingFLOCKPSO = false;
 	// see the mannWhitney method for an explanation of the use of these
 	private static final int NON_FLOCK_PSO_DATA_INDEX = 0;
 	private static final int FLOCK_PSO_DATA_INDEX = 1;
 
+	// S-PSO only needs to be run once; when trees are evaluated on several threads,
+	// only one of them should run it while the others wait for the result
+	private static final Object REGULAR_PSO_LOCK = new Object();
+
+	// the PSO runs for a tree are done at the same time on this pool (unless the tree
+	// is already being evaluated on a pool thread); see runAllSwarms
+	private static ForkJoinPool runPool = null;
+
 	// the tree that is being evaluated
 	private GPTree gpTree;
 
+	// the fitness the tree has to be able to beat for all its runs to be done (see evalGPTree);
+	// NaN if all the runs are always done
+	private double racingTarget = Double.NaN;
+
+	// the stream of random numbers for evaluating the tree; each run splits its own off of it
+	private SplittableRandom rand;
+
+	// flock data from the first FLOCK-PSO run, kept so it can be written out
+	// to a csv file after the tree has been evaluated
+	private FlockTracker flockData;
 
-	// create a PSO object with a reference to the GPTree being tested 
-	public PSO(GPTree gpTree) {
+	// the number of iterations each run actually did, which is less than numIterations
+	// if a stopping rule ended it early (see Parameters.stopAtSuccess etc.); the FLOCK-PSO
+	// ones are handed back in the FitnessResult, and S-PSO (on a PSO object of its own)
+	// saves its ones in Parameters.regularIterationsRun
+	private int[] iterationsRun;
+
+
+	// create a PSO object with a reference to the GPTree being tested and the stream
+	// of random numbers for testing it
+	public PSO(GPTree gpTree, SplittableRandom rand) {
 		this.gpTree = gpTree;
+		this.rand = rand;
+		this.flockData = new FlockTracker();
+		this.iterationsRun = new int[Parameters.numPSORuns];
+	}
+
+
+	// stop evaluating the tree once it is clear that its fitness won't be better than this
+	// (only if Parameters.useRacing is true)
+	public void setRacingTarget(double racingTarget) {
+		this.racingTarget = racingTarget;
 	}
 
 
 
 	// evaluate the GPTree
+	// NOTE: each run gets its own SimulationContext, and nothing in here (or in the Swarm, 
+	// Particle and Neighborhood objects it creates) changes static data, except for the 
+	// one-time S-PSO results in Parameters, so several PSO objects can be evaluating trees 
+	// at the same time
 	//	public MannWhitneyResult evalGPTree() {
 	public FitnessResult evalGPTree() {
 		//
 		
 		//		// get the parameters from the Parameters object that was created in TestFlockPSO
 		int totalNumRuns = Parameters.numPSORuns;
-		int functionNum = Parameters.functionNum;
-		Topology topologyC = Parameters.topology;
-		SelfModel selfModel = Parameters.selfModel;
-		InfluenceModel influenceModel = Parameters.influenceModel;
-		int numDimensions = Parameters.numDimensions;
-		int numParticles = Parameters.numParticles;
-		int numDummy = Parameters.dummyParticles;
-		int numIterations = Parameters.numIterations;
-		double printProb = Parameters.printFlockProb;
 		
 		
 		//		// to save values for Mann Whitney tests, both the function values
 		//		// and the distance in solution space from the location of the global optimum
 		double[][] functionValues = new double[2][totalNumRuns];
 		double[][] distanceFromGlobalOptimum = new double[2][totalNumRuns];
-		//
-		//
-		//
-		//
 		
-		//test
-		Topology topology = Topology.GBEST;
-		
-		//		// run S-PSO and FLOCK-PSO
-		for (int i = 0; i < 2; ++i) {
-			//
-			//			// do S-PSO, then FLOCK-PSO
-			if (i == 0) {
-				usingFLOCKPSO = false;
-				topology = topologyC;
+		// S-PSO
+		// the S-PSO results don't depend on the tree, so S-PSO is run the first time
+		// through and its results are reused for every tree after that: either the
+		// average for every run, or the result of each run (see Parameters.useRegularPSODistribution)
+		runRegularPSOOnce(gpTree);
+		for (int currentRunNum = 0 ; currentRunNum < totalNumRuns ; ++currentRunNum) {
+			if (Parameters.useRegularPSODistribution) {
+				functionValues[NON_FLOCK_PSO_DATA_INDEX][currentRunNum] = Parameters.regularPSOValues[currentRunNum];
+				distanceFromGlobalOptimum[NON_FLOCK_PSO_DATA_INDEX][currentRunNum] = Parameters.regularDistanceValues[currentRunNum];
 			}
-			else if (i == 1) {
-				usingFLOCKPSO = true;
-				topology = Topology.FLOCK;
+			else {
+				functionValues[NON_FLOCK_PSO_DATA_INDEX][currentRunNum] = Parameters.regularPSOValue;
+				distanceFromGlobalOptimum[NON_FLOCK_PSO_DATA_INDEX][currentRunNum] = Parameters.regularDistanceValue;
 			}
-			//
-			//			// RUNS
-			//			// ====
-			
-			//this double between 0 and 1 determines how if a flockData is output to a csv file
-			double selectValue = Utilities.rand.nextDouble();
-			
-			for (int currentRunNum = 0 ; currentRunNum < totalNumRuns ; ++currentRunNum) {
-				//              ////////
-				//				// for each run generate a random shift of the location of the optimum in that function's search space
-				double shiftVectorAmount = TestFunctions.SHIFT_RANGE[functionNum] * Utilities.rand.nextDouble();
-				if (Utilities.rand.nextDouble() < 0.5) {
-					shiftVectorAmount *= -1.0;
-				}
-				//
-				//				// set the shift vector in the TestFunctions class
-				TestFunctions.setShiftVector(functionNum, numDimensions, shiftVectorAmount);
-				//
-				//				// the location of the optimum is shifted and that location is stored in this
-				//				// vector; it is initially set to the actual optimum location, then  shifted
-				DoubleVector shiftedOptimumLocation = new DoubleVector(numDimensions, TestFunctions.OPT_COORD[functionNum]);
-				shiftedOptimumLocation.addScalar(shiftVectorAmount);
-				//
-				//
-				//				// create the swarm
-				//				// numParticlesIndex is sent because it needs to be used in the creation of the vonNeumann
-				//				// and Moore neighborhoods to access the arrays above that indicate the number of rows/cols
-				if (!Parameters.ranRegularPSO || usingFLOCKPSO){
-//					if(usingFLOCKPSO) {
-//						topology = Topology.FLOCK;
-//					}
-//					else {
-//						topology = Parameters.topology;
-//					}
-					
-					//create a new swarm with these parameters ///SHOULD WE CHANGE TOPOLOGY TO FLOCK?????
-					Swarm swarm = new Swarm (numParticles, functionNum, numDimensions, topology, selfModel, influenceModel, gpTree, numDummy);
-					
-					
-					//
-					//
-					//				// ITERATIONS
-					//				// ==========
-					for (int iter = 0; iter < numIterations ; ++iter) {
-						swarm.update(functionNum, topology, selfModel, influenceModel);
-						
-						//uncomment this to see what the neighborhoods look like in a FlockPSO run, very close to the end of the run
-						//if (iter == (numIterations - 10) && currentRunNum == 0 && usingFLOCKPSO) {
-							//System.out.println("Iteration: " + iter + "\n");
-							//swarm.showAllNeighborhoods();
-						//}
-						
-					}
-					//if we select that probability or less, print out just one (in this case the first one) of the runs flocking
-					if(selectValue < printProb && currentRunNum == 0) {
-						//System.out.println("############## PRINTING FLOCK DATA TO FILE ##############");
-						//swarm.printFlockData();
-						
-					}
-					if(currentRunNum == 0) {
-						Parameters.currFlockData = swarm.flockData;
-					}
-				}
-				///////
-				//
-				//				// save final data
-				if (!usingFLOCKPSO) { //regular PSO
-
-					//if we've run the initial test
-					if (Parameters.ranRegularPSO){
-						functionValues[NON_FLOCK_PSO_DATA_INDEX][currentRunNum] = Parameters.regularPSOValue; //check
-						distanceFromGlobalOptimum[NON_FLOCK_PSO_DATA_INDEX][currentRunNum] = Parameters.regularDistanceValue;// this hasn't been changed yet for the initial runs!!
-						
-//						double[] A = functionValues[NON_FLOCK_PSO_DATA_INDEX];
-//						//		// get the second row
-//						double[] B = functionValues[FLOCK_PSO_DATA_INDEX];
-//						
-//						double functionFlockSum = 0;
-//						double functionNonFlockSum = 0;
-//						
-//						for(int j = 0; j < totalNumRuns; j++) {
-//							functionFlockSum += A[j];
-//							functionNonFlockSum += B[j];
-//						}
-//
-//						//get the average values for the function and the distance from
-//						//optimum for both flocking and non-flocking
-//
-//						double functionFlockAvg = functionFlockSum/totalNumRuns;
-//						double functionNonFlockAvg = functionNonFlockSum/totalNumRuns;
-						
-					}
-					else {
-						functionValues[NON_FLOCK_PSO_DATA_INDEX][currentRunNum] = Swarm.globalBest.getFunctionValue();
-						distanceFromGlobalOptimum[NON_FLOCK_PSO_DATA_INDEX][currentRunNum] = Swarm.globalBest.getPosition().distance(shiftedOptimumLocation);
-						
-
-					}
-				}
-				else {
-					functionValues[FLOCK_PSO_DATA_INDEX][currentRunNum] = Swarm.globalBest.getFunctionValue();
-					distanceFromGlobalOptimum[FLOCK_PSO_DATA_INDEX][currentRunNum] = Swarm.globalBest.getPosition().distance(shiftedOptimumLocation);
-				}
-				//
-				//////////////////
-				
-				
-				
-			}  // END RUNS FOR-LOOP 
-			//
-			
-			//most of this if statement is probably unnecessary
-			if (!Parameters.ranRegularPSO){
-				Parameters.ranRegularPSO = true;
-				double[] A = functionValues[NON_FLOCK_PSO_DATA_INDEX];
-				//		// get the second row
-				double C[] = distanceFromGlobalOptimum[NON_FLOCK_PSO_DATA_INDEX];
-				
-				double functionNonFlockSum = 0;
-				double distanceNonFlockSum = 0;
-				
-				for(int j = 0; j < totalNumRuns; j++) {
-					functionNonFlockSum += A[j];
-					distanceNonFlockSum += C[j];
-				}
+		}
 
-				//get the average values for the function and the distance from
-				//optimum for both flocking and non-flocking
+		// FLOCK-PSO
+		if (!Parameters.useRacing || Double.isNaN(racingTarget)) {
+			runAllSwarms(rand, totalNumRuns, Topology.FLOCK, true, 
+					functionValues[FLOCK_PSO_DATA_INDEX], distanceFromGlobalOptimum[FLOCK_PSO_DATA_INDEX]);
+		}
+		else {
+			// racing: the runs are done a batch at a time, and the rest are skipped as soon as
+			// the tree can't beat the target; the streams are all split off first, as usual, so
+			// each run gets the same numbers as it would without racing
+			SplittableRandom[] runRands = splitRunRands(rand, totalNumRuns);
+			int numRunsDone = 0;
+			while (numRunsDone < totalNumRuns) {
+				int lastRun = Math.min(numRunsDone + Parameters.racingBatchSize, totalNumRuns);
+				runSwarms(runRands, numRunsDone, lastRun, Topology.FLOCK, true, 
+						functionValues[FLOCK_PSO_DATA_INDEX], distanceFromGlobalOptimum[FLOCK_PSO_DATA_INDEX]);
+				numRunsDone = lastRun;
+				if (numRunsDone < totalNumRuns && cannotBeatTarget(functionValues, numRunsDone)) {
+					break;
+				}
+			}
 
-				double functionNonFlockAvg = functionNonFlockSum/totalNumRuns;
-				double distanceNonFlockAvg = distanceNonFlockSum/totalNumRuns;
-				
-				Parameters.regularPSOValue = functionNonFlockAvg;
-				Parameters.regularDistanceValue = distanceNonFlockAvg;
+			// the fitness is worked out from the runs that were done
+			if (numRunsDone < totalNumRuns) {
+				for (int row = 0; row < 2; row++) {
+					functionValues[row] = Arrays.copyOf(functionValues[row], numRunsDone);
+					distanceFromGlobalOptimum[row] = Arrays.copyOf(distanceFromGlobalOptimum[row], numRunsDone);
+				}
+				FitnessResult racedResult = fitnessTest(functionValues, distanceFromGlobalOptimum);
+				racedResult.setRaced(true);
+				racedResult.setIterationsRun(Arrays.copyOf(iterationsRun, numRunsDone));
+				return racedResult;
 			}
-			
 		}
-		//if we have run the initial regular PSO once, don't run them again
-		//this is now done in FitnessResult
-		
 
 		//		// send the function value data and distance from global optimum location data
 		//		// the method that does the Mann-Whitney tests; the tests for both function value
 		//		// and distance are returned in a MannWhitneyResult object
 		//		return mannWhitney(functionValues, distanceFromGlobalOptimum);
-		return fitnessTest(functionValues, distanceFromGlobalOptimum);
+		FitnessResult fitResult = fitnessTest(functionValues, distanceFromGlobalOptimum);
+		fitResult.setIterationsRun(iterationsRun);
+		return fitResult;
+	}
+
+
+	// true if, after the first numRuns FLOCK-PSO runs, even the most optimistic fitness the tree
+	// could end up with is worse than the racing target: the optimistic fitness uses the mean
+	// function value minus Parameters.racingConfidenceZ standard errors (i.e. the low end of a
+	// confidence interval for the mean, since lower function values are better)
+	// NOTE: S-PSO's mean is over the same runs as the fitness would use if racing stopped here,
+	//       which isn't Parameters.regularPSOValue if Parameters.useRegularPSODistribution is on
+	private boolean cannotBeatTarget(double[][] functionValues, int numRuns) {
+
+		if (numRuns < 2) {
+			return false;
+		}
+
+		// the fitness compares the mean with S-PSO's mean, so it only makes sense
+		// if S-PSO's mean is positive
+		double[] regularFunctionValues = functionValues[NON_FLOCK_PSO_DATA_INDEX];
+		double regularSum = 0;
+		for (int i = 0; i < numRuns; i++) {
+			regularSum += regularFunctionValues[i];
+		}
+		double regularMean = regularSum / numRuns;
+		if (regularMean <= 0) {
+			return false;
+		}
+
+		double[] flockFunctionValues = functionValues[FLOCK_PSO_DATA_INDEX];
+		double sum = 0;
+		for (int i = 0; i < numRuns; i++) {
+			sum += flockFunctionValues[i];
+		}
+		double mean = sum / numRuns;
+		double squaredDiffSum = 0;
+		for (int i = 0; i < numRuns; i++) {
+			squaredDiffSum += (flockFunctionValues[i] - mean) * (flockFunctionValues[i] - mean);
+		}
+		double standardError = Math.sqrt(squaredDiffSum / (numRuns - 1) / numRuns);
+
+		// same formula as the fitness (see errorValue and Population.calcFitness)
+		double bestPossibleMean = mean - Parameters.racingConfidenceZ * standardError;
+		double bestPossibleFitness = Parameters.fitnessInterval * (regularMean - bestPossibleMean) / regularMean;
+		return bestPossibleFitness < racingTarget;
+	}
+
+
+	// run S-PSO for all the runs, if it hasn't been done yet, and save the results and their
+	// averages in Parameters; if the results for the same settings were saved to disk by an
+	// earlier run of the program, they are read instead of running S-PSO (see BaselineCache.java)
+	// NOTE: Population calls this from the main thread before any trees are evaluated, so the
+	//       S-PSO runs are shared out on the run pool while nothing else is going on, instead of
+	//       being done by one evaluator thread while the others wait on the lock
+	// NOTE: S-PSO doesn't run the tree; it's only needed because every SimulationContext has one
+	public static void runRegularPSOOnce(GPTree gpTree) {
+
+		synchronized (REGULAR_PSO_LOCK) {
+
+			//if we have run the initial regular PSO once, don't run them again
+			if (Parameters.ranRegularPSO) {
+				return;
+			}
+
+			int totalNumRuns = Parameters.numPSORuns;
+			double[] functionValues;
+			double[] distanceFromGlobalOptimum;
+
+			// S-PSO doesn't depend on the tree, so it gets its own stream from the master stream
+			// instead of using the tree's; the stream is split off even if it isn't used, so
+			// the streams split off after it are the same either way
+			SplittableRandom regularRand = Utilities.splitMasterStream();
+			BaselineCache.Baseline baseline = BaselineCache.load();
+			if (baseline != null) {
+				functionValues = baseline.getFunctionValues();
+				distanceFromGlobalOptimum = baseline.getDistances();
+			}
+			else {
+				functionValues = new double[totalNumRuns];
+				distanceFromGlobalOptimum = new double[totalNumRuns];
+				PSO regularPSO = new PSO(gpTree, regularRand);
+				regularPSO.runAllSwarms(regularRand, totalNumRuns, Parameters.topology, false, functionValues, distanceFromGlobalOptimum);
+				Parameters.regularIterationsRun = regularPSO.iterationsRun;
+				BaselineCache.save(functionValues, distanceFromGlobalOptimum);
+			}
+
+			double functionNonFlockSum = 0;
+			double distanceNonFlockSum = 0;
+
+			for(int j = 0; j < totalNumRuns; j++) {
+				functionNonFlockSum += functionValues[j];
+				distanceNonFlockSum += distanceFromGlobalOptimum[j];
+			}
+
+			//get the average values for the function and the distance from
+			//optimum for non-flocking
+
+			Parameters.regularPSOValue = functionNonFlockSum/totalNumRuns;
+			Parameters.regularDistanceValue = distanceNonFlockSum/totalNumRuns;
+			Parameters.regularPSOValues = functionValues;
+			Parameters.regularDistanceValues = distanceFromGlobalOptimum;
+			Parameters.ranRegularPSO = true;
+		}
+	}
+
+
+	// do all the PSO runs; the runs are completely independent of each other, so they are
+	// done at the same time on a ForkJoinPool, each one filling in its own slots of the
+	// arrays sent in
+	private void runAllSwarms(SplittableRandom rand, int totalNumRuns, Topology topology, boolean usingFLOCKPSO, 
+			double[] functionValues, double[] distanceFromGlobalOptimum) {
+
+		runSwarms(splitRunRands(rand, totalNumRuns), 0, totalNumRuns, topology, usingFLOCKPSO, functionValues, distanceFromGlobalOptimum);
+	}
+
+
+	// each run's stream of random numbers is split off here, in run order, so the
+	// results don't depend on the order in which the runs happen to finish
+	private static SplittableRandom[] splitRunRands(SplittableRandom rand, int totalNumRuns) {
+		SplittableRandom[] runRands = new SplittableRandom[totalNumRuns];
+		for (int currentRunNum = 0 ; currentRunNum < totalNumRuns ; ++currentRunNum) {
+			runRands[currentRunNum] = rand.split();
+		}
+		return runRands;
+	}
+
+
+	// do the runs from firstRun up to (but not including) lastRun
+	private void runSwarms(SplittableRandom[] runRands, int firstRun, int lastRun, Topology topology, boolean usingFLOCKPSO, 
+			double[] functionValues, double[] distanceFromGlobalOptimum) {
+
+		// one thread, or only one run: nothing to gain from the pool
+		if (lastRun - firstRun < 2 || (Parameters.numRunThreads <= 1 && !ForkJoinTask.inForkJoinPool())) {
+			for (int currentRunNum = firstRun ; currentRunNum < lastRun ; ++currentRunNum) {
+				runSwarm(currentRunNum, runRands[currentRunNum], topology, usingFLOCKPSO, functionValues, distanceFromGlobalOptimum);
+			}
+			return;
+		}
+
+		ArrayList<RecursiveAction> runs = new ArrayList<RecursiveAction>();
+		for (int currentRunNum = firstRun ; currentRunNum < lastRun ; ++currentRunNum) {
+			final int runNum = currentRunNum;
+			runs.add(new RecursiveAction() {
+				protected void compute() {
+					runSwarm(runNum, runRands[runNum], topology, usingFLOCKPSO, functionValues, distanceFromGlobalOptimum);
+				}
+			});
+		}
+
+		// if this tree is already being evaluated on a pool thread (see FitnessEvaluator),
+		// share the runs out in that pool; otherwise use the pool for the runs
+		if (ForkJoinTask.inForkJoinPool()) {
+			ForkJoinTask.invokeAll(runs);
+		}
+		else {
+			getRunPool().invoke(new RecursiveAction() {
+				protected void compute() {
+					invokeAll(runs);
+				}
+			});
+		}
+	}
+
+
+	// the pool for the runs is only created the first time it's needed; Swarm also uses it
+	// for updating particles in parallel in synchronous mode
+	static synchronized ForkJoinPool getRunPool() {
+		if (runPool == null) {
+			runPool = new ForkJoinPool(Parameters.numRunThreads);
+		}
+		return runPool;
+	}
+
+
+	// do a single PSO run and save the final global best function value and its distance from
+	// the (shifted) global optimum in the currentRunNum slots of the arrays sent in; the run
+	// ends early if one of the stopping rules says so
+	private void runSwarm(int currentRunNum, SplittableRandom runRand, Topology topology, boolean usingFLOCKPSO, 
+			double[] functionValues, double[] distanceFromGlobalOptimum) {
+
+		// everything about the run lives in its context: the configuration, copied from
+		// Parameters, the random numbers, the shift of the optimum (generated randomly for
+		// each run) and the state of the swarm
+		SimulationContext context = new SimulationContext(topology, usingFLOCKPSO, gpTree, runRand);
+
+		//create a new swarm with these parameters; only one of these is used
+		Swarm swarm = null;
+		ArraySwarm arraySwarm = null;
+		if (context.getSwarmBackend() == SwarmBackend.ARRAYS) {
+			arraySwarm = new ArraySwarm(context);
+		}
+		else {
+			swarm = new Swarm(context);
+		}
+
+		// the function is evaluated once for each particle to start with, and once for
+		// each particle in each iteration
+		int numFunctionEvaluations = context.getNumParticles();
+		double successCriterion = context.getFunction().getSuccessCriterion();
+		double lastBestValue = context.getGlobalBest().getFunctionValue();
+		int lastImprovementIter = 0;
+
+		// ITERATIONS
+		// ==========
+		int iter;
+		for (iter = 0; iter < context.getNumIterations() ; ++iter) {
+
+			// STOPPING RULES
+			if (context.isStopAtSuccess() && context.getGlobalBest().getError() <= successCriterion) {
+				break;
+			}
+			if (context.getStagnationIterations() > 0 && iter - lastImprovementIter >= context.getStagnationIterations()) {
+				break;
+			}
+			if (context.getMaxFunctionEvaluations() > 0 
+					&& numFunctionEvaluations + context.getNumParticles() > context.getMaxFunctionEvaluations()) {
+				break;
+			}
+
+			if (arraySwarm != null) {
+				arraySwarm.update();
+			}
+			else {
+				swarm.update();
+			}
+			numFunctionEvaluations += context.getNumParticles();
+
+			// the global best only gets better, so any change is an improvement
+			if (context.getGlobalBest().getFunctionValue() != lastBestValue) {
+				lastBestValue = context.getGlobalBest().getFunctionValue();
+				lastImprovementIter = iter + 1;
+			}
+
+			//uncomment this to see what the neighborhoods look like in a FlockPSO run, very close to the end of the run
+			//if (iter == (numIterations - 10) && currentRunNum == 0 && usingFLOCKPSO) {
+			//System.out.println("Iteration: " + iter + "\n");
+			//swarm.showAllNeighborhoods();
+			//}
+		}
+
+		if (usingFLOCKPSO && currentRunNum == 0) {
+			flockData = context.getFlockData();
+		}
+
+		// save final data
+		iterationsRun[currentRunNum] = iter;
+		Solution globalBest = context.getGlobalBest();
+		functionValues[currentRunNum] = globalBest.getFunctionValue();
+		distanceFromGlobalOptimum[currentRunNum] = globalBest.getPosition().distance(context.getShiftedOptimumLocation());
 	}
 	
 	
@@ -256,7 +439,8 @@ public class PSO {
 	//	public MannWhitneyResult mannWhitney(double[][] functionValues, double[][] distanceFromGlobalOptimum) {
 	public FitnessResult fitnessTest(double[][] functionValues, double[][] distanceFromGlobalOptimum) {
 		//
-		int totalNumRuns = Parameters.numPSORuns;
+		// usually Parameters.numPSORuns, but fewer if racing stopped the runs early
+		int totalNumRuns = functionValues[FLOCK_PSO_DATA_INDEX].length;
 
 		//		// this will hold the results for both Mann-Whitney tests:
 		//		//   1) for funciton values
@@ -474,6 +658,11 @@ public class PSO {
 	}
 
 
+	public FlockTracker getFlockData() {
+		return flockData;
+	}
+
+
 
 
 }
@@ -28,6 +28,33 @@ public class Parameters {
 	public static double probMutation = 0.05; 
 	public static int eliteNumber = 4; //how many of the top performing individuals pass on unchanged to the next generation
 	
+	// number of threads used to calculate the fitnesses of the trees in a generation;
+	// 1 calculates them one after another on the main thread
+	public static int numEvalThreads = Runtime.getRuntime().availableProcessors();
+	
+	// remember the fitnesses of this many trees (by the canonical hash of the tree, see
+	// GPTree.getCanonicalHash), so a tree that is the same as one already evaluated isn't
+	// evaluated again; 0 turns this off, so every tree is evaluated
+	public static int fitnessCacheSize = 0;
+	
+	// when are the elites evaluated again at the start of a generation? (see Population.EliteResamplePolicy)
+	public static Population.EliteResamplePolicy eliteResamplePolicy = Population.EliteResamplePolicy.ALWAYS;
+	// for AVERAGE: how many fitness samples to average before an elite isn't evaluated any more
+	public static int eliteMaxSamples = 5;
+	
+	// racing: do a tree's PSO runs a batch at a time, and stop as soon as it is clear the tree
+	// can't beat the tree at racingTargetRank in the current population (see PSO.evalGPTree);
+	// the tree's fitness is then worked out from the runs that were done
+	public static boolean useRacing = false;
+	public static int racingBatchSize = 5;
+	// how sure we have to be: the number of standard errors added to the mean function value
+	// before giving up on a tree (2.576 is a 99% confidence interval)
+	public static double racingConfidenceZ = 2.576;
+	// 0 is the best tree; the default is the worst elite; the ranks are by the fitnesses after
+	// the elites have been resampled (see eliteResamplePolicy), so the target is the
+	// rank'th best fitness in the population at the time the children are evaluated
+	public static int racingTargetRank = 3;
+	
 	// Tree Creation Parameters
 	// constants are restricted to a given interval, but there doesn't seem to be any good reason to do so
 	public static double minConstant = 0.0;
@@ -50,6 +77,8 @@ public class Parameters {
 	public static boolean doRandomTree = false;
 	
 	// right now, we can only test one function at a time; may want to change this
+	// (can also be one of the rotated or composite functions, or the number of a function
+	// added with an ObjectiveFunctionProvider)
 	public static int functionNum = TestFunctions.ACKLEY_FUNCTION_NUM;//ACKLEY_FUNCTION_NUM;//RASTRIGIN_FUNCTION_NUM;
 	
 	// ditto for topology, etc. of the PSO
@@ -64,6 +93,43 @@ public class Parameters {
 	
 	public static int FLOCK_SPACE_DIM_LENGTH = 300;
 	
+	// use a grid over flock space to find flock neighbors instead of checking every other
+	// particle (see FlockGrid.java); the neighbors found are exactly the same either way
+	public static boolean useSpatialGrid = true;
+	
+	// normally particles are updated one after another, so each particle sees the ones before
+	// it already moved; in synchronous mode every particle sees the others as they were at the
+	// start of the iteration, so the particles in a swarm can be updated in parallel
+	public static boolean synchronousFlock = false;
+	
+	// keep the particles in Particle objects (OBJECTS) or in arrays with one row per
+	// particle (ARRAYS, see ArraySwarm.java); both give the same results
+	public static PSO.SwarmBackend swarmBackend = PSO.SwarmBackend.OBJECTS;
+	
+	// how the GP trees are run: walking the nodes (RECURSIVE), as compiled programs (COMPILED,
+	// see GPProgram.java) or as generated Java classes (GENERATED, see FlockProgramGenerator.java);
+	// all three give the same results
+	public static GPTree.TreeBackend treeBackend = GPTree.TreeBackend.COMPILED;
+	
+	// how the test functions are evaluated: SCALAR or BLOCKED (see FunctionKernels.java); BLOCKED
+	// is faster, but doesn't give exactly the same results
+	public static TestFunctions.KernelMode kernelMode = TestFunctions.KernelMode.SCALAR;
+	
+	// remember the function values of this many positions in each PSO run, so a particle that
+	// comes back to one of them isn't evaluated again (see EvaluationCache.java); only worth it
+	// for functions that are slow to evaluate; 0 turns this off
+	public static int evaluationCacheSize = 0;
+	// positions within the same cell of a grid this size share a value; 0 only matches exactly
+	// the same position, so the results don't change
+	public static double evaluationCacheEpsilon = 0.0;
+	
+	// how many generated classes are kept for GENERATED trees
+	public static int flockProgramCacheSize = 64;
+	
+	// run a simplified copy of each GP tree (see GPSimplifier.java) instead of the tree itself;
+	// both give the same results
+	public static boolean simplifyGPTrees = true;
+	
 	//how many dummy particles do we want per real particle, to help with flocking behavior
 	public static int dummyParticles = 0; 
 	//the total number of particles is used sometimes
@@ -74,6 +140,29 @@ public class Parameters {
 	public static int numColsVonNeumannAndMoore = 6;
 	
 	public static int numIterations = 100;
+	
+	// stopping rules: a PSO run can end before numIterations when
+	// - the global best is within the function's success criterion (TestFunctions.SUCCESS_CRITERION)
+	// - the global best hasn't improved for stagnationIterations iterations (0 turns this off)
+	// - another iteration would take more than maxFunctionEvaluations evaluations of the
+	//   function, counting the initial ones (0 turns this off)
+	// the rules are used for both S-PSO and FLOCK-PSO
+	public static boolean stopAtSuccess = false;
+	public static int stagnationIterations = 0;
+	public static int maxFunctionEvaluations = 0;
+	
+	// number of threads used to do the PSO runs for a single tree at the same time;
+	// when the trees themselves are being evaluated on several threads (see numEvalThreads),
+	// the runs are shared out among those threads instead
+	public static int numRunThreads = Runtime.getRuntime().availableProcessors();
+	
+	// directory where the S-PSO results are saved, so a later run with the same settings can
+	// read them instead of running S-PSO again (see BaselineCache.java); null turns this off
+	public static String baselineCacheDir = null;
+	
+	// compare FLOCK-PSO to the result of each S-PSO run, rather than to the average of
+	// the S-PSO runs
+	public static boolean useRegularPSODistribution = false;
     
 	//Parameters has also become a sort of information sharing platform between different parts of the program
 	
@@ -81,11 +170,18 @@ public class Parameters {
     public static boolean ranRegularPSO = false;
     public static double regularPSOValue = 100000; //just a large number, should probably be max_int or similar
     public static double regularDistanceValue = 100000; //just a large number, should probably be max_int or similar
+    // the result of each S-PSO run
+    public static double[] regularPSOValues = null;
+    public static double[] regularDistanceValues = null;
+    // the number of iterations each S-PSO run did (null if the results were read by BaselineCache)
+    public static int[] regularIterationsRun = null;
     
     //used to store the best trees and 
     public static double bestFitness = -100;
     public static double bestValue = 100000;
     public static GPTree bestTree;
+    // the number of iterations each of the best tree's FLOCK-PSO runs did
+    public static int[] bestIterationsRun = null;
     
     //A random integer used to differentiate between different runs, in case they are started at the exact same time. 
     //We don't want to overwrite a file, so this makes the files different. Also used to tell flock
@@ -94,7 +190,9 @@ public class Parameters {
     //determines how often we save a flock swarm to csv, so that we can look at it later (used by PSO.java)
     public static double printFlockProb = 0.0002; 
     
-    public static FlockTracker currFlockData = new FlockTracker();
+    //every random number comes from streams split off of one that starts from this seed (see Utilities);
+    //it's printed with the other parameters, so a run can be repeated exactly by setting it again
+    public static long masterSeed = System.nanoTime();
     
     //public static int globalSeed = 0;
     
@@ -155,6 +253,14 @@ public class Parameters {
 			pw.println("# probCrossover: " + probCrossover);
 			pw.println("# maxCrossoverTries: " + maxCrossoverTries);
 			pw.println("# probMutation: " + probMutation);
+			pw.println("# numEvalThreads: " + numEvalThreads);
+			pw.println("# fitnessCacheSize: " + fitnessCacheSize);
+			pw.println("# eliteResamplePolicy: " + eliteResamplePolicy);
+			pw.println("# eliteMaxSamples: " + eliteMaxSamples);
+			pw.println("# useRacing: " + useRacing);
+			pw.println("# racingBatchSize: " + racingBatchSize);
+			pw.println("# racingConfidenceZ: " + racingConfidenceZ);
+			pw.println("# racingTargetRank: " + racingTargetRank);
 			pw.println("#");
 
 			pw.println("# Tree Creation Parameters");
@@ -178,6 +284,22 @@ public class Parameters {
 			pw.println("# numRowsVonNeumannAndMoore: " + numRowsVonNeumannAndMoore);
 			pw.println("# numColsVonNeumannAndMoore: " + numColsVonNeumannAndMoore);
 			pw.println("# numIterations: " + numIterations);
+			pw.println("# stopAtSuccess: " + stopAtSuccess);
+			pw.println("# stagnationIterations: " + stagnationIterations);
+			pw.println("# maxFunctionEvaluations: " + maxFunctionEvaluations);
+			pw.println("# numRunThreads: " + numRunThreads);
+			pw.println("# baselineCacheDir: " + baselineCacheDir);
+			pw.println("# useRegularPSODistribution: " + useRegularPSODistribution);
+			pw.println("# useSpatialGrid: " + useSpatialGrid);
+			pw.println("# synchronousFlock: " + synchronousFlock);
+			pw.println("# swarmBackend: " + swarmBackend);
+			pw.println("# treeBackend: " + treeBackend);
+			pw.println("# kernelMode: " + kernelMode);
+			pw.println("# evaluationCacheSize: " + evaluationCacheSize);
+			pw.println("# evaluationCacheEpsilon: " + evaluationCacheEpsilon);
+			pw.println("# flockProgramCacheSize: " + flockProgramCacheSize);
+			pw.println("# simplifyGPTrees: " + simplifyGPTrees);
+			pw.println("# masterSeed: " + masterSeed);
 			pw.println("#");
 		}
 
@@ -192,6 +314,14 @@ public class Parameters {
 			pw.println("probCrossover: " + probCrossover);
 			pw.println("maxCrossoverTries: " + maxCrossoverTries);
 			pw.println("probMutation: " + probMutation);
+			pw.println("numEvalThreads: " + numEvalThreads);
+			pw.println("fitnessCacheSize: " + fitnessCacheSize);
+			pw.println("eliteResamplePolicy: " + eliteResamplePolicy);
+			pw.println("eliteMaxSamples: " + eliteMaxSamples);
+			pw.println("useRacing: " + useRacing);
+			pw.println("racingBatchSize: " + racingBatchSize);
+			pw.println("racingConfidenceZ: " + racingConfidenceZ);
+			pw.println("racingTargetRank: " + racingTargetRank);
 			pw.println("");
 
 			pw.println("Tree Creation Parameters");
@@ -215,6 +345,22 @@ public class Parameters {
 			pw.println("numRowsVonNeumannAndMoore: " + numRowsVonNeumannAndMoore);
 			pw.println("numColsVonNeumannAndMoore: " + numColsVonNeumannAndMoore);
 			pw.println("numIterations: " + numIterations);
+			pw.println("stopAtSuccess: " + stopAtSuccess);
+			pw.println("stagnationIterations: " + stagnationIterations);
+			pw.println("maxFunctionEvaluations: " + maxFunctionEvaluations);
+			pw.println("numRunThreads: " + numRunThreads);
+			pw.println("baselineCacheDir: " + baselineCacheDir);
+			pw.println("useRegularPSODistribution: " + useRegularPSODistribution);
+			pw.println("useSpatialGrid: " + useSpatialGrid);
+			pw.println("synchronousFlock: " + synchronousFlock);
+			pw.println("swarmBackend: " + swarmBackend);
+			pw.println("treeBackend: " + treeBackend);
+			pw.println("kernelMode: " + kernelMode);
+			pw.println("evaluationCacheSize: " + evaluationCacheSize);
+			pw.println("evaluationCacheEpsilon: " + evaluationCacheEpsilon);
+			pw.println("flockProgramCacheSize: " + flockProgramCacheSize);
+			pw.println("simplifyGPTrees: " + simplifyGPTrees);
+			pw.println("masterSeed: " + masterSeed);
 			pw.println("");
 		}
 		
@@ -263,6 +409,236 @@ public class Parameters {
 	}
 
 
+	public static int getNumEvalThreads() {
+		return numEvalThreads;
+	}
+
+
+	public static void setNumEvalThreads(int numEvalThreads) {
+		Parameters.numEvalThreads = numEvalThreads;
+	}
+
+
+	public static int getNumRunThreads() {
+		return numRunThreads;
+	}
+
+
+	public static void setNumRunThreads(int numRunThreads) {
+		Parameters.numRunThreads = numRunThreads;
+	}
+
+
+	public static boolean getUseSpatialGrid() {
+		return useSpatialGrid;
+	}
+
+
+	public static void setUseSpatialGrid(boolean useSpatialGrid) {
+		Parameters.useSpatialGrid = useSpatialGrid;
+	}
+
+
+	public static boolean getSynchronousFlock() {
+		return synchronousFlock;
+	}
+
+
+	public static void setSynchronousFlock(boolean synchronousFlock) {
+		Parameters.synchronousFlock = synchronousFlock;
+	}
+
+
+	public static PSO.SwarmBackend getSwarmBackend() {
+		return swarmBackend;
+	}
+
+
+	public static void setSwarmBackend(PSO.SwarmBackend swarmBackend) {
+		Parameters.swarmBackend = swarmBackend;
+	}
+
+
+	public static GPTree.TreeBackend getTreeBackend() {
+		return treeBackend;
+	}
+
+
+	public static void setTreeBackend(GPTree.TreeBackend treeBackend) {
+		Parameters.treeBackend = treeBackend;
+	}
+
+
+	public static TestFunctions.KernelMode getKernelMode() {
+		return kernelMode;
+	}
+
+
+	public static void setKernelMode(TestFunctions.KernelMode kernelMode) {
+		Parameters.kernelMode = kernelMode;
+	}
+
+
+	public static int getEvaluationCacheSize() {
+		return evaluationCacheSize;
+	}
+
+
+	public static void setEvaluationCacheSize(int evaluationCacheSize) {
+		Parameters.evaluationCacheSize = evaluationCacheSize;
+	}
+
+
+	public static double getEvaluationCacheEpsilon() {
+		return evaluationCacheEpsilon;
+	}
+
+
+	public static void setEvaluationCacheEpsilon(double evaluationCacheEpsilon) {
+		Parameters.evaluationCacheEpsilon = evaluationCacheEpsilon;
+	}
+
+
+	public static int getFlockProgramCacheSize() {
+		return flockProgramCacheSize;
+	}
+
+
+	public static void setFlockProgramCacheSize(int flockProgramCacheSize) {
+		Parameters.flockProgramCacheSize = flockProgramCacheSize;
+	}
+
+
+	public static boolean getSimplifyGPTrees() {
+		return simplifyGPTrees;
+	}
+
+
+	public static void setSimplifyGPTrees(boolean simplifyGPTrees) {
+		Parameters.simplifyGPTrees = simplifyGPTrees;
+	}
+
+
+	public static int getFitnessCacheSize() {
+		return fitnessCacheSize;
+	}
+
+
+	public static void setFitnessCacheSize(int fitnessCacheSize) {
+		Parameters.fitnessCacheSize = fitnessCacheSize;
+	}
+
+
+	public static Population.EliteResamplePolicy getEliteResamplePolicy() {
+		return eliteResamplePolicy;
+	}
+
+
+	public static void setEliteResamplePolicy(Population.EliteResamplePolicy eliteResamplePolicy) {
+		Parameters.eliteResamplePolicy = eliteResamplePolicy;
+	}
+
+
+	public static int getEliteMaxSamples() {
+		return eliteMaxSamples;
+	}
+
+
+	public static void setEliteMaxSamples(int eliteMaxSamples) {
+		Parameters.eliteMaxSamples = eliteMaxSamples;
+	}
+
+
+	public static boolean getStopAtSuccess() {
+		return stopAtSuccess;
+	}
+
+
+	public static void setStopAtSuccess(boolean stopAtSuccess) {
+		Parameters.stopAtSuccess = stopAtSuccess;
+	}
+
+
+	public static int getStagnationIterations() {
+		return stagnationIterations;
+	}
+
+
+	public static void setStagnationIterations(int stagnationIterations) {
+		Parameters.stagnationIterations = stagnationIterations;
+	}
+
+
+	public static int getMaxFunctionEvaluations() {
+		return maxFunctionEvaluations;
+	}
+
+
+	public static void setMaxFunctionEvaluations(int maxFunctionEvaluations) {
+		Parameters.maxFunctionEvaluations = maxFunctionEvaluations;
+	}
+
+
+	public static boolean getUseRacing() {
+		return useRacing;
+	}
+
+
+	public static void setUseRacing(boolean useRacing) {
+		Parameters.useRacing = useRacing;
+	}
+
+
+	public static int getRacingBatchSize() {
+		return racingBatchSize;
+	}
+
+
+	public static void setRacingBatchSize(int racingBatchSize) {
+		Parameters.racingBatchSize = racingBatchSize;
+	}
+
+
+	public static double getRacingConfidenceZ() {
+		return racingConfidenceZ;
+	}
+
+
+	public static void setRacingConfidenceZ(double racingConfidenceZ) {
+		Parameters.racingConfidenceZ = racingConfidenceZ;
+	}
+
+
+	public static int getRacingTargetRank() {
+		return racingTargetRank;
+	}
+
+
+	public static void setRacingTargetRank(int racingTargetRank) {
+		Parameters.racingTargetRank = racingTargetRank;
+	}
+
+
+	public static String getBaselineCacheDir() {
+		return baselineCacheDir;
+	}
+
+
+	public static void setBaselineCacheDir(String baselineCacheDir) {
+		Parameters.baselineCacheDir = baselineCacheDir;
+	}
+
+
+	public static boolean getUseRegularPSODistribution() {
+		return useRegularPSODistribution;
+	}
+
+
+	public static void setUseRegularPSODistribution(boolean useRegularPSODistribution) {
+		Parameters.useRegularPSODistribution = useRegularPSODistribution;
+	}
+
+
 	public static double getProbCrossover() {
 		return probCrossover;
 	}
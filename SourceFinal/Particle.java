@@ -12,11 +12,20 @@
  * between dummy and "real" particles.
  */
 
+import java.util.SplittableRandom;
 
-public class Particle {
+public class Particle implements ParticleState {
 
 	private int particleID;
 
+	// the context of the run this particle belongs to; the other particles, the GP tree,
+	// the shift of the function optimum and the random number generator are all reached through it
+	private SimulationContext context;
+
+	// this particle's own stream of random numbers, split off of the run's stream when the
+	// particle is created, so it doesn't matter what order the particles use their numbers in
+	private SplittableRandom rand;
+
 	// PSO DATA
 
 	// location and velocity of the particle in PSO SOLUTION SPACE
@@ -34,7 +43,7 @@ public class Particle {
 
 	// flocks are in a 500 x 500 2D space
 	private static final int FLOCK_SPACE_NUM_DIM = 2;
-	private static final int FLOCK_SPACE_DIM_LENGTH = Parameters.FLOCK_SPACE_DIM_LENGTH;
+	private int flockSpaceDimLength;  // set from the context, since it can be changed in Parameters
 
 	// make components of initial velocity very small 
 	private static final double FLOCK_INIT_VELOCITY_DIMENSION_MAGNITUDE = 1.0;
@@ -43,20 +52,19 @@ public class Particle {
 	// how close to the boundary does a particle need to be before it "bounces back"?
 	private static final int FLOCK_BOUDARY_SENSING_THRESHOLD = 5;
 
-	// flock parameters
-	private double maxSpeed;                // speed limit
-	private double normalSpeed;             // when pacekeeping (see below) used, tries to keep particle to this speed
-	private double neighborRadius;          // determines which other particles are neighbors of a given particle    
-	private double separationWeight;        // how strongly do particles move away from every neighbor: range = [0.0, 100.0]
-	private double cohesionWeight;          // how strongly do particles move toward the average position of their neighbors: range = [0.0, 1.0]
-	private double alignmentWeight;         // how strongly do particles align match average velocity of their neighbors: range = [0.0, 1.0]
-	private double pacekeepingWeight;       // how strongly do particles stick to the normalSpeed: range = [0.0, 1.0]
-	private double randomMotionProb;        // probability that a small random component is introduced into the motion (see particle class for more info)
-
-	// motion of particles in flock depends on the number of neighbors
-	private double numNeighborsOwnFlock = 0;
-	// this is not used, since there is only one flock, but we might introduce more flocks later, so leave it
-	private double numNeighborsAllFlocks = 0;
+	// flock parameters, one for each slot (see ParticleState.java):
+	//   MAX_SPEED: speed limit
+	//   NORMAL_SPEED: when pacekeeping (see below) used, tries to keep particle to this speed
+	//   NEIGHBOR_RADIUS: determines which other particles are neighbors of a given particle
+	//   SEPARATION_WEIGHT: how strongly do particles move away from every neighbor: range = [0.0, 100.0]
+	//   COHESION_WEIGHT: how strongly do particles move toward the average position of their neighbors: range = [0.0, 1.0]
+	//   ALIGNMENT_WEIGHT: how strongly do particles align match average velocity of their neighbors: range = [0.0, 1.0]
+	//   PACEKEEPING_WEIGHT: how strongly do particles stick to the normalSpeed: range = [0.0, 1.0]
+	//   RANDOM_MOTION_PROB: probability that a small random component is introduced into the motion (see particle class for more info)
+	//   NUM_NEIGHBORS_OWN_FLOCK: motion of particles in flock depends on the number of neighbors
+	//   NUM_NEIGHBORS_ALL_FLOCKS: this is not used, since there is only one flock, but we might introduce more flocks later, so leave it
+	// the GP tree gets and changes them by slot, so each is a single array access
+	private double[] flockParameters = new double[NUM_FLOCK_PARAMS];
 
 	// location and velocity of the particle in FLOCK SPACE
 	private DoubleVector currFlockLocation;  
@@ -65,8 +73,28 @@ public class Particle {
 	
 	private int internalNeighRadius;
 
-	public Particle(int functionNum, 
-			int numDimensions, 
+	// reused in moveFlockAndGetNeighbors for the IDs of particles that might be neighbors
+	private int[] candidates;
+
+	// reused in moveFlockAndGetNeighbors for the particles that are neighbors
+	private Neighborhood flockNeigh;
+
+	// acceleration worked out by calcAcceleration, waiting to be applied by applyAcceleration;
+	// created once, and filled in again on every update
+	private DoubleVector pendingAcceleration;
+
+	// in synchronous mode (see Swarm.update) the new flock location and velocity are put here,
+	// so the other particles still see the old ones; swapFlockBuffers makes them current
+	private DoubleVector nextFlockLocation;
+	private DoubleVector nextFlockVelocity;
+	// true once a flock step has filled in the "next" buffers, until they are swapped in (in
+	// S-PSO the regular particles never do a flock step, so they have nothing to swap in)
+	private boolean flockStepPending = false;
+
+	// the stacks the compiled GP program runs on for this particle
+	private GPProgram.EvalStack gpStack = new GPProgram.EvalStack();
+
+	public Particle(SimulationContext context,
 			int particleID, 
 			double maxSpeed, 
 			double normalSpeed,
@@ -80,6 +108,13 @@ public class Particle {
 			boolean isDummy) {
 
 		this.particleID = particleID;
+		this.isDummy = isDummy;
+		this.context = context;
+		this.rand = context.getRand().split();
+		this.flockSpaceDimLength = context.getFlockSpaceDimLength();
+
+		ObjectiveFunctionProvider function = context.getFunction();
+		int numDimensions = context.getNumDimensions();
 
 		//here, if statement separating dummy particles from full particles
 		if(!isDummy) {
@@ -94,20 +129,22 @@ public class Particle {
 			//Utilities.setConsistentSeed((int) System.nanoTime() + particleID);
 			
 			for(int i = 0 ; i < position.size() ; ++i) {
-				position.set(i, TestFunctions.INIT_MIN_VALS[functionNum] + (TestFunctions.INIT_RANGES[functionNum] * Utilities.rand.nextDouble()));
+				position.set(i, function.getInitMinVal() + (function.getInitRange() * rand.nextDouble()));
 			}
 
 			// evaluate the initial position 
 
-			double[] results = TestFunctions.evalWithError(position, functionNum);
+			ObjectiveFunction objective = context.getObjectiveFunction();
+			double value = objective.evaluate(position.getValues(), 0, numDimensions);
+			double error = value - objective.getOptValue();
 			// need to get the function value and error back to the Swarm constructor,
 			// so we can determine the initial global best
-			sendBackResults[TestFunctions.VAL_INDEX] =  results[TestFunctions.VAL_INDEX];
-			sendBackResults[TestFunctions.ERR_INDEX] =  results[TestFunctions.ERR_INDEX];
+			sendBackResults[TestFunctions.VAL_INDEX] =  value;
+			sendBackResults[TestFunctions.ERR_INDEX] =  error;
 
 			// NOTE 1: can send position itself because the Solution constructor makes a copy of the position DoubleVector sent in
 			// NOTE 2: 0 is the iteration found
-			currSolution = new Solution(position, results[TestFunctions.VAL_INDEX], results[TestFunctions.ERR_INDEX], particleID);
+			currSolution = new Solution(position, value, error, particleID);
 			this.personalBest = currSolution.getCopy();
 			//System.out.println("Function value of particle " + particleID + ": " + personalBest.getFunctionValue());
 			
@@ -116,31 +153,34 @@ public class Particle {
 			double minSpeed = 0.0;
 			double speedRange = 0.0;
 			// don't let the initial speed be greater than a small amount
-			if (TestFunctions.UNIVERSAL_SPEED_RANGE < TestFunctions.SPEED_RANGES[functionNum]) {
+			if (TestFunctions.UNIVERSAL_SPEED_RANGE < function.getSpeedRange()) {
 				minSpeed = TestFunctions.UNIVERSAL_MIN_INIT_SPEED;
 				speedRange = TestFunctions.UNIVERSAL_SPEED_RANGE;
 			}
 			else {
-				minSpeed = TestFunctions.SPEED_MIN_VALS[functionNum];
-				speedRange = TestFunctions.SPEED_RANGES[functionNum];			
+				minSpeed = function.getSpeedMinVal();
+				speedRange = function.getSpeedRange();			
 			}
 			for(int i = 0 ; i < velocity.size() ; ++i) {
-				velocity.set(i, minSpeed + (speedRange * Utilities.rand.nextDouble()));
+				velocity.set(i, minSpeed + (speedRange * rand.nextDouble()));
 			}
 
+			// scratch space for update
+			pendingAcceleration = new DoubleVector(numDimensions);
+
 			//a getFlockNeighbors() function would be good to set initial neighborhoods
 		
 		}
 
 		// set flock parameters
-		this.maxSpeed = maxSpeed;
-		this.normalSpeed = normalSpeed;
-		this.neighborRadius = neighborRadius;
-		this.separationWeight = separationWeight;
-		this.cohesionWeight = cohesionWeight;
-		this.alignmentWeight = alignmentWeight;
-		this.pacekeepingWeight = pacekeepingWeight;
-		this.randomMotionProb = randomMotionProb;
+		flockParameters[MAX_SPEED] = maxSpeed;
+		flockParameters[NORMAL_SPEED] = normalSpeed;
+		flockParameters[NEIGHBOR_RADIUS] = neighborRadius;
+		flockParameters[SEPARATION_WEIGHT] = separationWeight;
+		flockParameters[COHESION_WEIGHT] = cohesionWeight;
+		flockParameters[ALIGNMENT_WEIGHT] = alignmentWeight;
+		flockParameters[PACEKEEPING_WEIGHT] = pacekeepingWeight;
+		flockParameters[RANDOM_MOTION_PROB] = randomMotionProb;
 		
 		//used only in testFlockParameters
 		this.internalNeighRadius = 20;
@@ -149,11 +189,14 @@ public class Particle {
 		//Utilities.setConsistentSeed(Parameters.globalSeed + particleID); //just set the flock location and velocity to a consistent starting place, but different for each particle
 		
 		// create random location in flock space
-		currFlockLocation = DoubleVector.randomVector(FLOCK_SPACE_NUM_DIM, FLOCK_SPACE_DIM_LENGTH/2);
-		//currFlockLocation.addScalar(FLOCK_SPACE_DIM_LENGTH/2); to confine to positive quadrant
+		currFlockLocation = DoubleVector.randomVector(FLOCK_SPACE_NUM_DIM, flockSpaceDimLength/2, rand);
+		//currFlockLocation.addScalar(flockSpaceDimLength/2); to confine to positive quadrant
 
 		// start with small random velocity in flock space
-		currFlockVelocity = DoubleVector.randomVector(FLOCK_SPACE_NUM_DIM, FLOCK_INIT_VELOCITY_DIMENSION_MAGNITUDE);
+		currFlockVelocity = DoubleVector.randomVector(FLOCK_SPACE_NUM_DIM, FLOCK_INIT_VELOCITY_DIMENSION_MAGNITUDE, rand);
+
+		nextFlockLocation = new DoubleVector(FLOCK_SPACE_NUM_DIM);
+		nextFlockVelocity = new DoubleVector(FLOCK_SPACE_NUM_DIM);
 		
 		//Utilities.setConsistentSeed((int) System.nanoTime()); //re-randomize the seed
 
@@ -165,36 +208,47 @@ public class Particle {
 	public Solution update(PSO.Topology currentPSOTopology, PSO.SelfModel currentPSOSelfModel, 
 			PSO.InfluenceModel currentPSOInfluenceModel) {
 
+		calcAcceleration(currentPSOTopology, currentPSOSelfModel, currentPSOInfluenceModel);
+		return applyAcceleration();
+	}
+
+
+	// first half of update: for FLOCK-PSO, move in flock space to get the neighbors, then work
+	// out the acceleration IN THE PSO SOLUTION SPACE and save it for applyAcceleration
+	// NOTE: in synchronous mode the Swarm calls this for every particle (in parallel) before
+	//       calling applyAcceleration for any of them, so this must only read the other particles
+	public void calcAcceleration(PSO.Topology currentPSOTopology, PSO.SelfModel currentPSOSelfModel, 
+			PSO.InfluenceModel currentPSOInfluenceModel) {
+
 		//Utilities.setConsistentSeed(Parameters.globalSeed + particleID);// continue using the same every run
 		
-		// acceleration starts at 0.0
-		DoubleVector acceleration = new DoubleVector(position.size(), 0.0);
+		// acceleration starts at 0.0; it's worked out in place, in the buffer the particle keeps for it
+		DoubleVector acceleration = pendingAcceleration;
+		acceleration.setAll(0.0);
 
 		// if using the NEIGHBORHOOD BEST influence model
 		if (currentPSOInfluenceModel == PSO.InfluenceModel.NEIGH_BEST) {
 
-			DoubleVector neighBestComponent;
+			DoubleVector neighBestPosition;
 
-			// if we're doing S-PSO, just get the standard vector to the neighborhood best
-			if (!PSO.usingFLOCKPSO) {
-				neighBestComponent = neighborhood.getVectorToNeighBestPosition(this, currentPSOTopology, currentPSOSelfModel);
+			// if we're doing S-PSO, just get the standard neighborhood best
+			if (!context.isUsingFLOCKPSO()) {
+				neighBestPosition = neighborhood.getNeighBestPosition(this, currentPSOTopology, currentPSOSelfModel);
 			}
 			// if we're doing FLOCK-PSO, we need to move the particles IN FLOCK SPACE and use the resulting
-			// positions to determine the particle's neighbors in PSO SOLUTION SPACE; then get a vector to the
+			// positions to determine the particle's neighbors in PSO SOLUTION SPACE; then get the
 			// neighborhood best, as we do in the S-PSO case
 			else {
 				Neighborhood flockNeigh = moveFlockAndGetNeighbors();
-				neighBestComponent = flockNeigh.getVectorToNeighBestPosition(this, currentPSOTopology, currentPSOSelfModel);
+				neighBestPosition = flockNeigh.getNeighBestPosition(this, currentPSOTopology, currentPSOSelfModel);
 			}
 
-			// neighborhood best component of acceleration
-			neighBestComponent.multRandomScalar(0.0, PSO.nBestTheta);
-			acceleration.addVector(neighBestComponent);
+			// neighborhood best component of acceleration: the vector to the neighborhood best,
+			// randomly scaled
+			acceleration.addRandomScaledDiff(neighBestPosition, position, 0.0, PSO.nBestTheta, rand);
 
 			// personal best component of acceleration
-			DoubleVector pBestComponent = DoubleVector.sub(personalBest.getPosition(), position);
-			pBestComponent.multRandomScalar(0.0, PSO.pBestTheta);
-			acceleration.addVector(pBestComponent);
+			acceleration.addRandomScaledDiff(personalBest.getPosition(), position, 0.0, PSO.pBestTheta, rand);
 		}
 
 		// if using the FIPS influence model, in which *every* particle in the neighborhood influences
@@ -202,15 +256,23 @@ public class Particle {
 		else if (currentPSOInfluenceModel == PSO.InfluenceModel.FIPS) {
 
 			// S-PSO
-			if (!PSO.usingFLOCKPSO) {
-				acceleration = neighborhood.getFIPSAcceleration (this);
+			if (!context.isUsingFLOCKPSO()) {
+				neighborhood.calcFIPSAcceleration(this, acceleration);
 			}
 			// if FLOCK-PSO, find neighbors first
 			else {
 				Neighborhood flockNeigh = moveFlockAndGetNeighbors();
-				acceleration = flockNeigh.getFIPSAcceleration (this);
+				flockNeigh.calcFIPSAcceleration(this, acceleration);
 			}
 		}
+	}
+
+
+	// second half of update: apply the acceleration from calcAcceleration, move the particle,
+	// evaluate the new position and update the personal best; only changes this particle
+	public Solution applyAcceleration() {
+
+		DoubleVector acceleration = pendingAcceleration;
 
 		// update the velocity and apply the constriction factor
 		velocity.addVector(acceleration);
@@ -218,11 +280,13 @@ public class Particle {
 
 		// bound velocity; should not be necessary with the constriction factor, but people
 		// often do both
+		double minSpeed = context.getFunction().getSpeedMinVal();
+		double maxSpeed = context.getFunction().getSpeedMaxVal();
 		for (int i = 0 ; i < velocity.size() ; ++i) {
-			if (velocity.get(i) < TestFunctions.SPEED_MIN_VALS[Parameters.functionNum])
-				velocity.set(i, TestFunctions.SPEED_MIN_VALS[Parameters.functionNum]);
-			else if (velocity.get(i) > TestFunctions.SPEED_MAX_VALS[Parameters.functionNum])
-				velocity.set(i, TestFunctions.SPEED_MAX_VALS[Parameters.functionNum]);
+			if (velocity.get(i) < minSpeed)
+				velocity.set(i, minSpeed);
+			else if (velocity.get(i) > maxSpeed)
+				velocity.set(i, maxSpeed);
 		}
 
 
@@ -231,9 +295,9 @@ public class Particle {
 
 
 		// evaluate the new position
-		double[] results = TestFunctions.evalWithError(position, Parameters.functionNum);
-		double newPositionValue = results[TestFunctions.VAL_INDEX];
-		double newPositionError = results[TestFunctions.ERR_INDEX];
+		ObjectiveFunction objective = context.getObjectiveFunction();
+		double newPositionValue = objective.evaluate(position.getValues(), 0, position.size());
+		double newPositionError = newPositionValue - objective.getOptValue();
 
 		// reset the current solution
 		currSolution.copyFromPosition(position);
@@ -255,53 +319,116 @@ public class Particle {
 	public void updateDummyFlock() {
 		moveFlockAndGetNeighbors();
 	}
+
+
+	// in synchronous mode, once every particle has done its flock step, the new location
+	// and velocity become the current ones (if this particle did a flock step)
+	public void swapFlockBuffers() {
+		if (!flockStepPending) {
+			return;
+		}
+		flockStepPending = false;
+
+		DoubleVector temp = currFlockLocation;
+		currFlockLocation = nextFlockLocation;
+		nextFlockLocation = temp;
+
+		temp = currFlockVelocity;
+		currFlockVelocity = nextFlockVelocity;
+		nextFlockVelocity = temp;
+	}
 	
 
 	// this moves the particles IN FLOCK SPACE, determines the particle's neighbors, and
 	// returns a neighborhood containing those particles
+	// NOTE: flock space is always 2D, so the flock math is done on plain x and y values instead of
+	//       DoubleVectors, and the neighborhood and candidates arrays are kept from one call to the next,
+	//       so nothing has to be created here once the particle has done its first flock step
 	private Neighborhood moveFlockAndGetNeighbors () {
 		
 		//uncomment this to run testFlockPattern, a function where you can define how parameters behave (function is below)
 		//testFlockPattern();
 		
 		// need all the particles to update flock positions
-		Particle[] particles = Swarm.particles; 
+		Particle[] particles = context.getParticles(); 
 		//dummy particles array here
 
+		// where the new location and velocity go; normally they just overwrite the current ones,
+		// but in synchronous mode the other particles have to keep seeing where this particle
+		// was at the start of the iteration, so they go in the "next" buffers instead
+		boolean synchronous = context.isSynchronousFlock();
+		DoubleVector newFlockLocation = synchronous ? nextFlockLocation : currFlockLocation;
+		DoubleVector newFlockVelocity = synchronous ? nextFlockVelocity : currFlockVelocity;
+		flockStepPending = synchronous;
+
+		double x = currFlockLocation.get(0);
+		double y = currFlockLocation.get(1);
+		double velX = currFlockVelocity.get(0);
+		double velY = currFlockVelocity.get(1);
+
+		// the flock parameters; the GP tree only changes them at the end
+		double maxSpeed = flockParameters[MAX_SPEED];
+		double normalSpeed = flockParameters[NORMAL_SPEED];
+		double neighborRadius = flockParameters[NEIGHBOR_RADIUS];
+		double separationWeight = flockParameters[SEPARATION_WEIGHT];
+		double cohesionWeight = flockParameters[COHESION_WEIGHT];
+		double alignmentWeight = flockParameters[ALIGNMENT_WEIGHT];
+		double pacekeepingWeight = flockParameters[PACEKEEPING_WEIGHT];
+		double randomMotionProb = flockParameters[RANDOM_MOTION_PROB];
+
 		// new acceleration in flock space
-		DoubleVector acceleration = new DoubleVector(FLOCK_SPACE_NUM_DIM, 0.0);
+		double accX = 0.0;
+		double accY = 0.0;
 
 		// need sum of locations of particles in the neighborhood for acceleration due to cohesion,
 		// since cohesion = acceleration toward the average location of particles in the neighborhood
-		DoubleVector sumNeighborLocations = new DoubleVector(FLOCK_SPACE_NUM_DIM, 0.0);
+		double sumNeighborX = 0.0;
+		double sumNeighborY = 0.0;
 
 		// need sum of velocities of particles in the neighborhood for acceleration due to alignment,
 		// since alignment = acceleration toward the average velocity of particles in the neighborhood
-		DoubleVector sumNeighborVelocities = new DoubleVector(FLOCK_SPACE_NUM_DIM, 0.0);
+		double sumNeighborVelX = 0.0;
+		double sumNeighborVelY = 0.0;
 
-		// this is where we will put particles that are in this particle's neighborhood
-		Particle[] neighParticles= new Particle[particles.length];
-		// keep track of where the next neighbor should go in the neighParticles array
-		//why didn't we just use an arraylist?
+		// this is where we will put particles that are in this particle's neighborhood; the same
+		// Neighborhood is emptied and refilled on every flock step
+		if (flockNeigh == null) {
+			flockNeigh = new Neighborhood(particles, particleID);
+		}
+		flockNeigh.clear();
+		// keep track of how many neighbors there are, including dummy particles
 		int neighborsIndex = 0;
 
-		numNeighborsOwnFlock = 0;
-		numNeighborsAllFlocks = 0;
+		int numNeighborsOwnFlock = 0;
 
 		double prob = 0;
-		double selectValue = Utilities.rand.nextDouble();
+		double selectValue = rand.nextDouble();
 
 		if (selectValue < prob) {
-			double flockX = currFlockLocation.get(0);
-			double flockY = currFlockLocation.get(1);
-
 			System.out.println();
-			System.out.println("Particle ID: " + particleID + " Location: (" + flockX + ", "+ flockY + ")" + " Radius: " + neighborRadius);
+			System.out.println("Particle ID: " + particleID + " Location: (" + x + ", "+ y + ")" + " Radius: " + neighborRadius);
 			System.out.println();
 		}
 
-		// process all particles
-		for (int i = 0 ; i < particles.length; i++) {
+		// get the particles that could be neighbors; without the grid, that's all of them
+		FlockGrid flockGrid = context.getFlockGrid();
+		if (candidates == null) {
+			candidates = new int[particles.length];
+		}
+		int numCandidates;
+		if (flockGrid != null) {
+			numCandidates = flockGrid.getCandidates(x, y, neighborRadius, candidates);
+		}
+		else {
+			for (int i = 0 ; i < particles.length; i++) {
+				candidates[i] = i;
+			}
+			numCandidates = particles.length;
+		}
+
+		// process all candidate particles (in increasing ID order)
+		for (int c = 0 ; c < numCandidates; c++) {
+			int i = candidates[c];
 
 			// a particle is not in its own neighborhood
 			if (i == particleID) {
@@ -310,57 +437,43 @@ public class Particle {
 
 			// get the distance to the other particle
 			Particle otherParticle = particles[i];
+			double otherX = otherParticle.currFlockLocation.get(0);
+			double otherY = otherParticle.currFlockLocation.get(1);
 			
 			//normal distance
-			double dist = currFlockLocation.distance(otherParticle.currFlockLocation);
-			
+			double diffX = x - otherX;
+			double diffY = y - otherY;
+			double dist = Math.sqrt(diffX * diffX + diffY * diffY);
 			
 			//for toroidal space, need to check differently too
-			//dist = currFlockLocation.minDistance()
-			
-			//double dist = currFlockLocation.torusMinDistance(otherParticle.currFlockLocation, FLOCK_SPACE_DIM_LENGTH);
-			
-			
+			//double dist = currFlockLocation.torusMinDistance(otherParticle.currFlockLocation, flockSpaceDimLength);
 			
 			if (selectValue < prob) {
-				double flockX = otherParticle.currFlockLocation.get(0);
-				double flockY = otherParticle.currFlockLocation.get(1);			
-				System.out.println("i: " + i + " Location: (" + flockX + ", "+ flockY + ")" + " Dist: " + dist + " Radius: " + neighborRadius);
+				System.out.println("i: " + i + " Location: (" + otherX + ", "+ otherY + ")" + " Dist: " + dist + " Radius: " + neighborRadius);
 			}
+
 			// is it in the neighborhood?
 			// NOTE: check to make sure not zero, in case of underflow 
-			
-			
-			
-			//test flock parameters here, from music swarm
-			
-			
-			
-			
 			if (dist > 0.0 && dist <= neighborRadius) {
 
 				//dont want any dummy particles in neighborhoods
 				if (!otherParticle.isDummy) {// if it is not a dummy particle
 					++numNeighborsOwnFlock;
-					neighParticles[neighborsIndex] = particles[i];		//++ was next to neighbors index before, moved it outside of the if		
+					flockNeigh.addNeighbor(otherParticle);
 				}
 				
 				neighborsIndex++;
 
 				// sum locations for cohesion calculation after all neighbors have been processed
-				
-				//sumNeighborLocations.addVector(currFlockLocation.minTorusVect(otherParticle.currFlockLocation, FLOCK_SPACE_DIM_LENGTH));
-				sumNeighborLocations.addVector(otherParticle.currFlockLocation); 
+				sumNeighborX += otherX;
+				sumNeighborY += otherY;
 
 				// sum velocities for alignment calculation after all neighbors have been processed
-				sumNeighborVelocities.addVector(otherParticle.currFlockVelocity);   ///error???? was CurrFlockLocation
+				sumNeighborVelX += otherParticle.currFlockVelocity.get(0);
+				sumNeighborVelY += otherParticle.currFlockVelocity.get(1);
 
-				
-				
 				// for separation:
 				// calculate and weight vector pointing away from neighbor; add to acceleration
-				DoubleVector vectorToThisParticle = DoubleVector.sub(currFlockLocation, otherParticle.currFlockLocation);
-				vectorToThisParticle.divScalar(dist*dist);  
 				// separation force is inversely proportional to the square of the distance, 
 				// but some experiments indicate to me that we might want to consider reducing the
 				// denominator to dist^1.5, or possibly even dist. using dist^2 sometimes weakens the 
@@ -368,29 +481,13 @@ public class Particle {
 				// any impact when the cohesion is at its max; I would think that even when cohesion 
 				// is high, if the separation weight is >50, it should loosen tight clusters significantly,
 				// which does not happen currently  
-				vectorToThisParticle.multScalar(separationWeight);
-				acceleration.addVector(vectorToThisParticle);  
-
+				accX += diffX / (dist*dist) * separationWeight;
+				accY += diffY / (dist*dist) * separationWeight;
 			}	
 		} 
 
-		//////
-		if (selectValue < prob) {
-			//System.out.println("Particle ID: " + particleID);
-
-			//particles typically have between 0 and 3 neighbors
-			for(int i = 0; i < neighParticles.length; i++) {
-				System.out.println(" " + neighParticles[i]);
-			}
-		}
-		//update something here? isn't neighParticles.length still 30? should we be using ArrayLists?
-		// convert the array of neighbor particles to a Neighborhood object
-		Neighborhood flockNeigh = new Neighborhood(neighParticles.length, particleID);
-
-		for (int i = 0 ; i < neighParticles.length; i++) {
-			flockNeigh.addNeighbor(neighParticles[i]);
-
-		}
+		flockParameters[NUM_NEIGHBORS_OWN_FLOCK] = numNeighborsOwnFlock;
+		flockParameters[NUM_NEIGHBORS_ALL_FLOCKS] = 0;
 
 		//added this 7/25, before we weren't setting the particle neighborhood!
 		setNeighborhood(flockNeigh);
@@ -404,86 +501,88 @@ public class Particle {
 		// NOTE: neighborsIndex will also be the number of neighbors
 		if (neighborsIndex > 0) {
 			// cohesion steering: steer in the direction of the average location of your neighbors
-			DoubleVector cohesionVector = DoubleVector.divVectorScalar(sumNeighborLocations, neighborsIndex);        
-			cohesionVector.subVector(currFlockLocation);
-			cohesionVector.multScalar(cohesionWeight);
-			acceleration.addVector(cohesionVector);
+			accX += (sumNeighborX / neighborsIndex - x) * cohesionWeight;
+			accY += (sumNeighborY / neighborsIndex - y) * cohesionWeight;
 
 			// alignment steering: steer so as to align your velocity with the average velocity of your neighbors
-			DoubleVector alignmentVector = DoubleVector.divVectorScalar(sumNeighborVelocities, neighborsIndex);
-			alignmentVector.subVector(currFlockVelocity);
-			alignmentVector.multScalar(alignmentWeight);
-			acceleration.addVector(alignmentVector);
+			accX += (sumNeighborVelX / neighborsIndex - velX) * alignmentWeight;
+			accY += (sumNeighborVelY / neighborsIndex - velY) * alignmentWeight;
 		}
 
 
 		// with the probability specified by the parameter randomMotionProbability, introduce a small
 		// random perturbation (magnitude defined by RANDOM_MOTION_DIMENSION_MAGNITUDE) into each 
-		// acceleration component
-		if (Utilities.rand.nextFloat() < randomMotionProb) {
-			acceleration.addRandomScalarMagnitude(FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE);
+		// acceleration component (drawn the same way as in DoubleVector.addRandomScalarMagnitude)
+		if (rand.nextFloat() < randomMotionProb) {
+			double element = rand.nextDouble() * FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE;
+			if (rand.nextDouble() < 0.5)
+				element *= -1.0;
+			accX += element;
+
+			element = rand.nextDouble() * FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE;
+			if (rand.nextDouble() < 0.5)
+				element *= -1.0;
+			accY += element;
 		} 
 
 
 		// update velocity
-		currFlockVelocity.addVector(acceleration);
+		double newVelX = velX + accX;
+		double newVelY = velY + accY;
 
 
 		// make sure we don't exceed maxSpeed
-		if (currFlockVelocity.mag() > maxSpeed) {
-			currFlockVelocity.multScalar(maxSpeed / currFlockVelocity.mag());
+		double speed = Math.sqrt(newVelX * newVelX + newVelY * newVelY);
+		if (speed > maxSpeed) {
+			newVelX *= maxSpeed / speed;
+			newVelY *= maxSpeed / speed;
+			speed = Math.sqrt(newVelX * newVelX + newVelY * newVelY);
 		}
 
 		// pacekeeping (stick to normalSpeed to the extent indicated by pacekeepingWeight)
-		DoubleVector pacekeeping = 
-				DoubleVector.multVectorScalar(currFlockVelocity, ((normalSpeed - currFlockVelocity.mag()) / currFlockVelocity.mag() * pacekeepingWeight));
-		currFlockVelocity.addVector(pacekeeping);
+		double pacekeeping = (normalSpeed - speed) / speed * pacekeepingWeight;
+		newVelX += newVelX * pacekeeping;
+		newVelY += newVelY * pacekeeping;
 
-		double distance = 0;
-		
 		// bounce back from the boundaries of the space
-		DoubleVector boundaryAcceleration = new DoubleVector(FLOCK_SPACE_NUM_DIM, 0.0);
-		for (int d = 0 ; d < FLOCK_SPACE_NUM_DIM ; ++d) {
-			//normal(square):
-			if (currFlockLocation.get(d) < (FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE/2) + FLOCK_BOUDARY_SENSING_THRESHOLD - FLOCK_SPACE_DIM_LENGTH/2)         
-				boundaryAcceleration.set(d, maxSpeed);	
-			else if (currFlockLocation.get(d) > FLOCK_SPACE_DIM_LENGTH/2 - FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE/2 - FLOCK_BOUDARY_SENSING_THRESHOLD) 
-				boundaryAcceleration.set(d, -maxSpeed);
+		//normal(square):
+		double boundaryAccX = 0.0;
+		double boundaryAccY = 0.0;
+		if (x < (FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE/2) + FLOCK_BOUDARY_SENSING_THRESHOLD - flockSpaceDimLength/2)         
+			boundaryAccX = maxSpeed;	
+		else if (x > flockSpaceDimLength/2 - FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE/2 - FLOCK_BOUDARY_SENSING_THRESHOLD) 
+			boundaryAccX = -maxSpeed;
+		if (y < (FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE/2) + FLOCK_BOUDARY_SENSING_THRESHOLD - flockSpaceDimLength/2)         
+			boundaryAccY = maxSpeed;	
+		else if (y > flockSpaceDimLength/2 - FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE/2 - FLOCK_BOUDARY_SENSING_THRESHOLD) 
+			boundaryAccY = -maxSpeed;
 			
-			//circular:
-			//distance += currFlockLocation.get(d) * currFlockLocation.get(d);
-			
-			//toroidal:			
-			//if (currFlockLocation.get(d) < -FLOCK_SPACE_DIM_LENGTH/2)         
-			//	currFlockLocation.set(d, currFlockLocation.get(d) + FLOCK_SPACE_DIM_LENGTH);	
-			//else if (currFlockLocation.get(d) > FLOCK_SPACE_DIM_LENGTH/2) 
-			//	currFlockLocation.set(d, currFlockLocation.get(d) - FLOCK_SPACE_DIM_LENGTH);
-			
-		}
+		//toroidal:			
+		//if (currFlockLocation.get(d) < -flockSpaceDimLength/2)         
+		//	currFlockLocation.set(d, currFlockLocation.get(d) + flockSpaceDimLength);	
+		//else if (currFlockLocation.get(d) > flockSpaceDimLength/2) 
+		//	currFlockLocation.set(d, currFlockLocation.get(d) - flockSpaceDimLength);
 		
-//		double boundary = FLOCK_SPACE_DIM_LENGTH/2 - FLOCK_RANDOM_MOTION_DIMENSION_MAGNITUDE/2 - FLOCK_BOUDARY_SENSING_THRESHOLD;
-//		//normalize the current flock location to get a vector pointing away from the origin, then multiply it by maxspeed to go directly toward it
-//		if (distance > boundary * boundary){
-//			boundaryAcceleration = currFlockLocation.getCopy();
-//			boundaryAcceleration.normalize();
-//			boundaryAcceleration.multScalar(-maxSpeed);
-//		}
-		
-		//try setting it?
-		currFlockVelocity.addVector(boundaryAcceleration);   
-		//currFlockVelocity.setVector(boundaryAcceleration);
+		newVelX += boundaryAccX;
+		newVelY += boundaryAccY;
 
 
 		// move the particle
-		currFlockLocation.addVector(currFlockVelocity);
+		newFlockVelocity.set(0, newVelX);
+		newFlockVelocity.set(1, newVelY);
+		newFlockLocation.set(0, x + newVelX);
+		newFlockLocation.set(1, y + newVelY);
+		if (flockGrid != null && !synchronous) {
+			flockGrid.moveParticle(particleID, x + newVelX, y + newVelY);
+		}
 
 
 		// this is where the GP program tree is executed
-		// The tree program is a static variable in the Swarm class. We must send it a reference to
+		// The tree program is held by this particle's SimulationContext. We must send it a reference to
 		// this Particle so it can call methods in here to get/change variable values FOR THIS
 		// PARTICEL (as necessary).
-		if (PSO.usingFLOCKPSO) {
-			Swarm.gpTree.run(this);
+		if (context.isUsingFLOCKPSO()) {
+			context.getGPTree().run(this, context, gpStack);
 			//			if (particleID == 0) {
 			//				System.out.println("HERE");
 			//				printFlockParameters();
@@ -493,16 +592,9 @@ public class Particle {
 		}
 
 		// for the test case where random changes are made, just regenerate random values
-		else if (Parameters.doRandomTree){
-			double[] newRandParams = Swarm.generateRandomParameters();
-			this.maxSpeed = newRandParams[0];
-			this.normalSpeed = newRandParams[1];
-			this.neighborRadius = newRandParams[2];
-			this.separationWeight = newRandParams[3];
-			this.cohesionWeight = newRandParams[4];
-			this.alignmentWeight = newRandParams[5];
-			this.pacekeepingWeight = newRandParams[6];
-			this.randomMotionProb = newRandParams[7];
+		else if (context.isDoRandomTree()){
+			double[] newRandParams = Swarm.generateRandomParameters(rand);
+			System.arraycopy(newRandParams, 0, flockParameters, 0, newRandParams.length);
 		}
 
 		return flockNeigh;
@@ -514,233 +606,35 @@ public class Particle {
 	public void printFlockParameters() {
 
 		System.out.printf("NS = %5.3f  NR = %5.3f  SEP = %5.3f  COH = %5.3f  ALI = %5.3f  PACE = %5.3f  RAND = %5.3f NNOWN = %5.3f NNALL = %5.3f \n",
-				normalSpeed, //why not include max speed?
-				neighborRadius, 
-				separationWeight,
-				cohesionWeight, 
-				alignmentWeight,
-				pacekeepingWeight, 
-				randomMotionProb,
-				numNeighborsOwnFlock,
-				numNeighborsAllFlocks);
+				flockParameters[NORMAL_SPEED], //why not include max speed?
+				flockParameters[NEIGHBOR_RADIUS], 
+				flockParameters[SEPARATION_WEIGHT],
+				flockParameters[COHESION_WEIGHT], 
+				flockParameters[ALIGNMENT_WEIGHT],
+				flockParameters[PACEKEEPING_WEIGHT], 
+				flockParameters[RANDOM_MOTION_PROB],
+				flockParameters[NUM_NEIGHBORS_OWN_FLOCK],
+				flockParameters[NUM_NEIGHBORS_ALL_FLOCKS]);
 
 	}
 
 
-	// called by a GPNode when it needs the value of a variable in the Particle object
-	public double getVarValue(String varName) {
-
-		if (varName.equals("maxSpeed")) {
-			return maxSpeed;
-		}
-
-		else if (varName.equals("normalSpeed")) {
-			return normalSpeed;
-		}
-
-		else if (varName.equals("neighborRadius")) {
-			return neighborRadius;
-		}
-
-		else if (varName.equals("separationWeight")) {
-			return separationWeight;
-		}
-
-		else if (varName.equals("alignmentWeight")) {
-			return alignmentWeight;
-		}
-
-		else if (varName.equals("cohesionWeight")) {
-			return cohesionWeight;
-		}
-
-		else if (varName.equals("pacekeepingWeight")) {
-			return pacekeepingWeight;
-		}
-
-		else if (varName.equals("randomMotionProbability")) {
-			return randomMotionProb;
-		}
-
-		else if (varName.equals("numNeighborsOwnFlock")) {
-			return numNeighborsOwnFlock;
-		}
-
-		else if (varName.equals("numNeighborsAllFlocks")) {
-			return numNeighborsAllFlocks;
-		}
-
-		else {
-			System.out.println("error: unknown variable name in Particle.getVarValue: \"" + varName + "\"");
-			System.exit(0);
-		}
-
-		return 0.0f;
-
+	// called by the GP tree when it needs the value of a flock parameter variable,
+	// or needs to change it; the slot is worked out when the tree is built
+	public double getVarValue(int slot) {
+		return flockParameters[slot];
 	}
 
-	// called by a GPNode when it needs to assign a value to variable in the Particle object
-	public void assignVariable(String varName, double value) {
-
-		if(varName == null) {
-			System.out.println("################################### tried to assign something that wasn't a variable");
-		}
-
-		if (varName.equals("maxSpeed")) {
-			maxSpeed = value;
-		}
-
-		else if (varName.equals("normalSpeed")) {
-			normalSpeed = value;
-		}
-
-		else if (varName.equals("neighborRadius")) {
-			neighborRadius = value;
-		}
-
-		else if (varName.equals("separationWeight")) {
-			separationWeight = value;
-		}
-
-		else if (varName.equals("alignmentWeight")) {
-			alignmentWeight = value;
-		}
-
-		else if (varName.equals("cohesionWeight")) {
-			cohesionWeight = value;
-		}
-
-		else if (varName.equals("pacekeepingWeight")) {
-			pacekeepingWeight = value;
-		}
-
-		else if (varName.equals("randomMotionProbability")) {
-			randomMotionProb = value;
-		}
-
-		else if (varName.equals("numNeighborsOwnFlock")) {
-			numNeighborsOwnFlock = value;
-		}
-
-		else if (varName.equals("numNeighborsAllFlocks")) {
-			numNeighborsAllFlocks = value;
-		}
-
-		else {
-			if (particleID == 0) System.out.println("error: unknown variable name in Particle.assignVariable: \"" + varName + "\"");
-			System.exit(0);
-		}
-
+	public void assignVariable(int slot, double value) {
+		flockParameters[slot] = value;
 	}
 
-
-	// called by a GPNode when it needs to increment a variable in the Particle object
-	public void increment(String varName) {
-
-		if(varName == null) {
-			System.out.println("################################### tried to assign something that wasn't a variable");
-		}
-
-		if (varName.equals("maxSpeed")) {
-			++maxSpeed;
-		}
-
-		else if (varName.equals("normalSpeed")) {
-			++normalSpeed;
-		}
-
-		else if (varName.equals("neighborRadius")) {
-			++neighborRadius;
-		}
-
-		else if (varName.equals("separationWeight")) {
-			++separationWeight;
-		}
-
-		else if (varName.equals("alignmentWeight")) {
-			++alignmentWeight;
-		}
-
-		else if (varName.equals("cohesionWeight")) {
-			++cohesionWeight;
-		}
-
-		else if (varName.equals("pacekeepingWeight")) {
-			++pacekeepingWeight;
-		}
-
-		else if (varName.equals("randomMotionProbability")) {
-			++randomMotionProb;
-		}
-
-		else if (varName.equals("numNeighborsOwnFlock")) {
-			++numNeighborsOwnFlock;
-		}
-
-		else if (varName.equals("numNeighborsAllFlocks")) {
-			++numNeighborsAllFlocks;
-		}
-
-		else {
-			System.out.println("error: unknown variable name in Particle.increment: \"" + varName + "\"");
-			System.exit(0);
-		}
-
+	public void increment(int slot) {
+		++flockParameters[slot];
 	}
 
-
-	// called by a GPNode when it needs to decrement a variable in the Particle object
-	public void decrement(String varName) {
-
-		if(varName == null) {
-			System.out.println("################################### tried to assign something that wasn't a variable");
-		}
-
-		if (varName.equals("maxSpeed")) {
-			--maxSpeed;
-		}
-
-		else if (varName.equals("normalSpeed")) {
-			--normalSpeed;
-		}
-
-		else if (varName.equals("neighborRadius")) {
-			--neighborRadius;
-		}
-
-		else if (varName.equals("separationWeight")) {
-			--separationWeight;
-		}
-
-		else if (varName.equals("alignmentWeight")) {
-			--alignmentWeight;
-		}
-
-		else if (varName.equals("cohesionWeight")) {
-			--cohesionWeight;
-		}
-
-		else if (varName.equals("pacekeepingWeight")) {
-			--pacekeepingWeight;
-		}
-
-		else if (varName.equals("randomMotionProbability")) {
-			--randomMotionProb;
-		}
-
-		else if (varName.equals("numNeighborsOwnFlock")) {
-			--numNeighborsOwnFlock;
-		}
-
-		else if (varName.equals("numNeighborsAllFlocks")) {
-			--numNeighborsAllFlocks;
-		}
-
-		else {
-			System.out.println("error: unknown variable name in Particle.decrement: \"" + varName + "\"");
-			System.exit(0);
-		}
-
+	public void decrement(int slot) {
+		--flockParameters[slot];
 	}
 
 
@@ -750,6 +644,14 @@ public class Particle {
 		return particleID;
 	}
 
+	public SimulationContext getContext() {
+		return context;
+	}
+
+	public SplittableRandom getRand() {
+		return rand;
+	}
+
 	public DoubleVector getPosition() {
 		return position;
 	}
@@ -784,9 +686,17 @@ public class Particle {
 	public DoubleVector getCurrLocation() {
 		return currFlockLocation;
 	}
+
+	public double getFlockX() {
+		return currFlockLocation.get(0);
+	}
+
+	public double getFlockY() {
+		return currFlockLocation.get(1);
+	}
 	
 	public double getRadius() {
-		return neighborRadius;
+		return flockParameters[NEIGHBOR_RADIUS];
 	}
 	
 	public int getInternalNeighRadius() {
@@ -794,7 +704,7 @@ public class Particle {
 	}
 	
 	public double getNumNeighborsOwnFlock() {
-		return numNeighborsOwnFlock;
+		return flockParameters[NUM_NEIGHBORS_OWN_FLOCK];
 	}
 	
 	public boolean getIsDummy() {
@@ -802,54 +712,40 @@ public class Particle {
 	}
 	
 	public double[] getParameters() {
-		double[] flockParam = new double[10];
-		flockParam[0] = maxSpeed;                // speed limit
-		flockParam[1] = normalSpeed;             // when pacekeeping (see below) used, tries to keep particle to this speed
-		flockParam[2] = neighborRadius;          // determines which other particles are neighbors of a given particle    
-		flockParam[3] = separationWeight;        // how strongly do particles move away from every neighbor: range = [0.0, 100.0]
-		flockParam[4] = cohesionWeight;          // how strongly do particles move toward the average position of their neighbors: range = [0.0, 1.0]
-		flockParam[4] = alignmentWeight;         // how strongly do particles align match average velocity of their neighbors: range = [0.0, 1.0]
-		flockParam[6] = pacekeepingWeight;       // how strongly do particles stick to the normalSpeed: range = [0.0, 1.0]
-		flockParam[7] = randomMotionProb;        // probability that a small random component is introduced into the motion (see particle class for more info)
-
-		// motion of particles in flock depends on the number of neighbors
-		flockParam[8] = numNeighborsOwnFlock;
-		// this is not used, since there is only one flock, but we might introduce more flocks later, so leave it
-		flockParam[9] = numNeighborsAllFlocks;
-		return flockParam;
+		return flockParameters.clone();
 	}
 
 	public void testFlockPattern() {
-		if (numNeighborsOwnFlock < 8) {
+		if (flockParameters[NUM_NEIGHBORS_OWN_FLOCK] < 8) {
 			internalNeighRadius += 1;	
 			if (internalNeighRadius > 400) {  
 				internalNeighRadius = 400;
 			}
-			cohesionWeight = 0.9;
-            separationWeight = 10; 
-			normalSpeed = 6;
-			maxSpeed = 6;
+			flockParameters[COHESION_WEIGHT] = 0.9;
+            flockParameters[SEPARATION_WEIGHT] = 10; 
+			flockParameters[NORMAL_SPEED] = 6;
+			flockParameters[MAX_SPEED] = 6;
 			
-			alignmentWeight = 0.2;
-			pacekeepingWeight = 0.3;
-			randomMotionProb = 1;
+			flockParameters[ALIGNMENT_WEIGHT] = 0.2;
+			flockParameters[PACEKEEPING_WEIGHT] = 0.3;
+			flockParameters[RANDOM_MOTION_PROB] = 1;
 		}
-		else if (numNeighborsOwnFlock > 8){
+		else if (flockParameters[NUM_NEIGHBORS_OWN_FLOCK] > 8){
 			internalNeighRadius -= 1; 
 			if (internalNeighRadius < 0) {
 				internalNeighRadius = 0;
 			}
-			cohesionWeight = 0.1;
-            separationWeight = 90; 
-			normalSpeed = 24; //12
-			maxSpeed = 24;
+			flockParameters[COHESION_WEIGHT] = 0.1;
+            flockParameters[SEPARATION_WEIGHT] = 90; 
+			flockParameters[NORMAL_SPEED] = 24; //12
+			flockParameters[MAX_SPEED] = 24;
 			
-			alignmentWeight = 0.2;
-			pacekeepingWeight = 0.2;
-			randomMotionProb = 1;
+			flockParameters[ALIGNMENT_WEIGHT] = 0.2;
+			flockParameters[PACEKEEPING_WEIGHT] = 0.2;
+			flockParameters[RANDOM_MOTION_PROB] = 1;
 		}
 		
-		neighborRadius = internalNeighRadius;	
+		flockParameters[NEIGHBOR_RADIUS] = internalNeighRadius;	
 	}
 	
 	
@@ -0,0 +1,44 @@
+/*
+ * What the rest of the program needs from a particle, no matter how the swarm stores it:
+ * 	- the GP tree reads and changes the particle's flock parameters by slot (the slot of each
+ * 	  variable in a tree is worked out from its name when the tree is built, see GPTree.getVarSlot)
+ * 	- the FlockTracker and FlockGrid need its location in flock space, its neighborhood
+ * 	  radius and its flock parameters
+ *
+ * Particle implements this directly; ArraySwarm, which keeps all the particles in arrays,
+ * hands out a small view object for each particle that implements it.
+ */
+
+public interface ParticleState {
+
+	// the slot of each flock parameter; getParameters returns them in this order
+	public static final int MAX_SPEED = 0;
+	public static final int NORMAL_SPEED = 1;
+	public static final int NEIGHBOR_RADIUS = 2;
+	public static final int SEPARATION_WEIGHT = 3;
+	public static final int COHESION_WEIGHT = 4;
+	public static final int ALIGNMENT_WEIGHT = 5;
+	public static final int PACEKEEPING_WEIGHT = 6;
+	public static final int RANDOM_MOTION_PROB = 7;
+	public static final int NUM_NEIGHBORS_OWN_FLOCK = 8;
+	public static final int NUM_NEIGHBORS_ALL_FLOCKS = 9;
+	public static final int NUM_FLOCK_PARAMS = 10;
+
+	public int getParticleID();
+
+	// location in FLOCK SPACE
+	public double getFlockX();
+	public double getFlockY();
+
+	public double getRadius();
+
+	// a copy of the flock parameters, by slot
+	public double[] getParameters();
+
+	// called by the GP tree to get/change the value of a flock parameter variable
+	public double getVarValue(int slot);
+	public void assignVariable(int slot, double value);
+	public void increment(int slot);
+	public void decrement(int slot);
+
+}
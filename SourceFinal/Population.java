@@ -1,36 +1,62 @@
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.SplittableRandom;
 
 public class Population{
 	
+	// what to do with the elites at the start of each generation:
+	// ALWAYS evaluates them again and uses the new fitness (the noise in the fitness means
+	//        an elite has to keep doing well to stay an elite);
+	// NEVER keeps the fitness they already have;
+	// AVERAGE evaluates them again until they have Parameters.eliteMaxSamples fitnesses
+	//         and uses the average, so the fitness gets less noisy the longer a tree is an elite
+	public static enum EliteResamplePolicy { ALWAYS, NEVER, AVERAGE };
+	
 	// population of trees
 	private ArrayList<GPTree> population; 
 	private double selectValue;
+	// calculates the fitnesses of whole batches of trees at once
+	private FitnessEvaluator evaluator;
+	// fitnesses of trees that have already been evaluated; null if Parameters.fitnessCacheSize is 0
+	private FitnessCache fitnessCache;
+	// the fitness the children have to be able to beat to be evaluated completely (see
+	// Parameters.useRacing); NaN while there isn't a population to compare with
+	private double racingTarget = Double.NaN;
+	// the Population's own stream of random numbers, split off of the master stream; used for
+	// creating, selecting and breeding trees, and for splitting off a stream for each tree evaluation
+	private SplittableRandom rand;
 	private double selectPrintProb = 0.0;
 	private double flockPrintProb = 0.0002;
 	
 	public Population() {
 		
+		this.evaluator = new FitnessEvaluator(Parameters.numEvalThreads);
+		this.fitnessCache = (Parameters.fitnessCacheSize > 0) ? new FitnessCache(Parameters.fitnessCacheSize) : null;
+		this.rand = Utilities.splitMasterStream();
+		
 		//generate the specified number of random trees
 		this.population = new ArrayList<GPTree>();		
 		for (int i = 0; i < Parameters.numTrees; i++) {
-			GPTree newTree = new GPTree();
+			GPTree newTree = new GPTree(rand);
 			newTree.treeID = i;
 			population.add(newTree);
 		}
 		
-		// calculate fitness of trees
-		for (int i = 0; i < Parameters.numTrees; i++) {
-			GPTree nextTree = population.get(i);
-			nextTree.setFitness(calcFitness(nextTree));
-		}
+		// S-PSO is the same for every tree, so get it out of the way first (see PSO.runRegularPSOOnce)
+		PSO.runRegularPSOOnce(population.get(0));
+		
+		// calculate fitness of trees; they don't depend on each other, so the
+		// evaluator can run them all at the same time
+		setFitnesses(population);
 		
 		Collections.sort(this.population, new GPTreeComparator());
 		
@@ -56,6 +82,8 @@ public class Population{
 			// advance one generation
 			runSingleGeneration();
 		}
+		
+		evaluator.shutdown();
 	}
 
 
@@ -67,7 +95,7 @@ public class Population{
 		ArrayList<GPTree> nextPopulation = new ArrayList<GPTree>();
 		int populationSize = population.size();
 		
-		selectValue = Utilities.rand.nextDouble();
+		selectValue = rand.nextDouble();
 		
 		SimpleDateFormat dateformatter = new SimpleDateFormat("yyyy-MM-dd--hh.mm.ss.SSS-a");
 		Calendar date = Calendar.getInstance();
@@ -76,8 +104,14 @@ public class Population{
 		System.out.println("");
 		
 		//to turn elitism off, just set eliteNumber to 0
+		// the elites are re-evaluated first (if the policy says so), since tournament selection uses their new fitnesses
+		ArrayList<GPTree> elites = new ArrayList<GPTree>();
+		for (int j = 0; j < Parameters.eliteNumber; j++) {
+			elites.add(population.get(j));
+		}
+		resampleElites(elites);
+		
 		for (int j = 0; j < Parameters.eliteNumber; j++) {
-			population.get(j).setFitness(calcFitness(population.get(j)));
 			nextPopulation.add(population.get(j).getDeepCopy());
 			System.out.println("child " + nextPopulation.size() + " fitness: " + population.get(j).getFitness());
 			System.out.println("");
@@ -85,11 +119,14 @@ public class Population{
 			//maybe add an "age" to the elite ones
 		}
 		
+		// breed all the children first and then evaluate them together
+		ArrayList<GPTree> children = new ArrayList<GPTree>();
 		
-		while (nextPopulation.size() < populationSize) {
+		
+		while (nextPopulation.size() + children.size() < populationSize) {
 			
 			//for every family in every population, determine if they are printed or not
-			selectValue = Utilities.rand.nextDouble();
+			selectValue = rand.nextDouble();
 			
 			// get parents and make deep copies of them (not just references);
 			// those copies will be the children after we do crossover and mutation on them
@@ -100,7 +137,7 @@ public class Population{
 			GPTree child2 = parent2.getDeepCopy();  
 			
 			// crossover
-			if(Utilities.rand.nextDouble() <= Parameters.probCrossover) { 
+			if(rand.nextDouble() <= Parameters.probCrossover) { 
 //				
 //				if (selectValue <= selectPrintProb) {
 //					System.out.println("Before Crossover");
@@ -135,6 +172,10 @@ public class Population{
 			mutateTree(child1);
 			mutateTree(child2);
 			
+			// the nodes have changed, so the programs must be compiled again
+			child1.compile();
+			child2.compile();
+			
 			ArrayList<GPNode> parent1Nodes = parent1.toArrayList();
 			ArrayList<GPNode> parent2Nodes = parent2.toArrayList();
 			ArrayList<GPNode> child1Nodes = child1.toArrayList();
@@ -166,19 +207,22 @@ public class Population{
 			}
 			
 
-			// how fit?
-			child1.setFitness(calcFitness(child1));
-			child2.setFitness(calcFitness(child2));
-			
-			
-			
-			// add to next generation
-			nextPopulation.add(child1);
-			System.out.println("child " + nextPopulation.size() + " fitness: " + child1.getFitness());
-			System.out.println("");
-			
-			nextPopulation.add(child2);
-			System.out.println("child " + nextPopulation.size() + " fitness: " + child2.getFitness());
+			children.add(child1);
+			children.add(child2);
+		}
+		
+		// how fit? (with racing, a child that clearly can't beat the tree at racingTargetRank
+		// isn't evaluated completely)
+		if (Parameters.useRacing && Parameters.racingTargetRank < population.size()) {
+			racingTarget = getFitnessAtRank(Parameters.racingTargetRank);
+		}
+		setFitnesses(children);
+		racingTarget = Double.NaN;
+		
+		// add to next generation
+		for (int j = 0; j < children.size(); j++) {
+			nextPopulation.add(children.get(j));
+			System.out.println("child " + nextPopulation.size() + " fitness: " + children.get(j).getFitness());
 			System.out.println("");
 		}
 		
@@ -189,12 +233,166 @@ public class Population{
 
 
 
+	// the rank'th best fitness in the population (0 is the best); the population was sorted
+	// before the elites were resampled, and their new fitnesses can be in a different order,
+	// so this sorts a copy of the fitnesses as they are now, after resampling
+	private double getFitnessAtRank(int rank) {
+		double[] fitnesses = new double[population.size()];
+		for (int i = 0; i < fitnesses.length; i++) {
+			fitnesses[i] = population.get(i).getFitness();
+		}
+		Arrays.sort(fitnesses);
+		return fitnesses[fitnesses.length - 1 - rank];
+	}
+
+
+	// calculate the fitnesses of a list of trees and store them in the trees;
+	// a tree that is in the fitness cache (or is the same as one earlier in the list) isn't evaluated
+	public void setFitnesses(List<GPTree> trees) {
+		// split off the streams here, in order, rather than in the evaluator threads;
+		// every tree gets one, even if it isn't evaluated, so the rest of the random numbers don't
+		// depend on what is in the cache
+		ArrayList<SplittableRandom> treeRands = splitTreeRands(trees.size());
+		
+		if (fitnessCache == null) {
+			FitnessResult[] fitnesses = evaluator.evaluateAll(trees, treeRands, this::calcFitness);
+			for (int i = 0; i < trees.size(); i++) {
+				setFitness(trees.get(i), fitnesses[i]);
+			}
+			return;
+		}
+		
+		// look the trees up before starting the evaluations (rather than in calcFitness), so what is
+		// evaluated doesn't depend on which evaluation finishes first
+		ArrayList<GPTree> toEvaluate = new ArrayList<GPTree>();
+		ArrayList<SplittableRandom> toEvaluateRands = new ArrayList<SplittableRandom>();
+		// the first tree in the list with each hash, for the trees that are the same as it
+		HashMap<Long, GPTree> firstWithHash = new HashMap<Long, GPTree>();
+		ArrayList<GPTree> duplicates = new ArrayList<GPTree>();
+		for (int i = 0; i < trees.size(); i++) {
+			GPTree tree = trees.get(i);
+			FitnessCache.Entry entry = fitnessCache.get(tree);
+			if (entry != null) {
+				tree.setFitness(entry.getFitness());
+				tree.numFitnessSamples = entry.getNumSamples();
+			}
+			else if (firstWithHash.containsKey(tree.getCanonicalHash())) {
+				duplicates.add(tree);
+			}
+			else {
+				firstWithHash.put(tree.getCanonicalHash(), tree);
+				toEvaluate.add(tree);
+				toEvaluateRands.add(treeRands.get(i));
+			}
+		}
+		
+		FitnessResult[] fitnesses = evaluator.evaluateAll(toEvaluate, toEvaluateRands, this::calcFitness);
+		for (int i = 0; i < toEvaluate.size(); i++) {
+			setFitness(toEvaluate.get(i), fitnesses[i]);
+			// a fitness from only some of the runs isn't remembered, so the tree is evaluated
+			// properly if it comes up again
+			if (!fitnesses[i].isRaced()) {
+				fitnessCache.put(toEvaluate.get(i));
+			}
+		}
+		for (int i = 0; i < duplicates.size(); i++) {
+			GPTree first = firstWithHash.get(duplicates.get(i).getCanonicalHash());
+			duplicates.get(i).setFitness(first.getFitness());
+			duplicates.get(i).numFitnessSamples = first.numFitnessSamples;
+		}
+	}
+
+
+	// the tree's fitness from an evaluation; a fitness that racing cut short (see
+	// Parameters.useRacing) isn't counted as a sample, so the tree has 0 samples
+	private void setFitness(GPTree tree, FitnessResult result) {
+		tree.setFitness(result.getFitness());
+		tree.numFitnessSamples = result.isRaced() ? 0 : 1;
+	}
+
+
+	// evaluate the elites again, or not, depending on Parameters.eliteResamplePolicy;
+	// the fitness cache isn't used for looking them up, since the point is to get a new sample,
+	// but it gets the new fitnesses
+	// NOTE: an elite with no samples (its fitness is from a raced evaluation) is always
+	//       evaluated again, even with NEVER, so a fitness from only some of the runs is never kept
+	public void resampleElites(List<GPTree> elites) {
+		
+		if (Parameters.eliteResamplePolicy == EliteResamplePolicy.NEVER) {
+			boolean anyRaced = false;
+			for (GPTree elite : elites) {
+				anyRaced = anyRaced || (elite.numFitnessSamples == 0);
+			}
+			if (!anyRaced) {
+				return;
+			}
+		}
+		
+		// as in setFitnesses, every elite gets a stream, even if it isn't evaluated
+		ArrayList<SplittableRandom> treeRands = splitTreeRands(elites.size());
+		
+		ArrayList<GPTree> toEvaluate = new ArrayList<GPTree>();
+		ArrayList<SplittableRandom> toEvaluateRands = new ArrayList<SplittableRandom>();
+		for (int i = 0; i < elites.size(); i++) {
+			boolean resample;
+			if (Parameters.eliteResamplePolicy == EliteResamplePolicy.ALWAYS) {
+				resample = true;
+			}
+			else if (Parameters.eliteResamplePolicy == EliteResamplePolicy.NEVER) {
+				resample = (elites.get(i).numFitnessSamples == 0);
+			}
+			else {
+				resample = (elites.get(i).numFitnessSamples < Parameters.eliteMaxSamples);
+			}
+			if (resample) {
+				toEvaluate.add(elites.get(i));
+				toEvaluateRands.add(treeRands.get(i));
+			}
+		}
+		
+		FitnessResult[] fitnesses = evaluator.evaluateAll(toEvaluate, toEvaluateRands, this::calcFitness);
+		for (int i = 0; i < toEvaluate.size(); i++) {
+			GPTree tree = toEvaluate.get(i);
+			if (fitnesses[i].isRaced()) {
+				// not a sample (the elites aren't raced, so this doesn't normally happen)
+				setFitness(tree, fitnesses[i]);
+				continue;
+			}
+			if (Parameters.eliteResamplePolicy == EliteResamplePolicy.AVERAGE) {
+				// running average of all the samples so far (a fitness with no samples is dropped)
+				int numSamples = tree.numFitnessSamples;
+				tree.setFitness((tree.getFitness() * numSamples + fitnesses[i].getFitness()) / (numSamples + 1));
+				tree.numFitnessSamples = numSamples + 1;
+			}
+			else {
+				setFitness(tree, fitnesses[i]);
+			}
+			if (fitnessCache != null) {
+				fitnessCache.put(tree);
+			}
+		}
+	}
+
+
+	// one stream of random numbers for each of the trees about to be evaluated
+	private ArrayList<SplittableRandom> splitTreeRands(int numTrees) {
+		ArrayList<SplittableRandom> treeRands = new ArrayList<SplittableRandom>();
+		for (int i = 0; i < numTrees; i++) {
+			treeRands.add(rand.split());
+		}
+		return treeRands;
+	}
+
+
 	// calculate the fitness of a tree
-	public double calcFitness(GPTree tree) {
+	// NOTE: this can be called from several threads at once, so it shouldn't change
+	//       anything in the Population object
+	public FitnessResult calcFitness(GPTree tree, SplittableRandom treeRand) {
 		
 		// a PSO object takes care of running PSO some number of times
 		// in order to evaluate the tree
-		PSO pso = new PSO(tree);
+		PSO pso = new PSO(tree, treeRand);
+		pso.setRacingTarget(racingTarget);
 		FitnessResult fitResult = pso.evalGPTree();
 		
 		// scales mwScore, which will be 0.0 to 1.0, to be 
@@ -210,11 +408,7 @@ public class Population{
 		
 		
 		
-        if (fitScore * Parameters.fitnessInterval > Parameters.bestFitness){
-            Parameters.bestFitness = fitScore * Parameters.fitnessInterval;
-            Parameters.bestValue = fitResult.getFunctionValue().getU();
-            Parameters.bestTree = tree.getDeepCopy();
-        }
+        recordBest(tree, fitScore * Parameters.fitnessInterval, fitResult.getFunctionValue().getU(), fitResult.getIterationsRun());
         
 		//don't really even need this if statement
 		if (fitResult.getFunctionValue().flockDidBetter()) {
@@ -227,13 +421,14 @@ public class Population{
 			//child2.printTree();
 					
 			//include weights in Parameters! don't have them hard-coded
-			return Parameters.fitnessInterval * (fitScore * 1 );// - treeDepth; // + distScore * .05;
+			fitResult.setFitness(Parameters.fitnessInterval * (fitScore * 1 ));// - treeDepth; // + distScore * .05;
+			return fitResult;
 		} 
 		
 		//return fitScore * Parameters.fitnessInterval/2; 
 		//tree.printTree();
         
-		selectValue = Utilities.nextDouble(0,1);
+		double selectValue = Utilities.nextDouble(treeRand, 0,1);
 		if(selectValue <= flockPrintProb) {//|| Parameters.fitnessInterval * (fitScore) < -1000
 			
 			System.out.println("###PRINTING FLOCK DATA###");
@@ -241,7 +436,7 @@ public class Population{
 			Calendar date = Calendar.getInstance();
 			String dateString = dateformatter.format(date.getTime());
 			System.out.println(dateString + "K" + Parameters.runKey + ".csv");
-			Parameters.currFlockData.outputDataCSV();
+			pso.getFlockData().outputDataCSV();
 			System.out.println("Fitness: " + (Parameters.fitnessInterval * (fitScore * 1 )));
 			System.out.println("");
 			tree.printTree();
@@ -250,7 +445,20 @@ public class Population{
 		}
 		
 		//include weights in Parameters! don't have them hard-coded
-		return Parameters.fitnessInterval * (fitScore * 1 );// - treeDepth;// + distScore * .05;
+		fitResult.setFitness(Parameters.fitnessInterval * (fitScore * 1 ));// - treeDepth;// + distScore * .05;
+		return fitResult;
+	}
+
+
+	// keep track of the best tree seen so far; synchronized since the fitnesses
+	// of several trees can be calculated at the same time
+	private static synchronized void recordBest(GPTree tree, double fitness, double value, int[] iterationsRun) {
+		if (fitness > Parameters.bestFitness){
+			Parameters.bestFitness = fitness;
+			Parameters.bestValue = value;
+			Parameters.bestTree = tree.getDeepCopy();
+			Parameters.bestIterationsRun = iterationsRun;
+		}
 	}
 
 
@@ -267,12 +475,12 @@ public class Population{
 	// ******************************************************************
 	public GPTree tournamentSelection() {
 		
-		int treeIndex1 = Utilities.rand.nextInt(population.size());
-		int treeIndex2 = Utilities.rand.nextInt(population.size());		
+		int treeIndex1 = rand.nextInt(population.size());
+		int treeIndex2 = rand.nextInt(population.size());		
 		
 		//non-duplicate code
 		while (treeIndex2 == treeIndex1) {
-			treeIndex2 = Utilities.rand.nextInt(population.size());	
+			treeIndex2 = rand.nextInt(population.size());	
 		}
 		
 		GPTree tree1 = population.get(treeIndex1);
@@ -329,7 +537,7 @@ public class Population{
  
 			// randomly select node from t1Nodes (but not the root)
 			// random number range starts at 1 to avoid the root
-			index = Utilities.nextInt(1, numNodesT1);
+			index = Utilities.nextInt(rand, 1, numNodesT1);
 			nodeFromT1Nodes = t1Nodes.get(index);
 			
 			if (index < 26 && index != 9) { // 1 (root) + 9 (depth 1) + 16 (depth 2 for assigning VARs). index 9 is IF node
@@ -482,7 +690,7 @@ public class Population{
 		}
 		
 		// generate random number and find what interval it falls in
-		int threshold = Utilities.nextInt(1, sumWeights+1);
+		int threshold = Utilities.nextInt(rand, 1, sumWeights+1);
 		for (int i = 0; i < cumulativeWeights.size(); i++) { 
 			if (threshold <= cumulativeWeights.get(i)) {
 				return i;
@@ -515,7 +723,7 @@ public class Population{
 		// mutate each node with probability Parameters.probMutation
 		//starting at 1 now to avoid picking the root node
 		for(int i = 1; i < treeNodes.size(); i++) {
-			if(Utilities.rand.nextDouble() <= Parameters.probMutation) {	
+			if(rand.nextDouble() <= Parameters.probMutation) {	
 				
 				mutationCount += 1;
 				
@@ -551,12 +759,12 @@ public class Population{
 				node = node.getParent().getChildren().get(1); //the const node
 				//maybe assert const here
 			}
-			double change = Utilities.nextDouble(0.9, 1.1); //random const change between -10% and +10%
+			double change = Utilities.nextDouble(rand, 0.9, 1.1); //random const change between -10% and +10%
 			node.setConstValue(node.getConstValue() * change); 
 		}
 		else if(index == 0){
 			//changing the starting seed
-			node.setConstValue(node.getConstValue() + Utilities.nextInt(-10, 10));
+			node.setConstValue(node.getConstValue() + Utilities.nextInt(rand, -10, 10));
 		}
 		else {
 
@@ -566,7 +774,7 @@ public class Population{
 			ArrayList<GPNode> siblings = new ArrayList<GPNode>();
 			siblings = parent.getChildren();
 
-			GPNode child = GPTree.generateSubtree(node.getParent(), node.getDepth(), node.getReturnType(), false);//this already has its parent as the 
+			GPNode child = GPTree.generateSubtree(node.getParent(), node.getDepth(), node.getReturnType(), false, rand);//this already has its parent as the 
 
 			//print parent index because we haven't really set stuff for the new node
 			//System.out.println("Parent index: " + parent.getIndex());	
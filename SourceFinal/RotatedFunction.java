@@ -0,0 +1,134 @@
+/*
+ * A rotated version of one of the built-in functions, as in the CEC benchmarks: the point
+ * is moved so the optimum is at the origin, rotated by a random orthogonal matrix (see
+ * RotationMatrices.java), and moved back, and then the built-in function is evaluated there.
+ * The rotation mixes the dimensions together, so the function can no longer be optimized one
+ * dimension at a time.
+ *
+ * Everything except the function itself (the ranges, speed limits, optimum, success
+ * criterion, shift) is the same as for the built-in function; the optimum is still at the
+ * shifted optimum location of the run (see SimulationContext), with the same value.
+ */
+
+public class RotatedFunction implements ObjectiveFunctionProvider {
+
+	private final int functionNum;
+	private final BuiltInFunction base;
+
+
+	public RotatedFunction(int functionNum, BuiltInFunction base) {
+		this.functionNum = functionNum;
+		this.base = base;
+	}
+
+
+	public ObjectiveFunction create(double shiftAmount, TestFunctions.KernelMode mode) {
+		return new Rotated(FunctionKernels.getKernel(base.getFunctionNum(), mode), base.getOptCoord(), shiftAmount, base.getOptValue());
+	}
+
+
+	// the function for a run; the matrix for the number of dimensions is looked up the first
+	// time a point is evaluated (volatile, since the particles may be evaluated on several threads)
+	private static final class Rotated implements ObjectiveFunction {
+
+		private final FunctionKernels.Kernel kernel;
+		private final double optCoord;
+		private final double shiftAmount;
+		private final double optValue;
+		private volatile double[] matrix = null;
+
+		public Rotated(FunctionKernels.Kernel kernel, double optCoord, double shiftAmount, double optValue) {
+			this.kernel = kernel;
+			this.optCoord = optCoord;
+			this.shiftAmount = shiftAmount;
+			this.optValue = optValue;
+		}
+
+		public double evaluate(double[] x, int offset, int dims) {
+
+			double[] rotation = matrix;
+			if (rotation == null || rotation.length != dims * dims) {
+				rotation = RotationMatrices.getMatrix(dims, 0);
+				matrix = rotation;
+			}
+
+			// y = x - the shifted optimum, in the first half of the scratch space; z = the
+			// rotated y, moved back to the function's own optimum, in the second half
+			double[] scratch = RotationMatrices.getScratch(2 * dims);
+			double shiftedOpt = optCoord + shiftAmount;
+			for (int i = 0; i < dims; i++) {
+				scratch[i] = x[offset + i] - shiftedOpt;
+			}
+			RotationMatrices.rotate(rotation, scratch, 0, scratch, dims, dims, 1.0);
+			for (int i = dims; i < 2 * dims; i++) {
+				scratch[i] += optCoord;
+			}
+
+			return kernel.eval(scratch, dims, dims, 0.0);
+		}
+
+		public double getOptValue() {
+			return optValue;
+		}
+	}
+
+
+	// getters
+
+	public int getFunctionNum() {
+		return functionNum;
+	}
+
+	public String getName() {
+		return "ROTATED_" + base.getName();
+	}
+
+	public double getInitMinVal() {
+		return base.getInitMinVal();
+	}
+
+	public double getInitRange() {
+		return base.getInitRange();
+	}
+
+	public double getSearchSpaceMaxVal() {
+		return base.getSearchSpaceMaxVal();
+	}
+
+	public double getSearchSpaceRange() {
+		return base.getSearchSpaceRange();
+	}
+
+	public double getSpeedMinVal() {
+		return base.getSpeedMinVal();
+	}
+
+	public double getSpeedMaxVal() {
+		return base.getSpeedMaxVal();
+	}
+
+	public double getSpeedRange() {
+		return base.getSpeedRange();
+	}
+
+	public double getOptCoord() {
+		return base.getOptCoord();
+	}
+
+	public double getOptValue() {
+		return base.getOptValue();
+	}
+
+	public double getShiftRange() {
+		return base.getShiftRange();
+	}
+
+	public double getSuccessCriterion() {
+		return base.getSuccessCriterion();
+	}
+
+	public double getSuccessDistanceFromOpt() {
+		return base.getSuccessDistanceFromOpt();
+	}
+
+}
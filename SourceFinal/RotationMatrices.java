@@ -0,0 +1,153 @@
+/*
+ * The random rotation matrices (and the optima of the composite function's other components)
+ * used by the rotated functions, CEC style (see RotatedFunction.java and CompositeFunction.java).
+ *
+ * A matrix is made the first time it is needed for a number of dimensions, from a fixed seed,
+ * and then kept, so every run (and every particle, on every iteration) uses the same one, and
+ * the same matrices come out on every machine. Making a matrix is O(D^3), so it can't be done
+ * for every evaluation, or even every run.
+ *
+ * The matrices are kept in plain double arrays, one row after another: the garbage collector
+ * never looks inside an array of doubles, so keeping them off the heap wouldn't gain anything,
+ * and the JIT can take the bounds checks out of the loops over an array.
+ *
+ * rotate does the matrix-vector product LANES rows at a time: each row's sum is still added up
+ * in order, so the result is exactly the same as one row at a time, but the rows don't depend on
+ * each other, so the CPU can work on them at the same time and each element of the vector is
+ * only loaded once for all of them.
+ */
+
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+public class RotationMatrices {
+
+	// the matrices and points are made from this seed (and the dimensions and index), so they
+	// don't depend on Parameters.masterSeed
+	private static final long SEED = 20130301L;
+
+	// how many rows rotate works on at a time
+	public static final int LANES = 4;
+
+	// matrices and points, by dimensions and index
+	private static HashMap<String, double[]> matrices = new HashMap<String, double[]>();
+	private static HashMap<String, double[]> points = new HashMap<String, double[]>();
+
+	// scratch space for the rotated functions, one for each thread, so evaluating doesn't
+	// allocate anything
+	private static final ThreadLocal<double[]> scratch = ThreadLocal.withInitial(() -> new double[0]);
+
+
+	// the index'th random rotation matrix for dims dimensions (dims x dims, row after row)
+	public static synchronized double[] getMatrix(int dims, int index) {
+		String key = dims + ":" + index;
+		double[] matrix = matrices.get(key);
+		if (matrix == null) {
+			matrix = generateMatrix(dims, new SplittableRandom(SEED + 1000003L * dims + index));
+			matrices.put(key, matrix);
+		}
+		return matrix;
+	}
+
+	// the index'th random point for dims dimensions, with every coordinate between -range and range
+	public static synchronized double[] getPoint(int dims, int index, double range) {
+		String key = dims + ":" + index + ":" + range;
+		double[] point = points.get(key);
+		if (point == null) {
+			SplittableRandom rand = new SplittableRandom(SEED - 1000003L * dims - index);
+			point = new double[dims];
+			for (int i = 0; i < dims; i++) {
+				point[i] = Utilities.nextDouble(rand, -range, range);
+			}
+			points.put(key, point);
+		}
+		return point;
+	}
+
+
+	// this thread's scratch space, with room for at least size values
+	public static double[] getScratch(int size) {
+		double[] values = scratch.get();
+		if (values.length < size) {
+			values = new double[size];
+			scratch.set(values);
+		}
+		return values;
+	}
+
+
+	// z[zOffset + r] = scale * (row r of the matrix . y[yOffset...]), for each of the dims rows
+	public static void rotate(double[] matrix, double[] y, int yOffset, double[] z, int zOffset, int dims, double scale) {
+
+		int row = 0;
+		for (; row + LANES <= dims; row += LANES) {
+			int m0 = row * dims;
+			int m1 = m0 + dims;
+			int m2 = m1 + dims;
+			int m3 = m2 + dims;
+			double sum0 = 0.0;
+			double sum1 = 0.0;
+			double sum2 = 0.0;
+			double sum3 = 0.0;
+			for (int col = 0; col < dims; col++) {
+				double yc = y[yOffset + col];
+				sum0 += matrix[m0 + col] * yc;
+				sum1 += matrix[m1 + col] * yc;
+				sum2 += matrix[m2 + col] * yc;
+				sum3 += matrix[m3 + col] * yc;
+			}
+			z[zOffset + row] = scale * sum0;
+			z[zOffset + row + 1] = scale * sum1;
+			z[zOffset + row + 2] = scale * sum2;
+			z[zOffset + row + 3] = scale * sum3;
+		}
+
+		// the rows left over
+		for (; row < dims; row++) {
+			int m = row * dims;
+			double sum = 0.0;
+			for (int col = 0; col < dims; col++) {
+				sum += matrix[m + col] * y[yOffset + col];
+			}
+			z[zOffset + row] = scale * sum;
+		}
+	}
+
+
+	// a random orthogonal matrix: a matrix of normally distributed values, with the rows made
+	// orthonormal by (modified) Gram-Schmidt
+	private static double[] generateMatrix(int dims, SplittableRandom rand) {
+
+		double[] matrix = new double[dims * dims];
+		for (int i = 0; i < matrix.length; i++) {
+			matrix[i] = rand.nextGaussian();
+		}
+
+		for (int row = 0; row < dims; row++) {
+			int r = row * dims;
+			// take out the parts along the rows before it
+			for (int prev = 0; prev < row; prev++) {
+				int p = prev * dims;
+				double dot = 0.0;
+				for (int col = 0; col < dims; col++) {
+					dot += matrix[r + col] * matrix[p + col];
+				}
+				for (int col = 0; col < dims; col++) {
+					matrix[r + col] -= dot * matrix[p + col];
+				}
+			}
+			// and make it length 1
+			double length = 0.0;
+			for (int col = 0; col < dims; col++) {
+				length += matrix[r + col] * matrix[r + col];
+			}
+			length = Math.sqrt(length);
+			for (int col = 0; col < dims; col++) {
+				matrix[r + col] /= length;
+			}
+		}
+
+		return matrix;
+	}
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Everything a single PSO run needs, in one place:
+ * 	- the configuration of the run, copied out of Parameters when the context is created
+ * 	- the random number generator for the run
+ * 	- the shift of the function optimum for the run
+ * 	- the state of the swarm (particles, global best, flock data, GP tree)
+ *
+ * A context is created for each run in PSO.java and handed to the Swarm, and from there
+ * to the Particles, Neighborhoods and GPNodes. Nothing in a run reads static data, so any
+ * number of runs can be going at the same time without getting in each other's way.
+ *
+ */
+
+import java.util.SplittableRandom;
+
+public class SimulationContext {
+
+	// CONFIGURATION
+	// copied from Parameters, so changing Parameters during a run doesn't affect it
+	private final int functionNum;
+	private final int numDimensions;
+	private final int numParticles;
+	private final int numDummy;
+	private final int numIterations;
+	private final PSO.Topology topology;
+	private final PSO.SelfModel selfModel;
+	private final PSO.InfluenceModel influenceModel;
+	private final int numRowsVonNeumannAndMoore;
+	private final int numColsVonNeumannAndMoore;
+	private final int flockSpaceDimLength;
+	private final boolean doRandomTree;
+	private final boolean useSpatialGrid;
+	private final boolean synchronousFlock;
+	private final PSO.SwarmBackend swarmBackend;
+	private final GPTree.TreeBackend treeBackend;
+	private final TestFunctions.KernelMode kernelMode;
+	private final boolean stopAtSuccess;
+	private final int stagnationIterations;
+	private final int maxFunctionEvaluations;
+
+	// is this run FLOCK-PSO or S-PSO?
+	private final boolean usingFLOCKPSO;
+
+	// RANDOM NUMBERS
+	// every random number in the run comes from here, or from a stream split off of it
+	// (each particle splits off its own)
+	private final SplittableRandom rand;
+
+	// SHIFT
+	// the shift of the location of the optimum in the function's search space (the same
+	// in every dimension), and the location of the optimum after it has been shifted
+	private final double shiftAmount;
+	private final DoubleVector shiftedOptimumLocation;
+
+	// the function (ranges, speed limits, optimum), and the shifted function, for evaluating
+	// the particles; the particles all go through this one ObjectiveFunction, which is an
+	// EvaluationCache in front of the shifted function if Parameters.evaluationCacheSize isn't 0
+	private final ObjectiveFunctionProvider function;
+	private final ObjectiveFunction objectiveFunction;
+
+	// SWARM STATE
+	// the same GPTree is used by each particle to change the flock parameters
+	private final GPTree gpTree;
+	// these are filled in by the Swarm when it is created (an ArraySwarm keeps its particles
+	// itself, so particles is null for it)
+	private Particle[] particles;
+	private Solution globalBest;
+	private FlockTracker flockData;
+	// null if flock neighbors are found by checking every particle
+	private FlockGrid flockGrid;
+
+
+	public SimulationContext(PSO.Topology topology, boolean usingFLOCKPSO, GPTree gpTree, SplittableRandom rand) {
+
+		this.functionNum = Parameters.functionNum;
+		this.numDimensions = Parameters.numDimensions;
+		this.numParticles = Parameters.numParticles;
+		this.numDummy = Parameters.dummyParticles;
+		this.numIterations = Parameters.numIterations;
+		this.topology = topology;
+		this.selfModel = Parameters.selfModel;
+		this.influenceModel = Parameters.influenceModel;
+		this.numRowsVonNeumannAndMoore = Parameters.numRowsVonNeumannAndMoore;
+		this.numColsVonNeumannAndMoore = Parameters.numColsVonNeumannAndMoore;
+		this.flockSpaceDimLength = Parameters.FLOCK_SPACE_DIM_LENGTH;
+		this.doRandomTree = Parameters.doRandomTree;
+		this.useSpatialGrid = Parameters.useSpatialGrid;
+		this.synchronousFlock = Parameters.synchronousFlock;
+		this.swarmBackend = Parameters.swarmBackend;
+		this.treeBackend = Parameters.treeBackend;
+		this.kernelMode = Parameters.kernelMode;
+		this.stopAtSuccess = Parameters.stopAtSuccess;
+		this.stagnationIterations = Parameters.stagnationIterations;
+		this.maxFunctionEvaluations = Parameters.maxFunctionEvaluations;
+
+		this.usingFLOCKPSO = usingFLOCKPSO;
+		this.gpTree = gpTree;
+		this.rand = rand;
+
+		// generate a random shift of the location of the optimum in the function's search space
+		function = TestFunctions.getProvider(functionNum);
+		double shiftVectorAmount = function.getShiftRange() * rand.nextDouble();
+		if (rand.nextDouble() < 0.5) {
+			shiftVectorAmount *= -1.0;
+		}
+		shiftAmount = shiftVectorAmount;
+		if (Parameters.evaluationCacheSize > 0) {
+			objectiveFunction = new EvaluationCache(function.create(shiftAmount, kernelMode), Parameters.evaluationCacheSize, Parameters.evaluationCacheEpsilon);
+		}
+		else {
+			objectiveFunction = function.create(shiftAmount, kernelMode);
+		}
+
+		// the optimum location is initially set to the actual optimum location, then shifted
+		shiftedOptimumLocation = new DoubleVector(numDimensions, function.getOptCoord());
+		shiftedOptimumLocation.addScalar(shiftVectorAmount);
+	}
+
+
+	// random values in ranges, from this run's generator
+	public int nextInt(int minVal, int maxVal) {
+		return Utilities.nextInt(rand, minVal, maxVal);
+	}
+
+	public double nextDouble(double minVal, double maxVal) {
+		return Utilities.nextDouble(rand, minVal, maxVal);
+	}
+
+
+	// getters and setters
+
+	public int getFunctionNum() {
+		return functionNum;
+	}
+
+	public int getNumDimensions() {
+		return numDimensions;
+	}
+
+	public int getNumParticles() {
+		return numParticles;
+	}
+
+	public int getNumDummy() {
+		return numDummy;
+	}
+
+	public int getNumIterations() {
+		return numIterations;
+	}
+
+	public PSO.Topology getTopology() {
+		return topology;
+	}
+
+	public PSO.SelfModel getSelfModel() {
+		return selfModel;
+	}
+
+	public PSO.InfluenceModel getInfluenceModel() {
+		return influenceModel;
+	}
+
+	public int getNumRowsVonNeumannAndMoore() {
+		return numRowsVonNeumannAndMoore;
+	}
+
+	public int getNumColsVonNeumannAndMoore() {
+		return numColsVonNeumannAndMoore;
+	}
+
+	public int getFlockSpaceDimLength() {
+		return flockSpaceDimLength;
+	}
+
+	public boolean isDoRandomTree() {
+		return doRandomTree;
+	}
+
+	public boolean isUseSpatialGrid() {
+		return useSpatialGrid;
+	}
+
+	public boolean isSynchronousFlock() {
+		return synchronousFlock;
+	}
+
+	public PSO.SwarmBackend getSwarmBackend() {
+		return swarmBackend;
+	}
+
+	public GPTree.TreeBackend getTreeBackend() {
+		return treeBackend;
+	}
+
+	public TestFunctions.KernelMode getKernelMode() {
+		return kernelMode;
+	}
+
+	public boolean isStopAtSuccess() {
+		return stopAtSuccess;
+	}
+
+	public int getStagnationIterations() {
+		return stagnationIterations;
+	}
+
+	public int getMaxFunctionEvaluations() {
+		return maxFunctionEvaluations;
+	}
+
+	public boolean isUsingFLOCKPSO() {
+		return usingFLOCKPSO;
+	}
+
+	public SplittableRandom getRand() {
+		return rand;
+	}
+
+	public double getShiftAmount() {
+		return shiftAmount;
+	}
+
+	public ObjectiveFunctionProvider getFunction() {
+		return function;
+	}
+
+	public ObjectiveFunction getObjectiveFunction() {
+		return objectiveFunction;
+	}
+
+	public DoubleVector getShiftedOptimumLocation() {
+		return shiftedOptimumLocation;
+	}
+
+	public GPTree getGPTree() {
+		return gpTree;
+	}
+
+	public Particle[] getParticles() {
+		return particles;
+	}
+
+	public void setParticles(Particle[] particles) {
+		this.particles = particles;
+	}
+
+	public Solution getGlobalBest() {
+		return globalBest;
+	}
+
+	public void setGlobalBest(Solution globalBest) {
+		this.globalBest = globalBest;
+	}
+
+	public FlockTracker getFlockData() {
+		return flockData;
+	}
+
+	public void setFlockData(FlockTracker flockData) {
+		this.flockData = flockData;
+	}
+
+	public FlockGrid getFlockGrid() {
+		return flockGrid;
+	}
+
+	public void setFlockGrid(FlockGrid flockGrid) {
+		this.flockGrid = flockGrid;
+	}
+
+}
@@ -114,18 +114,6 @@ public class Solution {
 	}
 
 
-	public double calcSolutionValue (int functionNum) {
-		double[] results = TestFunctions.evalWithError(position , functionNum);
-		return results[TestFunctions.VAL_INDEX];
-	}
-
-	public double calcSolutionError (int functionNum) {
-		double[] results = TestFunctions.evalWithError(position , functionNum);
-		return results[TestFunctions.ERR_INDEX];
-	}
-
-
-
 	public void print() {
 		position.print();
 		System.out.printf("%s%2d%s%.8e%s%.8e", "  particleID = ", particleID, "  val = ", value,"  err = ", error);
@@ -1,37 +1,35 @@
-
 //import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.random.RandomGenerator;
 
 
 public class Swarm {
 
-	public static Particle[] particles;  
+	// everything about a run (particles, global best, flock data, GP tree, configuration,
+	// random numbers) is kept in the SimulationContext sent in, not in static data, so
+	// several swarms can be run at the same time, e.g. when trees are evaluated in parallel
+	private SimulationContext context;
 	// holds the neighborhoods, one for each particle
-	private static Neighborhood[] allNeighs;
-	public static Solution globalBest;
-	//FlockTracker to keep track of where every particle is in flock space at every iteration
-	public static FlockTracker flockData;
-	public static int numParticles;
-	// the same GPTree is used by each particle to change the flock parameters,
-	// so it is a static variable here that is referenced at the end of the 
-	// moveFlockAndGetNeighbors method in the Particle class
-	public static GPTree gpTree;
-
-	//add a new parameter, numDummy
-	public Swarm (int numParticles, 
-			int functionNum, 
-			int numDimensions, 	
-			PSO.Topology currentPSOTopology, 
-			PSO.SelfModel currentPSOSelfModel, 
-			PSO.InfluenceModel currentPSOInfluenceModel,
-			GPTree gpTree,
-			int numDummy) {
-		
-		
+	private Neighborhood[] allNeighs;
+	private int numParticles;
+
+	// in synchronous mode, particles are updated in parallel in chunks of at least this many
+	private static final int MIN_PARTICLES_PER_TASK = 8;
+
+	// the context holds the configuration of the run; the particles, global best and flock
+	// data created here are stored in it, so the particles can get to them
+	public Swarm (SimulationContext context) {
 		
-		this.gpTree = gpTree;
-		this.numParticles = numParticles;
+		this.context = context;
+		this.numParticles = context.getNumParticles();
+		int numDummy = context.getNumDummy();
+		GPTree gpTree = context.getGPTree();
+
 		// create arrays to hold particle and neighborhoods
-		particles = new Particle[numParticles + numDummy];
+		Particle[] particles = new Particle[numParticles + numDummy];
+		context.setParticles(particles);
 		//dummyParticles = new Particle[numParticles];
 		
 		allNeighs = new Neighborhood[numParticles];		
@@ -39,16 +37,16 @@ public class Swarm {
 		// array needed to get back function evaluation results from Particle constructor
 		double[] initParticleData = new double[2];    
 
-		//Parameters.___ should be temporary until I can pass it in from PSO (same with 11 flocking parameters)
-		flockData = new FlockTracker(Parameters.getNumIterations(), numParticles, Parameters.dummyParticles, 11, gpTree.generation);
+		//11 flocking parameters
+		context.setFlockData(new FlockTracker(context.getNumIterations(), numParticles, numDummy, 11, gpTree.generation));
 		
 		//Parameters.globalSeed = (int) gpTree.getRoot().getConstValue();
 		//System.out.println(Parameters.globalSeed);
 		
 		// create the first particle, using randomly generated flock parameters
 		
-		double[] randParameters = generateRandomParameters();
-		particles[0] = new Particle(functionNum, numDimensions, 0, 
+		double[] randParameters = generateRandomParameters(context.getRand());
+		particles[0] = new Particle(context, 0, 
 				randParameters[0], randParameters[1], randParameters[2], randParameters[3],
 				randParameters[4], randParameters[5], randParameters[6], randParameters[7],
 				initParticleData, false); //false means it is not a dummy particle
@@ -63,7 +61,8 @@ public class Swarm {
 		// getPosition does not return a copy, but that's okay because Solution constructor makes 
 		// a copy of the DoubleVector sent in
 		// NOTE: 0 is the iteration found
-		globalBest = new Solution(particles[0].getPosition(), globalBestValue, globalBestError, globalBestParticleNum);
+		Solution globalBest = new Solution(particles[0].getPosition(), globalBestValue, globalBestError, globalBestParticleNum);
+		context.setGlobalBest(globalBest);
 
 		boolean isDummy = false;
 		// now make the rest of the particles
@@ -81,7 +80,7 @@ public class Swarm {
 				isDummy = false;
 			}
 					
-			particles[particleID] = new Particle(functionNum, numDimensions, particleID, 
+			particles[particleID] = new Particle(context, particleID, 
 					randParameters[0], randParameters[1], randParameters[2], randParameters[3],
 					randParameters[4], randParameters[5], randParameters[6], randParameters[7],
 					initParticleData, isDummy);
@@ -101,15 +100,20 @@ public class Swarm {
 			}
 		}
 
+		// the grid for finding flock neighbors; it's filled in at the start of each update
+		if (context.isUseSpatialGrid()) {
+			context.setFlockGrid(new FlockGrid(particles.length, context.getFlockSpaceDimLength()));
+		}
+
 		// if we are using S-PSO, the neighborhoods do not change, so we will create 
 		// them once and for all now
-		if (!PSO.usingFLOCKPSO) {
-			createNeighborhoods(currentPSOTopology, currentPSOSelfModel, currentPSOInfluenceModel);
+		if (!context.isUsingFLOCKPSO()) {
+			createNeighborhoods(context.getTopology(), context.getSelfModel(), context.getInfluenceModel());
 		}
 
 		/////////
-		if (PSO.usingFLOCKPSO) {
-			createNeighborhoods(PSO.Topology.FLOCK, currentPSOSelfModel, currentPSOInfluenceModel);
+		if (context.isUsingFLOCKPSO()) {
+			createNeighborhoods(PSO.Topology.FLOCK, context.getSelfModel(), context.getInfluenceModel());
 		}
 		//create neighborhoods for FlockPSO here too?
 
@@ -117,8 +121,22 @@ public class Swarm {
 
 
 	// call update on every particle and reset global best, if necessary
-	public void update (int currentFunctionNum, PSO.Topology currentPSOTopology, PSO.SelfModel currentPSOSelfModel, 
-			PSO.InfluenceModel currentPSOInfluenceModel) {
+	public void update () {
+
+		Particle[] particles = context.getParticles();
+		Solution globalBest = context.getGlobalBest();
+		FlockTracker flockData = context.getFlockData();
+
+		// put the particles in the flock grid, sized for their current radii; the particles
+		// keep it up to date as they move
+		if (context.getFlockGrid() != null) {
+			context.getFlockGrid().rebuild(particles);
+		}
+
+		if (context.isSynchronousFlock()) {
+			updateSynchronous(particles, globalBest, flockData);
+			return;
+		}
 
 		for (int particleID = 0 ; particleID < particles.length ; particleID++) {
 
@@ -133,7 +151,7 @@ public class Swarm {
 				
 				//test
 				//System.out.println("Before: " + nextPBestFuncValSol.getFunctionValue());
-				Solution newSolution = particles[particleID].update(currentPSOTopology, currentPSOSelfModel, currentPSOInfluenceModel);  
+				Solution newSolution = particles[particleID].update(context.getTopology(), context.getSelfModel(), context.getInfluenceModel());  
 				//System.out.println("After: " + nextPBestFuncValSol.getFunctionValue());
 				
 				double newParticleValue = newSolution.getFunctionValue();      
@@ -160,16 +178,130 @@ public class Swarm {
 	//}   
 
 
+	// synchronous version of update: every particle sees the others as they were at the start
+	// of the iteration, so the particles don't depend on each other and can be updated in
+	// parallel; it goes in two phases:
+	//   1. every particle does its flock step (writing its new flock location and velocity
+	//      to its "next" buffers) and works out its PSO acceleration; this only reads the
+	//      other particles
+	//   2. every particle that did a flock step swaps in its new flock location and velocity,
+	//      and every regular particle applies its acceleration and updates its personal best;
+	//      this only changes the particle itself
+	// then the global best and flock data are updated one particle at a time, in particle order
+	private void updateSynchronous(Particle[] particles, Solution globalBest, FlockTracker flockData) {
+
+		Solution[] newSolutions = new Solution[particles.length];
+
+		forAllParticles(particles.length, particleID -> {
+			if (particles[particleID].getIsDummy() || particleID >= numParticles) {
+				particles[particleID].updateDummyFlock();
+			}
+			else {
+				particles[particleID].calcAcceleration(context.getTopology(), context.getSelfModel(), context.getInfluenceModel());
+			}
+		});
+
+		forAllParticles(particles.length, particleID -> {
+			particles[particleID].swapFlockBuffers();
+			if (!(particles[particleID].getIsDummy() || particleID >= numParticles)) {
+				newSolutions[particleID] = particles[particleID].applyAcceleration();
+			}
+		});
+
+		for (int particleID = 0 ; particleID < particles.length ; particleID++) {
+			if (newSolutions[particleID] != null) {
+				Solution newSolution = newSolutions[particleID];
+				double newParticleValue = newSolution.getFunctionValue();      
+				allNeighs[particleID] = particles[particleID].getNeighborhood();
+
+				if (newParticleValue < globalBest.getFunctionValue()) {
+					globalBest.copyFromPosition(newSolution.getPosition());
+					globalBest.setFunctionValue(newParticleValue);
+					globalBest.setError(newSolution.getError());
+					globalBest.setParticleID(particleID);
+				} 
+			}
+			flockData.addParticle(particles[particleID]);
+		}
+
+		flockData.addAvgNeighbors(avgNeighborhoods());
+		flockData.incrementIteration();
+	}
+
+
+	// do something for every particle ID, splitting the particles up into chunks that are done
+	// on a ForkJoinPool; if the run itself is on a pool thread (see PSO.runAllSwarms), the
+	// chunks are done in that pool; ArraySwarm uses this too
+	static void forAllParticles(int numParticles, IntConsumer action) {
+		forAllParticleRanges(numParticles, (start, end) -> {
+			for (int particleID = start ; particleID < end ; particleID++) {
+				action.accept(particleID);
+			}
+		});
+	}
+
+
+	// something done for the particle IDs start to end-1 (see forAllParticleRanges)
+	static interface ParticleRange {
+		public void accept(int start, int end);
+	}
+
+	// same as forAllParticles, but the action gets a whole chunk of particle IDs at a time,
+	// e.g. so ArraySwarm can evaluate a chunk's positions with one ObjectiveFunction.evaluateAll
+	static void forAllParticleRanges(int numParticles, ParticleRange action) {
+
+		if (numParticles <= MIN_PARTICLES_PER_TASK) {
+			action.accept(0, numParticles);
+			return;
+		}
+
+		RecursiveAction allParticles = new ParticleRangeAction(0, numParticles, action);
+		if (ForkJoinTask.inForkJoinPool()) {
+			allParticles.invoke();
+		}
+		else {
+			PSO.getRunPool().invoke(allParticles);
+		}
+	}
+
+
+	// does the action for particle IDs start to end-1, splitting the range in half until it's small
+	private static class ParticleRangeAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private int start;
+		private int end;
+		private ParticleRange action;
+
+		public ParticleRangeAction(int start, int end, ParticleRange action) {
+			this.start = start;
+			this.end = end;
+			this.action = action;
+		}
+
+		protected void compute() {
+			if (end - start <= MIN_PARTICLES_PER_TASK) {
+				action.accept(start, end);
+			}
+			else {
+				int middle = (start + end) / 2;
+				invokeAll(new ParticleRangeAction(start, middle, action), new ParticleRangeAction(middle, end, action));
+			}
+		}
+	}
+
+
 	// generate random flock parameters
-	public static double[] generateRandomParameters() {
-		double maxSpeed = Utilities.nextDouble(2.0, 10.0);         		// range = [2.0, 10.0]
-		double normalSpeed = Utilities.nextDouble(1.0, maxSpeed);  		// range = [1.0, maxSpeed]
-		double neighborRadius = Utilities.nextDouble(10.0, 100.0); 		// range = [10.0, 100.0]
-		double separationWeight = Utilities.nextDouble(0.0, 100.0);		// range = [0.0, 100.0]
-		double alignmentWeight = Utilities.nextDouble(0.0, 1.0);   		// range = [0.0, 1.0]
-		double cohesionWeight = Utilities.nextDouble(0.0, 1.0);    		// range = [0.0, 1.0]
-		double pacekeepingWeight = Utilities.nextDouble(0.0, 1.0);		// range = [0.0, 1.0]
-		double randomMotionProbability = Utilities.nextDouble(0.0, 5.0);// range = [0.0, 0.5]
+	public static double[] generateRandomParameters(RandomGenerator rand) {
+		double maxSpeed = Utilities.nextDouble(rand, 2.0, 10.0);         		// range = [2.0, 10.0]
+		double normalSpeed = Utilities.nextDouble(rand, 1.0, maxSpeed);  		// range = [1.0, maxSpeed]
+		double neighborRadius = Utilities.nextDouble(rand, 10.0, 100.0); 		// range = [10.0, 100.0]
+		double separationWeight = Utilities.nextDouble(rand, 0.0, 100.0);		// range = [0.0, 100.0]
+		double alignmentWeight = Utilities.nextDouble(rand, 0.0, 1.0);   		// range = [0.0, 1.0]
+		double cohesionWeight = Utilities.nextDouble(rand, 0.0, 1.0);    		// range = [0.0, 1.0]
+		double pacekeepingWeight = Utilities.nextDouble(rand, 0.0, 1.0);		// range = [0.0, 1.0]
+		double randomMotionProbability = Utilities.nextDouble(rand, 0.0, 5.0);// range = [0.0, 0.5]
 
 		double[] parameters =
 			{ maxSpeed, 
@@ -189,6 +321,8 @@ public class Swarm {
 	// create a neighborhood for each particle	
 	public void createNeighborhoods(PSO.Topology currentTopology, PSO.SelfModel currentSelfModel, PSO.InfluenceModel currentInfluenceModel) {
 
+		Particle[] particles = context.getParticles();
+
 		// this is bad for GBEST, because it's going to create a distinct Neighborhood
 		// object for every particle, in spite of the fact that there is only one neighborhood...
 		// but go with it for now
@@ -197,7 +331,7 @@ public class Swarm {
 
 			//here maybe?
 			// create the actual neighborhood containing list of references to Particles in neighborhood
-			Neighborhood neigh = new Neighborhood(particles, particleID, currentTopology, currentSelfModel, currentInfluenceModel);
+			Neighborhood neigh = new Neighborhood(context, particles, particleID, currentTopology, currentSelfModel, currentInfluenceModel);
 			
 			if(!particles[particleID].getIsDummy()) {// if it is not a dummy particle
 				particles[particleID].setNeighborhood(neigh);
@@ -220,27 +354,15 @@ public class Swarm {
 
 	// show  the IDs of the particles in a given neighborhood
 	public static void showNeighborhood (Neighborhood neigh) {
-		if(neigh.getNeighParticles() == null) {
-			System.out.println("neighborhoodID = " + neigh.getNeighID() + " includes particles:");
-			System.out.println("null");
-		}
-		else {
-			Particle[] particlesInNeighborhood = neigh.getNeighParticles();
-
-			System.out.println("neighborhoodID = " + neigh.getNeighID() + " includes particles:");
-			for (int i = 0 ; i < particlesInNeighborhood.length ; i++) {
-				if(particlesInNeighborhood[i] == null) {
-					System.out.println("null");
-				}
-				else {
-					System.out.println("particleID = " + particlesInNeighborhood[i].getParticleID());
-				}
-			}
+		System.out.println("neighborhoodID = " + neigh.getNeighID() + " includes particles:");
+		for (int n = 0 ; n < neigh.getNumNeighbors() ; n++) {
+			System.out.println("particleID = " + neigh.getNeighborID(n));
 		}
 	}
 
 	//Get the average neighbors for all particles. Can be helpful to compare to what other papers have found is the optimal number of neighbors
 	public double avgNeighborhoods() {
+		Particle[] particles = context.getParticles();
 		double sum = 0;
 		for(int i = 0; i < numParticles; i++) {
 			sum += particles[i].getNumNeighborsOwnFlock();
@@ -249,7 +371,26 @@ public class Swarm {
 	}
 
 	public void printFlockData() {
-		flockData.outputDataCSV();
+		context.getFlockData().outputDataCSV();
+	}
+
+
+	// getters
+
+	public SimulationContext getContext() {
+		return context;
+	}
+
+	public Particle[] getParticles() {
+		return context.getParticles();
+	}
+
+	public Solution getGlobalBest() {
+		return context.getGlobalBest();
+	}
+
+	public FlockTracker getFlockData() {
+		return context.getFlockData();
 	}
 
 
@@ -4,6 +4,8 @@ import java.io.PrintWriter;
 import java.util.Calendar;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
 
 public class TestFlockPSO {
@@ -30,7 +32,7 @@ public class TestFlockPSO {
 			outputWindow.print("STARTING RUN ON " + dateString + "\n\n");
             
 			//randomized key that differentiates runs started at the exact same time
-			int runKey = Utilities.rand.nextInt();
+			int runKey = new SplittableRandom().nextInt();
 			
 			// create a PrintWriter that sends things to a file
 			// NOTE: there needs to be "results" folder on the same level as the "src" folder
@@ -92,6 +94,17 @@ public class TestFlockPSO {
             parameters.probCrossover = DoubleParametersArray.get(0);
             parameters.probMutation = DoubleParametersArray.get(1);
             
+            //an optional last argument is the master seed, to repeat an earlier run exactly
+            if (args.length > 10) {
+                try {
+                    Utilities.setConsistentSeed(Long.parseLong(args[10]));
+                }
+                catch (NumberFormatException nfe) {
+                    System.out.println("Argument number 10 must be a Long.");
+                    System.exit(1);
+                }
+            }
+            
             // create TestResults object for given number of generations and individuals
             testResults = new TestResults(Parameters.numGens, Parameters.numTrees);
             
@@ -111,6 +124,16 @@ public class TestFlockPSO {
             dataFile.println("# ");
             dataFile.println("# Best Fitness: " + Parameters.bestFitness);
             dataFile.println("# Best function value: " + Parameters.bestValue);
+            if (Parameters.evaluationCacheSize > 0) {
+                dataFile.println("# Evaluation cache hits: " + EvaluationCache.getTotalHits() + ", misses: " + EvaluationCache.getTotalMisses());
+            }
+            // how long the runs went on for, if a stopping rule can end them early
+            if (Parameters.stopAtSuccess || Parameters.stagnationIterations > 0 || Parameters.maxFunctionEvaluations > 0) {
+                if (Parameters.regularIterationsRun != null) {
+                    dataFile.println("# S-PSO iterations run: " + Arrays.toString(Parameters.regularIterationsRun));
+                }
+                dataFile.println("# Best tree's FLOCK-PSO iterations run: " + Arrays.toString(Parameters.bestIterationsRun));
+            }
             testResults.outputData(dataFile);
             
             //we also want to see what the best tree looks like
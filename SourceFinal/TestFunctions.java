@@ -7,6 +7,10 @@
  * 
  */
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
 public class TestFunctions {
 
 
@@ -18,7 +22,23 @@ public class TestFunctions {
 
 	public static final int NUMBER_OPT_FUNCTIONS = 8;
 
+	// rotated versions of some of the functions, and a composition function (CEC style, see
+	// RotatedFunction.java and CompositeFunction.java); these are ObjectiveFunctionProviders
+	// like any other, so only their numbers are here
+	public static final int ROTATED_RASTRIGIN_FUNCTION_NUM = 8;
+	public static final int ROTATED_ACKLEY_FUNCTION_NUM = 9;
+	public static final int ROTATED_GRIEWANK_FUNCTION_NUM = 10;
+	public static final int ROTATED_ROSENBROCK_FUNCTION_NUM = 11;
+	public static final int COMPOSITE_FUNCTION_1_NUM = 12;
+
 	public static final double SUCCESS_DISTANCE_FRACTION = 0.1;
+
+	// how the functions that have a kernel (see FunctionKernels.java) are evaluated:
+	// SCALAR gives exactly the same results as always; BLOCKED is faster, but adds the
+	// values up in a different order, so the results are slightly different
+	public static enum KernelMode {
+		SCALAR, BLOCKED
+	}
 	
 	
 	// the initialization and search space ranges for all but the two Penalized Functions are taken from:
@@ -50,7 +70,6 @@ public class TestFunctions {
 	private static final double SCHWEFEL_SPEED_RANGE = SCHWEFEL_SPEED_MAX_VAL - SCHWEFEL_SPEED_MIN_VAL;
 
 	private static double SCHWEFEL_OPT_VALUE = 0.0;
-	private static DoubleVector schwefelShiftVector;
 
 	private static final double SCHWEFEL_SUCCESS_DISTANCE_FROM_OPT = SCHWEFEL_SEARCH_SPACE_RANGE * SUCCESS_DISTANCE_FRACTION;
 
@@ -78,7 +97,6 @@ public class TestFunctions {
 	private static final double RASTRIGIN_SPEED_RANGE = RASTRIGIN_SPEED_MAX_VAL - RASTRIGIN_SPEED_MIN_VAL;
 
 	private static final double RASTRIGIN_OPT_VALUE = 0.0;
-	private static DoubleVector rastriginShiftVector;
 
 	private static final double RASTRIGIN_SUCCESS_DISTANCE_FROM_OPT = RASTRIGIN_SEARCH_SPACE_RANGE * SUCCESS_DISTANCE_FRACTION;
 
@@ -111,7 +129,6 @@ public class TestFunctions {
 	private static final double ACKLEY_SPEED_RANGE = ACKLEY_SPEED_MAX_VAL - ACKLEY_SPEED_MIN_VAL;
 
 	private static final double ACKLEY_OPT_VALUE = 0.0;
-	private static DoubleVector ackleyShiftVector;
 
 	private static final double ACKLEY_SUCCESS_DISTANCE_FROM_OPT = ACKLEY_SEARCH_SPACE_RANGE * SUCCESS_DISTANCE_FRACTION;
 
@@ -140,7 +157,6 @@ public class TestFunctions {
 	private static final double GRIEWANK_SPEED_RANGE = GRIEWANK_SPEED_MAX_VAL - GRIEWANK_SPEED_MIN_VAL;
 
 	private static final double GRIEWANK_OPT_VALUE = 0.0;
-	private static DoubleVector griewankShiftVector;
 
 	private static final double GRIEWANK_SUCCESS_DISTANCE_FROM_OPT = GRIEWANK_SEARCH_SPACE_RANGE * SUCCESS_DISTANCE_FRACTION;
 
@@ -169,7 +185,6 @@ public class TestFunctions {
 	private static final double PENALIZED_FUNCTION_1_SPEED_RANGE = PENALIZED_FUNCTION_1_SPEED_MAX_VAL - PENALIZED_FUNCTION_1_SPEED_MIN_VAL;
 
 	private static final double PENALIZED_FUNCTION_1_OPT_VALUE = 0.0;
-	private static DoubleVector penalizedFunction1ShiftVector;
 
 	private static final double PENALIZED_FUNCTION_1_SUCCESS_DISTANCE_FROM_OPT = PENALIZED_FUNCTION_1_SEARCH_SPACE_RANGE * SUCCESS_DISTANCE_FRACTION;
 
@@ -197,7 +212,6 @@ public class TestFunctions {
 	private static final double PENALIZED_FUNCTION_2_SPEED_RANGE = PENALIZED_FUNCTION_2_SPEED_MAX_VAL - PENALIZED_FUNCTION_2_SPEED_MIN_VAL;
 
 	private static final double PENALIZED_FUNCTION_2_OPT_VALUE = 0.0;
-	private static DoubleVector penalizedFunction2ShiftVector;
 
 	private static final double PENALIZED_FUNCTION_2_SUCCESS_DISTANCE_FROM_OPT = PENALIZED_FUNCTION_2_SEARCH_SPACE_RANGE * SUCCESS_DISTANCE_FRACTION;
 
@@ -229,7 +243,6 @@ public class TestFunctions {
 	private static final double SPHERE_SPEED_RANGE = SPHERE_SPEED_MAX_VAL - SPHERE_SPEED_MIN_VAL;
 
 	private static double SPHERE_OPT_VALUE = 0.0;
-	private static DoubleVector sphereShiftVector;
 
 	private static final double SPHERE_SUCCESS_DISTANCE_FROM_OPT = SPHERE_SEARCH_SPACE_RANGE * SUCCESS_DISTANCE_FRACTION;
 
@@ -261,7 +274,6 @@ public class TestFunctions {
 	private static final double ROSENBROCK_SPEED_RANGE = ROSENBROCK_SPEED_MAX_VAL - ROSENBROCK_SPEED_MIN_VAL;
 
 	private static final double ROSENBROCK_OPT_VALUE = 0.0;
-	private static DoubleVector rosenbrockShiftVector;
 
 	private static final double ROSENBROCK_SUCCESS_DISTANCE_FROM_OPT = ROSENBROCK_SEARCH_SPACE_RANGE * SUCCESS_DISTANCE_FRACTION;
 
@@ -275,60 +287,54 @@ public class TestFunctions {
 
 
 
-	public static final double[] INIT_MIN_VALS  = 
-	{ SCHWEFEL_INIT_MIN_VAL, RASTRIGIN_INIT_MIN_VAL, ACKLEY_INIT_MIN_VAL, GRIEWANK_INIT_MIN_VAL, 
-		PENALIZED_FUNCTION_1_INIT_MIN_VAL, PENALIZED_FUNCTION_2_INIT_MIN_VAL, SPHERE_INIT_MIN_VAL, ROSENBROCK_INIT_MIN_VAL };
-	public static final double[] INIT_RANGES  = 
-	{ SCHWEFEL_INIT_RANGE, RASTRIGIN_INIT_RANGE, ACKLEY_INIT_RANGE, GRIEWANK_INIT_RANGE, 
-		PENALIZED_FUNCTION_1_INIT_RANGE, PENALIZED_FUNCTION_2_INIT_RANGE, SPHERE_INIT_RANGE, ROSENBROCK_INIT_RANGE };
-
-
-	public static final double[] SEARCH_SPACE_MAX_VALS  = 
-	{ SCHWEFEL_SEARCH_SPACE_MAX_VAL, RASTRIGIN_SEARCH_SPACE_MAX_VAL, ACKLEY_SEARCH_SPACE_MAX_VAL, GRIEWANK_SEARCH_SPACE_MAX_VAL, 
-		PENALIZED_FUNCTION_1_SEARCH_SPACE_MAX_VAL, PENALIZED_FUNCTION_2_SEARCH_SPACE_MAX_VAL, SPHERE_SEARCH_SPACE_MAX_VAL, ROSENBROCK_SEARCH_SPACE_MAX_VAL };
-
-	public static final double[] SEARCH_SPACE_RANGES  = 
-	{ SCHWEFEL_SEARCH_SPACE_RANGE, RASTRIGIN_SEARCH_SPACE_RANGE, ACKLEY_SEARCH_SPACE_RANGE, GRIEWANK_SEARCH_SPACE_RANGE, 
-		PENALIZED_FUNCTION_1_SEARCH_SPACE_RANGE, PENALIZED_FUNCTION_2_SEARCH_SPACE_RANGE, SPHERE_SEARCH_SPACE_RANGE, ROSENBROCK_SEARCH_SPACE_RANGE };
-
-	
 	public static final double UNIVERSAL_MIN_INIT_SPEED = -2.0;
 	public static final double UNIVERSAL_SPEED_RANGE = 4.0;
 
-	public static final double[] SPEED_MIN_VALS  = 
-	{ SCHWEFEL_SPEED_MIN_VAL, RASTRIGIN_SPEED_MIN_VAL, ACKLEY_SPEED_MIN_VAL, GRIEWANK_SPEED_MIN_VAL, 
-		PENALIZED_FUNCTION_1_SPEED_MIN_VAL, PENALIZED_FUNCTION_2_SPEED_MIN_VAL, SPHERE_SPEED_MIN_VAL, ROSENBROCK_SPEED_MIN_VAL };
-
-	public static final double[] SPEED_MAX_VALS  = 
-	{ SCHWEFEL_SPEED_MAX_VAL, RASTRIGIN_SPEED_MAX_VAL, ACKLEY_SPEED_MAX_VAL, GRIEWANK_SPEED_MAX_VAL, 
-		PENALIZED_FUNCTION_1_SPEED_MAX_VAL, PENALIZED_FUNCTION_2_SPEED_MAX_VAL, SPHERE_SPEED_MAX_VAL, ROSENBROCK_SPEED_MAX_VAL };
-
-	public static final double[] SPEED_RANGES  = 
-	{ SCHWEFEL_SPEED_RANGE, RASTRIGIN_SPEED_RANGE, ACKLEY_SPEED_RANGE, GRIEWANK_SPEED_RANGE, 
-		PENALIZED_FUNCTION_1_SPEED_RANGE, PENALIZED_FUNCTION_2_SPEED_RANGE, SPHERE_SPEED_RANGE, ROSENBROCK_SPEED_RANGE };
-
-	
-	public static final double[] OPT_COORD  = 
-	{ SCHWEFEL_OPT_COORD, RASTRIGIN_OPT_COORD, ACKLEY_OPT_COORD, GRIEWANK_OPT_COORD, 
-		PENALIZED_FUNCTION_1_OPT_COORD, PENALIZED_FUNCTION_2_OPT_COORD, SPHERE_OPT_COORD, ROSENBROCK_OPT_COORD };
-
-	
-	public static final double[] SHIFT_RANGE  = 
-	{ SCHWEFEL_SHIFT_RANGE, RASTRIGIN_SHIFT_RANGE, ACKLEY_SHIFT_RANGE, GRIEWANK_SHIFT_RANGE, 
-		PENALIZED_FUNCTION_1_SHIFT_RANGE, PENALIZED_FUNCTION_2_SHIFT_RANGE, SPHERE_SHIFT_RANGE, ROSENBROCK_SHIFT_RANGE };
-
-	
-	public static final double[] OPT_VALUES  = 
-	{ SCHWEFEL_OPT_VALUE, RASTRIGIN_OPT_VALUE, ACKLEY_OPT_VALUE, GRIEWANK_OPT_VALUE, 
-		PENALIZED_FUNCTION_1_OPT_VALUE, PENALIZED_FUNCTION_2_OPT_VALUE, SPHERE_OPT_VALUE, ROSENBROCK_OPT_VALUE };
-
-	public static final double[] SUCCESS_DISTANCES_FROM_OPT  = 
-		{ SCHWEFEL_SUCCESS_DISTANCE_FROM_OPT, RASTRIGIN_SUCCESS_DISTANCE_FROM_OPT, ACKLEY_SUCCESS_DISTANCE_FROM_OPT, GRIEWANK_SUCCESS_DISTANCE_FROM_OPT, 
-			PENALIZED_FUNCTION_1_SUCCESS_DISTANCE_FROM_OPT, PENALIZED_FUNCTION_2_SUCCESS_DISTANCE_FROM_OPT, SPHERE_SUCCESS_DISTANCE_FROM_OPT, ROSENBROCK_SUCCESS_DISTANCE_FROM_OPT };
 
-	public static final double[] SUCCESS_CRITERION  = 
-		{ SCHWEFEL_SUCCESS_CRITERION, RASTRIGIN_SUCCESS_CRITERION, ACKLEY_SUCCESS_CRITERION, GRIEWANK_SUCCESS_CRITERION, 
-			PENALIZED_FUNCTION_1_SUCCESS_CRITERION, PENALIZED_FUNCTION_2_SUCCESS_CRITERION, SPHERE_SUCCESS_CRITERION, ROSENBROCK_SUCCESS_CRITERION };
+	// the built-in functions as ObjectiveFunctionProviders, by function number; the values above
+	// are only ever looked up through these (see getProvider)
+	private static final BuiltInFunction[] BUILT_IN_FUNCTIONS = {
+		new BuiltInFunction(SCHWEFEL_FUNCTION_NUM, SCHWEFEL_INIT_MIN_VAL, SCHWEFEL_INIT_RANGE, 
+				SCHWEFEL_SEARCH_SPACE_MAX_VAL, SCHWEFEL_SEARCH_SPACE_RANGE, 
+				SCHWEFEL_SPEED_MIN_VAL, SCHWEFEL_SPEED_MAX_VAL, SCHWEFEL_SPEED_RANGE, 
+				SCHWEFEL_OPT_COORD, SCHWEFEL_OPT_VALUE, SCHWEFEL_SHIFT_RANGE, 
+				SCHWEFEL_SUCCESS_CRITERION, SCHWEFEL_SUCCESS_DISTANCE_FROM_OPT),
+		new BuiltInFunction(RASTRIGIN_FUNCTION_NUM, RASTRIGIN_INIT_MIN_VAL, RASTRIGIN_INIT_RANGE, 
+				RASTRIGIN_SEARCH_SPACE_MAX_VAL, RASTRIGIN_SEARCH_SPACE_RANGE, 
+				RASTRIGIN_SPEED_MIN_VAL, RASTRIGIN_SPEED_MAX_VAL, RASTRIGIN_SPEED_RANGE, 
+				RASTRIGIN_OPT_COORD, RASTRIGIN_OPT_VALUE, RASTRIGIN_SHIFT_RANGE, 
+				RASTRIGIN_SUCCESS_CRITERION, RASTRIGIN_SUCCESS_DISTANCE_FROM_OPT),
+		new BuiltInFunction(ACKLEY_FUNCTION_NUM, ACKLEY_INIT_MIN_VAL, ACKLEY_INIT_RANGE, 
+				ACKLEY_SEARCH_SPACE_MAX_VAL, ACKLEY_SEARCH_SPACE_RANGE, 
+				ACKLEY_SPEED_MIN_VAL, ACKLEY_SPEED_MAX_VAL, ACKLEY_SPEED_RANGE, 
+				ACKLEY_OPT_COORD, ACKLEY_OPT_VALUE, ACKLEY_SHIFT_RANGE, 
+				ACKLEY_SUCCESS_CRITERION, ACKLEY_SUCCESS_DISTANCE_FROM_OPT),
+		new BuiltInFunction(GRIEWANK_FUNCTION_NUM, GRIEWANK_INIT_MIN_VAL, GRIEWANK_INIT_RANGE, 
+				GRIEWANK_SEARCH_SPACE_MAX_VAL, GRIEWANK_SEARCH_SPACE_RANGE, 
+				GRIEWANK_SPEED_MIN_VAL, GRIEWANK_SPEED_MAX_VAL, GRIEWANK_SPEED_RANGE, 
+				GRIEWANK_OPT_COORD, GRIEWANK_OPT_VALUE, GRIEWANK_SHIFT_RANGE, 
+				GRIEWANK_SUCCESS_CRITERION, GRIEWANK_SUCCESS_DISTANCE_FROM_OPT),
+		new BuiltInFunction(PENALIZED_FUNCTION_1_NUM, PENALIZED_FUNCTION_1_INIT_MIN_VAL, PENALIZED_FUNCTION_1_INIT_RANGE, 
+				PENALIZED_FUNCTION_1_SEARCH_SPACE_MAX_VAL, PENALIZED_FUNCTION_1_SEARCH_SPACE_RANGE, 
+				PENALIZED_FUNCTION_1_SPEED_MIN_VAL, PENALIZED_FUNCTION_1_SPEED_MAX_VAL, PENALIZED_FUNCTION_1_SPEED_RANGE, 
+				PENALIZED_FUNCTION_1_OPT_COORD, PENALIZED_FUNCTION_1_OPT_VALUE, PENALIZED_FUNCTION_1_SHIFT_RANGE, 
+				PENALIZED_FUNCTION_1_SUCCESS_CRITERION, PENALIZED_FUNCTION_1_SUCCESS_DISTANCE_FROM_OPT),
+		new BuiltInFunction(PENALIZED_FUNCTION_2_NUM, PENALIZED_FUNCTION_2_INIT_MIN_VAL, PENALIZED_FUNCTION_2_INIT_RANGE, 
+				PENALIZED_FUNCTION_2_SEARCH_SPACE_MAX_VAL, PENALIZED_FUNCTION_2_SEARCH_SPACE_RANGE, 
+				PENALIZED_FUNCTION_2_SPEED_MIN_VAL, PENALIZED_FUNCTION_2_SPEED_MAX_VAL, PENALIZED_FUNCTION_2_SPEED_RANGE, 
+				PENALIZED_FUNCTION_2_OPT_COORD, PENALIZED_FUNCTION_2_OPT_VALUE, PENALIZED_FUNCTION_2_SHIFT_RANGE, 
+				PENALIZED_FUNCTION_2_SUCCESS_CRITERION, PENALIZED_FUNCTION_2_SUCCESS_DISTANCE_FROM_OPT),
+		new BuiltInFunction(SPHERE_FUNCTION_NUM, SPHERE_INIT_MIN_VAL, SPHERE_INIT_RANGE, 
+				SPHERE_SEARCH_SPACE_MAX_VAL, SPHERE_SEARCH_SPACE_RANGE, 
+				SPHERE_SPEED_MIN_VAL, SPHERE_SPEED_MAX_VAL, SPHERE_SPEED_RANGE, 
+				SPHERE_OPT_COORD, SPHERE_OPT_VALUE, SPHERE_SHIFT_RANGE, 
+				SPHERE_SUCCESS_CRITERION, SPHERE_SUCCESS_DISTANCE_FROM_OPT),
+		new BuiltInFunction(ROSENBROCK_FUNCTION_NUM, ROSENBROCK_INIT_MIN_VAL, ROSENBROCK_INIT_RANGE, 
+				ROSENBROCK_SEARCH_SPACE_MAX_VAL, ROSENBROCK_SEARCH_SPACE_RANGE, 
+				ROSENBROCK_SPEED_MIN_VAL, ROSENBROCK_SPEED_MAX_VAL, ROSENBROCK_SPEED_RANGE, 
+				ROSENBROCK_OPT_COORD, ROSENBROCK_OPT_VALUE, ROSENBROCK_SHIFT_RANGE, 
+				ROSENBROCK_SUCCESS_CRITERION, ROSENBROCK_SUCCESS_DISTANCE_FROM_OPT)
+	};
 
 
 
@@ -336,441 +342,53 @@ public class TestFunctions {
 
 
 
-	public static void setShiftVector (int functionNum, int numDimensions, double shiftVectorAmount) {
-
-		if (functionNum == TestFunctions.SCHWEFEL_FUNCTION_NUM) {
-			schwefelShiftVector = new DoubleVector(numDimensions, shiftVectorAmount);
-		}
-		else if (functionNum == TestFunctions.ROSENBROCK_FUNCTION_NUM) {
-			rosenbrockShiftVector = new DoubleVector(numDimensions, shiftVectorAmount);
-		}	
-		else if (functionNum == TestFunctions.RASTRIGIN_FUNCTION_NUM) {
-			rastriginShiftVector = new DoubleVector(numDimensions, shiftVectorAmount);
-		}	
-		else if (functionNum == TestFunctions.ACKLEY_FUNCTION_NUM) {
-			ackleyShiftVector = new DoubleVector(numDimensions, shiftVectorAmount);
-		}	
-		else if (functionNum == TestFunctions.GRIEWANK_FUNCTION_NUM) {
-			griewankShiftVector = new DoubleVector(numDimensions, shiftVectorAmount);
-		}	
-		else if (functionNum == TestFunctions.PENALIZED_FUNCTION_1_NUM) {
-			penalizedFunction1ShiftVector = new DoubleVector(numDimensions, shiftVectorAmount);
-		}	
-		else if (functionNum == TestFunctions.PENALIZED_FUNCTION_2_NUM) {
-			penalizedFunction2ShiftVector = new DoubleVector(numDimensions, shiftVectorAmount);
-		}
-		else if (functionNum == TestFunctions.SPHERE_FUNCTION_NUM) {
-			sphereShiftVector = new DoubleVector(numDimensions, shiftVectorAmount);
-		}
-
-	}
-
-
-
-	public static double getOptValue(int functionNum) {
-		return OPT_VALUES[functionNum];
-	}
-
-
-
-
-	public static double[] evalWithError(DoubleVector v, int functionNum) {
-
-		// gets assigned an array with two values:
-		//	- the function value
-		//	- the error
-		double[] retArray = null;  
-
-		if (functionNum == TestFunctions.SCHWEFEL_FUNCTION_NUM) {
-			retArray = TestFunctions.evalSchwefelWithError(v);
-		}
-		else if (functionNum == TestFunctions.ROSENBROCK_FUNCTION_NUM) {
-			retArray = TestFunctions.evalRosenbrockWithError(v);
-		}	
-		else if (functionNum == TestFunctions.RASTRIGIN_FUNCTION_NUM) {
-			retArray = TestFunctions.evalRastriginWithError(v);
-		}	
-		else if (functionNum == TestFunctions.ACKLEY_FUNCTION_NUM) {
-			retArray = TestFunctions.evalAckleyWithError(v);
-		}	
-		else if (functionNum == TestFunctions.GRIEWANK_FUNCTION_NUM) {
-			retArray = TestFunctions.evalGriewankWithError(v);
-		}	
-		else if (functionNum == TestFunctions.PENALIZED_FUNCTION_1_NUM) {
-			retArray = TestFunctions.evalPenalizedFunction1WithError(v);
-		}	
-		else if (functionNum == TestFunctions.PENALIZED_FUNCTION_2_NUM) {
-			retArray = TestFunctions.evalPenalizedFunction2WithError(v);
-		}
-		else if (functionNum == TestFunctions.SPHERE_FUNCTION_NUM) {
-			retArray = TestFunctions.evalSphereWithError(v);
-		}	
-
-		return retArray;
-
-	}
-
-	// does not increment PSO.numFunctionEvaluations 
-	public static double[] evalWithErrorDoNotCountFE (DoubleVector v, int functionNum) {
-
-
-		double[] retArray = null;  // new double[2];
-
-		if (functionNum == TestFunctions.SCHWEFEL_FUNCTION_NUM) {
-			retArray = TestFunctions.evalSchwefelWithError(v);
-		}
-		else if (functionNum == TestFunctions.ROSENBROCK_FUNCTION_NUM) {
-			retArray = TestFunctions.evalRosenbrockWithError(v);
-		}	
-		else if (functionNum == TestFunctions.RASTRIGIN_FUNCTION_NUM) {
-			retArray = TestFunctions.evalRastriginWithError(v);
-		}	
-		else if (functionNum == TestFunctions.ACKLEY_FUNCTION_NUM) {
-			retArray = TestFunctions.evalAckleyWithError(v);
-		}	
-		else if (functionNum == TestFunctions.GRIEWANK_FUNCTION_NUM) {
-			retArray = TestFunctions.evalGriewankWithError(v);
-		}	
-		else if (functionNum == TestFunctions.PENALIZED_FUNCTION_1_NUM) {
-			retArray = TestFunctions.evalPenalizedFunction1WithError(v);
-		}	
-		else if (functionNum == TestFunctions.PENALIZED_FUNCTION_2_NUM) {
-			retArray = TestFunctions.evalPenalizedFunction2WithError(v);
+	// the providers of every function, by function number: the built-in functions and the
+	// rotated and composite functions, plus any found by ServiceLoader (see
+	// ObjectiveFunctionProvider.java); they are all registered the same way, the first time
+	// a function is needed, and everything about a function is looked up through its provider
+	private static Map<Integer, ObjectiveFunctionProvider> providers = null;
+
+	public static synchronized ObjectiveFunctionProvider getProvider(int functionNum) {
+
+		if (providers == null) {
+			providers = new HashMap<Integer, ObjectiveFunctionProvider>();
+			for (BuiltInFunction builtIn : BUILT_IN_FUNCTIONS) {
+				registerProvider(builtIn);
+			}
+			registerProvider(new RotatedFunction(ROTATED_RASTRIGIN_FUNCTION_NUM, BUILT_IN_FUNCTIONS[RASTRIGIN_FUNCTION_NUM]));
+			registerProvider(new RotatedFunction(ROTATED_ACKLEY_FUNCTION_NUM, BUILT_IN_FUNCTIONS[ACKLEY_FUNCTION_NUM]));
+			registerProvider(new RotatedFunction(ROTATED_GRIEWANK_FUNCTION_NUM, BUILT_IN_FUNCTIONS[GRIEWANK_FUNCTION_NUM]));
+			registerProvider(new RotatedFunction(ROTATED_ROSENBROCK_FUNCTION_NUM, BUILT_IN_FUNCTIONS[ROSENBROCK_FUNCTION_NUM]));
+			registerProvider(new CompositeFunction(COMPOSITE_FUNCTION_1_NUM));
+			for (ObjectiveFunctionProvider provider : ServiceLoader.load(ObjectiveFunctionProvider.class)) {
+				registerProvider(provider);
+			}
 		}
-		else if (functionNum == TestFunctions.SPHERE_FUNCTION_NUM) {
-			retArray = TestFunctions.evalSphereWithError(v);
-		}	
-
-		return retArray;
-
-	}
-
-
-	
-
-	//  Schwefel Problem 2.26
-	// 	minimum is 0.0, which occurs at (-420.9687,...,-420.9687)
-
-	public static double[] evalSchwefelWithError (DoubleVector v) {
 
-		double value = evalSchwefel(v);
-		double error = value - SCHWEFEL_OPT_VALUE;  // schwefelShiftedOptValue;
-		double[] retArray = new double[2];
-		retArray[VAL_INDEX] = value;
-		retArray[ERR_INDEX] = error;
-		return retArray;
-
-	}
-
-
-	public static double evalSchwefel (DoubleVector y) {
-
-		DoubleVector v = DoubleVector.sub(y, schwefelShiftVector);
-
-		double sum = 0;
-		for(int i = 0 ; i < v.size() ; ++i) {
-			double xi = v.get(i);
-			sum += xi * Math.sin(Math.sqrt(Math.abs(xi)));
+		ObjectiveFunctionProvider provider = providers.get(functionNum);
+		if (provider == null) {
+			System.out.println("error: undefined function " + functionNum + " in TestFunctions.getProvider");
+			System.exit(0);
 		}
-
-
-		return 418.9829 * v.size() + sum;  // + schwefelBiasValue;
-
-	}
-
-
-
-
-
-
-	//  Rosenbrock Function
-	// 	minimum is 0.0, which occurs at (1.0,...,1.0)
-
-	public static double[] evalRosenbrockWithError (DoubleVector v) {
-
-		double value = evalRosenbrock(v);
-		double error = value - ROSENBROCK_OPT_VALUE;  //rosenbrockShiftedOptValue;
-		double[] retArray = new double[2];
-		retArray[VAL_INDEX] = value;
-		retArray[ERR_INDEX] = error;
-		return retArray;
-
+		return provider;
 	}
 
-	public static double evalRosenbrock (DoubleVector y) {
-
-		DoubleVector v = DoubleVector.sub(y, rosenbrockShiftVector);
-
-		double retVal = 0;
-		// NOTE:  LAST DIMENSION SHOULD *NOT* BE INCLUDED IN CALCULATION
-		for(int i = 0 ; i < v.size() - 1 ; ++i) {
-			double xi = v.get(i);
-			double xiPlusOne = v.get(i+1);
-			retVal += 100.0 * Math.pow(xiPlusOne - xi*xi, 2.0) + Math.pow(xi-1.0, 2.0);
+	// only called from getProvider, while holding the lock
+	private static void registerProvider(ObjectiveFunctionProvider provider) {
+		if (providers.containsKey(provider.getFunctionNum())) {
+			System.out.println("error: function " + provider.getName() + " has the same number (" + provider.getFunctionNum()
+					+ ") as " + providers.get(provider.getFunctionNum()).getName());
+			System.exit(0);
 		}
-
-		return retVal; // + rosenbrockBiasValue;
-
+		providers.put(provider.getFunctionNum(), provider);
 	}
 
 
 
-
-
-
-	//  Rastrigin Function
-	// 	minimum is 0.0, which occurs at (0.0,...,0.0)
-
-	public static double[] evalRastriginWithError (DoubleVector v) {
-
-		double value = evalRastrigin(v);
-		double error = value - RASTRIGIN_OPT_VALUE;   // rastriginShiftedOptValue;
-		double[] retArray = new double[2];
-		retArray[VAL_INDEX] = value;
-		retArray[ERR_INDEX] = error;
-		return retArray;
-
-	}
-
-	public static double evalRastrigin (DoubleVector y) {
-
-		DoubleVector v = DoubleVector.sub(y, rastriginShiftVector);
-
-		double retVal = 0;
-		for(int i = 0 ; i < v.size() ; ++i) {
-			double xi = v.get(i);
-			retVal += xi*xi - 10.0*Math.cos(2.0*Math.PI*xi) + 10.0;
-		}
-
-		return retVal;  // + rastriginBiasValue;
-
-	}
-
-
-	
-
-
-
-	//  Ackley Function
-	// 	minimum is 0.0, which occurs at (0.0,...,0.0)
-
-	public static double[] evalAckleyWithError (DoubleVector v) {
-
-		double value = evalAckley(v);
-		double error = value - ACKLEY_OPT_VALUE;  // ackleyShiftedOptValue;
-		double[] retArray = new double[2];
-		retArray[VAL_INDEX] = value;
-		retArray[ERR_INDEX] = error;
-		return retArray;
-
-	}
-
-	public static double evalAckley (DoubleVector y) {
-
-		DoubleVector v = DoubleVector.sub(y, ackleyShiftVector);
-
-		double firstSum = 0.0;
-		double secondSum = 0.0;
-		for(int i = 0 ; i < v.size() ; ++i) {
-			double xi = v.get(i);
-			firstSum += xi * xi;
-			secondSum += Math.cos(2.0*Math.PI*xi);
-		}
-
-		return -20.0 * Math.exp(-0.2 * Math.sqrt(firstSum/v.size())) - 
-		Math.exp(secondSum/v.size()) + 20.0 + Math.E;   // + ackleyBiasValue;
-
-	}	
-
-
-	
-
-
-
-
-	// Griewank function
-	// 	minimum is 0.0, which occurs at (0.0,...,0.0)
-
-	public static double[] evalGriewankWithError (DoubleVector v) {
-
-		double value = evalGriewank(v);
-		double error = value - GRIEWANK_OPT_VALUE;  // griewankShiftedOptValue;
-		double[] retArray = new double[2];
-		retArray[VAL_INDEX] = value;
-		retArray[ERR_INDEX] = error;
-		return retArray;
-
-	}
-
-	public static double evalGriewank (DoubleVector y) {
-
-		DoubleVector v = DoubleVector.sub(y, griewankShiftVector);
-
-		double sumSquares = 0.0;
-		double productCos = 1.0;
-		for(int i = 0 ; i < v.size() ; ++i) {
-			double xi = v.get(i);
-			sumSquares += xi * xi;
-			productCos *= Math.cos(xi/Math.sqrt(i+1));
-		}
-
-		return sumSquares/4000.0 - productCos + 1.0;   // + griewankBiasValue;
-
-	}	
-
-	
-
-	
-
-
-
-	// Penalized Function 1
-	// 	minimum is 0.0, which occurs at (1.0,...,1.0)
-
-	public static double[] evalPenalizedFunction1WithError (DoubleVector v) {
-
-		double value = evalPenalizedFunction1(v);
-		double error = value - PENALIZED_FUNCTION_1_OPT_VALUE;   // penalizedFunction1ShiftedOptValue;
-		double[] retArray = new double[2];
-		retArray[VAL_INDEX] = value;
-		retArray[ERR_INDEX] = error;
-		return retArray;
-
-	}
-
-
-
-	public static double evalPenalizedFunction1 (DoubleVector y) {
-
-		DoubleVector x = DoubleVector.sub(y, penalizedFunction1ShiftVector);
-
-		int xSize = x.size();
-
-		double firstSum = 0.0;
-		for(int i = 0 ; i < xSize - 1 ; ++i) {
-			double yiAti = yi(x.get(i));
-			double sinTerm = Math.sin(Math.PI*yi(x.get(i+1)));
-			firstSum += (yiAti-1.0) * (yiAti-1.0) * (1.0 + 10.0*sinTerm*sinTerm);
-		}
-
-		double uSum = 0.0;
-		for(int i = 0 ; i < xSize ; ++i) {
-			uSum += u(x.get(i), 10.0, 100.0, 4.0);
-		}
-
-		double firstSinTerm = Math.sin(Math.PI*yi(x.get(0)));
-		double yiAtnMinus1 = yi(x.get(xSize-1));
-
-		// some papers have PI/30.0 (first coefficient), but more papers have PI/n  where n = number of dimensions
-		return Math.PI/xSize * (10.0*firstSinTerm*firstSinTerm + firstSum + (yiAtnMinus1-1.0)*(yiAtnMinus1-1.0)) + uSum;   // + penalizedFunction1BiasValue;
-
-	}	
-
-
-	// needed in Penalized Function 1
-	private static double yi(double xi) {
-		return 1.0 + (xi + 1.0) / 4.0;
-	}
-
-
-
-	
-
-	// Penalized Function 2
-	// 	minimum is 0.0, which occurs at (1.0,...,1.0)
-
-	public static double[] evalPenalizedFunction2WithError (DoubleVector v) {
-
-		double value = evalPenalizedFunction2(v);
-		double error = value - PENALIZED_FUNCTION_2_OPT_VALUE;  // penalizedFunction2ShiftedOptValue;
-		double[] retArray = new double[2];
-		retArray[VAL_INDEX] = value;
-		retArray[ERR_INDEX] = error;
-		return retArray;
-
-	}
-
-
-
-	public static double evalPenalizedFunction2 (DoubleVector y) {
-
-		DoubleVector x = DoubleVector.sub(y, penalizedFunction2ShiftVector);
-
-		int xSize = x.size();
-
-		double firstSum = 0.0;
-		for(int i = 0 ; i < xSize - 1 ; ++i) {
-			double xi = x.get(i);
-			double sinTerm = Math.sin(3.0*Math.PI*x.get(i+1));
-			firstSum += (xi-1.0)*(xi-1.0) * (1.0 + sinTerm*sinTerm);
-		}
-
-		double uSum = 0.0;
-		for(int i = 0 ; i < xSize ; ++i) {
-			uSum += u(x.get(i), 5.0, 100.0, 4.0);
-		}
-
-		double firstSinTerm = Math.sin(3.0*Math.PI*x.get(0));
-		double lastXi = x.get(xSize-1);
-		double lastSinTerm = Math.sin(2.0*Math.PI*lastXi);
-		return 0.1 * (firstSinTerm*firstSinTerm + firstSum + (lastXi-1.0)*(lastXi-1.0) * (1.0 + lastSinTerm*lastSinTerm)) + uSum ;  // + penalizedFunction2BiasValue;
-
-	}	
-
-	
-	
-
-	// needed in Penalized Function 1 and Penalized Function 2
-	private static double u(double xi, double a, double k, double m) {
-
-		double retVal = 0;
-		if (xi > a) {
-			retVal = k * Math.pow(xi-a, m);
-		}
-		else if (xi <= a && xi >= -a) {
-			retVal = 0.0;
-		}
-		else {  // xi < -a
-			retVal = k * Math.pow(-xi-a, m);
-		}
-
-		return retVal;
-
-	}
-
-
-
-	// Sphere function
-	// 	minimum is 0.0, which occurs at (0.0,...,0.0)
-
-	public static double[] evalSphereWithError (DoubleVector v) {
-
-		double value = evalSphere(v);
-		double error = value - SPHERE_OPT_VALUE;   // sphereShiftedOptValue;
-		double[] retArray = new double[2];
-		retArray[VAL_INDEX] = value;
-		retArray[ERR_INDEX] = error;
-		return retArray;
-
+	public static double getOptValue(int functionNum) {
+		return getProvider(functionNum).getOptValue();
 	}
 
-	public static double evalSphere (DoubleVector y) {
-
-		DoubleVector v = DoubleVector.sub(y, sphereShiftVector);
-
-		double sumSquares = 0.0;
-		for(int i = 0 ; i < v.size() ; ++i) {
-			double xi = v.get(i);
-			sumSquares += xi * xi;
-		}
-
-		return sumSquares;   //  + sphereBiasValue;
-
-	}	
-
-
-	
-	
 
 
 	public static String getFunctionName(int functionNum) {
@@ -801,6 +419,9 @@ public class TestFunctions {
 		else if (functionNum == TestFunctions.SPHERE_FUNCTION_NUM) {
 			retName = "SPHERE_FUNCTION";
 		}	
+		else {
+			retName = getProvider(functionNum).getName();
+		}
 
 		return retName;
 
@@ -840,6 +461,9 @@ public class TestFunctions {
 		else if (functionNum == TestFunctions.SPHERE_FUNCTION_NUM) {
 			retName = "SPHR";
 		}	
+		else {
+			retName = getProvider(functionNum).getName();
+		}
 
 		return retName;
 
@@ -1,23 +1,38 @@
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 // often need random numbers in ranges in rest of code, so put methods
 // that do this in a Utilities class
 
+// all of the random numbers in the program come from streams that are split off of one
+// master stream, which starts from Parameters.masterSeed: the Population splits off its own
+// stream, splits one off of that for each tree it evaluates, each tree splits one off for
+// each PSO run, and each run splits one off for each particle. The splitting is always done
+// in the same order on a single thread, so each stream gets the same numbers no matter how
+// many threads are used, and results can be repeated exactly from the seed.
+
 public class Utilities {
 
-	public static final Random rand = new Random();
+	private static SplittableRandom masterStream = new SplittableRandom(Parameters.masterSeed);
+	
+	// split a new stream off of the master stream
+	public static synchronized SplittableRandom splitMasterStream() {
+		return masterStream.split();
+	}
 	
 	// to get random value in range
-	public static int nextInt(int minVal, int maxVal) {
-		return minVal + Utilities.rand.nextInt((maxVal - minVal));
+	public static int nextInt(RandomGenerator rand, int minVal, int maxVal) {
+		return minVal + rand.nextInt((maxVal - minVal));
 	}
 	
-	public static double nextDouble(double minVal, double maxVal) {
-		return minVal + (Utilities.rand.nextDouble() * (maxVal - minVal));
+	public static double nextDouble(RandomGenerator rand, double minVal, double maxVal) {
+		return minVal + (rand.nextDouble() * (maxVal - minVal));
 	}
 	
-	public static void setConsistentSeed(int seed) {
-		Utilities.rand.setSeed(seed); //can be set to any other seed as well
+	// start the master stream over from a given seed
+	public static synchronized void setConsistentSeed(long seed) {
+		Parameters.masterSeed = seed; 
+		masterStream = new SplittableRandom(seed); //can be set to any other seed as well
 	}
 	
 }